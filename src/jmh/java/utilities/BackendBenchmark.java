@@ -0,0 +1,74 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import utilities.Parallelizer.Backend;
+
+/**
+ * Runs a batch of tiny tasks through each {@linkplain Backend}, comparing the work-stealing pool against the single queue of the fixed pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BackendBenchmark
+{
+	@Param({ "FIXED", "FORK_JOIN" })
+	public Backend backend;
+	@Param({ "1000", "100000", "1000000" })
+	public int tasks;
+	
+	private Parallelizer par;
+	
+	@Setup
+	public void setup()
+	{
+		par = new Parallelizer(backend);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		par.close();
+	}
+	
+	@Benchmark
+	public void tinyTasks()
+	{
+		for (int i = 0; i < tasks; i++)
+			par.task(() -> Blackhole.consumeCPU(8));
+		par.runAll().await();
+	}
+}
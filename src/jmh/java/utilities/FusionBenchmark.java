@@ -0,0 +1,74 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs ten million no-op tasks with each handed to the pool alone, and fused into groups by {@linkplain Parallelizer#fuse(int)}.
+ * The score divided by the number of tasks is the overhead per task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FusionBenchmark
+{
+	private static final Runnable NOTHING = () -> {};
+	
+	@Param({ "10000000" })
+	public int tasks;
+	@Param({ "1", "256", "4096" })
+	public int fuse;
+	
+	private Parallelizer par;
+	
+	@Setup
+	public void setup()
+	{
+		par = new Parallelizer().fuse(fuse);
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		par.close();
+	}
+	
+	@Benchmark
+	public void noOpTasks()
+	{
+		for (int i = 0; i < tasks; i++)
+			par.task(NOTHING);
+		par.runAll().await();
+	}
+}
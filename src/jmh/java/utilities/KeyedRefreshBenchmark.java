@@ -0,0 +1,80 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utilities.Scheduler.Engine;
+import utilities.Scheduler.TickTask;
+
+/**
+ * Refreshes every one of a number of keyed timers and then ticks, as per-entity timers are pushed back each tick.
+ * No timer ever comes due, so the cost is that of cancelling and rescheduling by key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KeyedRefreshBenchmark
+{
+	private static final Runnable NOTHING = () -> {};
+	
+	@Param({ "HEAP", "WHEEL" })
+	public Engine engine;
+	@Param({ "100000" })
+	public int keys;
+	@Param({ "100" })
+	public int delay;
+	
+	private Scheduler scheduler;
+	private Integer[] ids;
+	
+	@Setup
+	public void setup()
+	{
+		scheduler = new Scheduler(engine);
+		ids = new Integer[keys];
+		for (int i = 0; i < keys; i++)
+		{
+			ids[i] = i;
+			scheduler.scheduleRefreshable(new TickTask(delay, ids[i], NOTHING));
+		}
+	}
+	
+	@Benchmark
+	public void refreshAllAndTick()
+	{
+		int due = scheduler.getTick() + delay;
+		for (Integer id : ids)
+			scheduler.scheduleRefreshable(new TickTask(due, id, NOTHING));
+		scheduler.tick();
+	}
+}
@@ -0,0 +1,65 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utilities.Parallelizer.Backend;
+
+/**
+ * Creates a {@linkplain Parallelizer}, runs one task upon it, and closes it, as done once per request, comparing a pool of its own against
+ * a partition of the {@linkplain Backend#SHARED} pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LifecycleBenchmark
+{
+	@Param({ "FIXED", "FORK_JOIN", "SHARED" })
+	public Backend backend;
+	@Param({ "4" })
+	public int threads;
+	
+	@Benchmark
+	public void createAndClose()
+	{
+		new Parallelizer(threads, backend).close();
+	}
+	
+	@Benchmark
+	public void createRunAndClose()
+	{
+		try (Parallelizer par = new Parallelizer(threads, backend))
+		{
+			par.task(() -> {}).runAll().await();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import utilities.Parallelizer.Batch;
+import utilities.Parallelizer.TaskClass;
+
+/**
+ * Measures the latency of a single urgent task run while the pool is saturated by a batch of background tasks, with and without
+ * {@linkplain Parallelizer#enablePriorities()}. Sampled, so that the percentiles of the result give the tail.
+ * <p>The background batch is launched before each invocation, and awaited after it, so that only the urgent task is timed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PriorityBenchmark
+{
+	private static final TaskClass URGENT = new TaskClass("urgent", 1, 1), BULK = new TaskClass("bulk", 0, 1);
+	
+	@Param({ "false", "true" })
+	public boolean priorities;
+	/** Background tasks per thread, and the work of each in JMH tokens. */
+	@Param({ "32" })
+	public int depth;
+	@Param({ "20000" })
+	public int tokens;
+	
+	private Parallelizer par;
+	private Batch<?> background;
+	
+	@Setup
+	public void setup()
+	{
+		par = new Parallelizer();
+		if (priorities)
+			par.enablePriorities();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		par.close();
+	}
+	
+	@Setup(Level.Invocation)
+	public void saturate()
+	{
+		for (int i = depth * par.threads(); i > 0; i--)
+			par.task(BULK, () -> Blackhole.consumeCPU(tokens));
+		background = par.batchRunAll();
+	}
+	
+	@TearDown(Level.Invocation)
+	public void drain()
+	{
+		background.await();
+	}
+	
+	@Benchmark
+	public void urgentTask()
+	{
+		par.task(URGENT, () -> Blackhole.consumeCPU(100));
+		par.batchRunAll().await();
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reduces a range through the per-thread accumulators of {@linkplain Parallelizer}, against a serial loop and a parallel stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReductionBenchmark
+{
+	@Param({ "1000", "100000", "10000000" })
+	public int size;
+	
+	private Parallelizer par;
+	private long[] values;
+	
+	@Setup
+	public void setup()
+	{
+		par = new Parallelizer();
+		values = ThreadLocalRandom.current().longs(size, 0, 1000).toArray();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		par.close();
+	}
+	
+	@Benchmark
+	public long serialSum()
+	{
+		long sum = 0;
+		for (long v : values)
+			sum += v;
+		return sum;
+	}
+	
+	@Benchmark
+	public long streamSum()
+	{
+		return IntStream.range(0, size).parallel().mapToLong((i) -> values[i]).sum();
+	}
+	
+	@Benchmark
+	public long parallelizerSum()
+	{
+		return par.sumLong(0, size, (i) -> values[i]);
+	}
+	
+	@Benchmark
+	public List<Long> parallelizerCollect()
+	{
+		return par.parallelReduce(0, size, ArrayList::new, (acc, i) ->
+		{
+			if (values[i] == 0)
+				acc.add(values[i]);
+			return acc;
+		}, (a, b) ->
+		{
+			a.addAll(b);
+			return a;
+		});
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utilities.Scheduler.Engine;
+import utilities.Scheduler.TickTask;
+
+/**
+ * Ticks a {@linkplain Scheduler} holding a steady number of pending tasks on each {@linkplain Engine}. Each task schedules itself again as it runs,
+ * after a delay of its own spread over the given number of ticks, so that as many tasks come due on each tick as are scheduled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SchedulerEngineBenchmark
+{
+	@Param({ "HEAP", "WHEEL" })
+	public Engine engine;
+	@Param({ "1000000" })
+	public int pending;
+	@Param({ "4096" })
+	public int spread;
+	
+	private Scheduler scheduler;
+	
+	@Setup
+	public void setup()
+	{
+		scheduler = new Scheduler(engine);
+		Random r = new Random(0);
+		for (int i = 0; i < pending; i++)
+		{
+			Rearm task = new Rearm(scheduler, 1 + r.nextInt(spread));
+			scheduler.scheduleTask(new TickTask(r.nextInt(spread), task));
+		}
+	}
+	
+	@Benchmark
+	public void tick()
+	{
+		scheduler.tick();
+	}
+	
+	private static class Rearm implements Runnable
+	{
+		private final Scheduler scheduler;
+		private final int delay;
+		
+		private Rearm(Scheduler scheduler, int delay)
+		{
+			this.scheduler = scheduler;
+			this.delay = delay;
+		}
+		
+		@Override
+		public void run()
+		{
+			scheduler.scheduleTask(new TickTask(scheduler.getTick() + delay, this));
+		}
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorts a copy of a random array through {@linkplain ParallelArrays#sort(Parallelizer, int[])}, against {@linkplain Arrays#sort(int[])}
+ * and {@linkplain Arrays#parallelSort(int[])}. Each sorts a fresh copy, so the copy is counted alike in all three.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SortBenchmark
+{
+	@Param({ "10000", "1000000", "10000000" })
+	public int size;
+	
+	private Parallelizer par;
+	private int[] ints;
+	private double[] doubles;
+	
+	@Setup
+	public void setup()
+	{
+		par = new Parallelizer();
+		ints = ThreadLocalRandom.current().ints(size).toArray();
+		doubles = ThreadLocalRandom.current().doubles(size).toArray();
+	}
+	
+	@TearDown
+	public void tearDown()
+	{
+		par.close();
+	}
+	
+	@Benchmark
+	public int[] serialInts()
+	{
+		int[] arr = ints.clone();
+		Arrays.sort(arr);
+		return arr;
+	}
+	
+	@Benchmark
+	public int[] forkJoinInts()
+	{
+		int[] arr = ints.clone();
+		Arrays.parallelSort(arr);
+		return arr;
+	}
+	
+	@Benchmark
+	public int[] parallelizerInts()
+	{
+		int[] arr = ints.clone();
+		ParallelArrays.sort(par, arr);
+		return arr;
+	}
+	
+	@Benchmark
+	public double[] forkJoinDoubles()
+	{
+		double[] arr = doubles.clone();
+		Arrays.parallelSort(arr);
+		return arr;
+	}
+	
+	@Benchmark
+	public double[] parallelizerDoubles()
+	{
+		double[] arr = doubles.clone();
+		ParallelArrays.sort(par, arr);
+		return arr;
+	}
+}
@@ -0,0 +1,373 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ *  
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *  
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ *  
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+/**
+ *  
+ * A {@linkplain Scheduler} whose tasks may be scheduled and removed from any thread.
+ * <p>Calls made from any thread other than the one currently ticking are not applied at once, but are added to a lock-free intake queue,
+ * which is drained in order at the start of the next {@linkplain ConcurrentScheduler#tick()}. Tasks scheduled between ticks are therefore run
+ * on the same tick as they would have been had they been scheduled on the ticking thread. Calls made by the tasks themselves, on the ticking thread,
+ * are applied at once, as in a plain {@linkplain Scheduler}.
+ * <p>As a deferred call has not yet been applied when it returns, those which report whether a task was replaced or removed return false for it.
+ * <p>Only one thread may tick at a time, which may be left to a {@linkplain ConcurrentScheduler.Driver}, as started by
+ * {@linkplain ConcurrentScheduler#drive(long, TimeUnit)}.
+ *  
+ * @author SerpentDagger
+ *
+ */
+public class ConcurrentScheduler extends Scheduler
+{
+	private final ConcurrentLinkedQueue<Runnable> intake = new ConcurrentLinkedQueue<>();
+	private final AtomicReference<Thread> ticking = new AtomicReference<>();
+	
+	public ConcurrentScheduler()
+	{
+		super();
+	}
+	
+	/**
+	 * Create a new {@linkplain ConcurrentScheduler} which keeps its pending tasks in the given {@linkplain Scheduler.Engine}.
+	 * @param engine
+	 */
+	public ConcurrentScheduler(Engine engine)
+	{
+		super(engine);
+	}
+	
+	@Override
+	public void tick()
+	{
+		Thread self = Thread.currentThread();
+		boolean outer = claim(self);
+		try
+		{
+			drain();
+			super.tick();
+		}
+		finally
+		{
+			if (outer)
+				ticking.set(null);
+		}
+	}
+	
+	@Override
+	public void runAll()
+	{
+		Thread self = Thread.currentThread();
+		boolean outer = claim(self);
+		try
+		{
+			drain();
+			super.runAll();
+		}
+		finally
+		{
+			if (outer)
+				ticking.set(null);
+		}
+	}
+	
+	@Override
+	public void advanceTo(int target, boolean coalesce)
+	{
+		Thread self = Thread.currentThread();
+		boolean outer = claim(self);
+		try
+		{
+			drain();
+			super.advanceTo(target, coalesce);
+		}
+		finally
+		{
+			if (outer)
+				ticking.set(null);
+		}
+	}
+	
+	/**
+	 * Claims the scheduler while the snapshot is written, as by a tick, so cannot be called while another thread ticks.
+	 * Calls queued by other threads are applied first, so that the snapshot includes them.
+	 */
+	@Override
+	public int snapshot(Path file, TaskTypes types, Consumer<TickTask> skipped) throws IOException
+	{
+		Thread self = Thread.currentThread();
+		boolean outer = claim(self);
+		try
+		{
+			drain();
+			return super.snapshot(file, types, skipped);
+		}
+		finally
+		{
+			if (outer)
+				ticking.set(null);
+		}
+	}
+	
+	@Override
+	public boolean removeTask(Object key)
+	{
+		if (ticking.get() == Thread.currentThread())
+			return super.removeTask(key);
+		intake.add(() -> super.removeTask(key));
+		return false;
+	}
+	
+	@Override
+	public void scheduleTask(TickTask task)
+	{
+		if (task == null)
+			throw new IllegalArgumentException("Cannot schedule null task.");
+		if (ticking.get() == Thread.currentThread())
+			super.scheduleTask(task);
+		else
+			intake.add(() -> super.scheduleTask(task));
+	}
+	
+	@Override
+	public void scheduleRepeated(TickTask task)
+	{
+		if (task == null)
+			throw new IllegalArgumentException("Cannot schedule null task.");
+		if (ticking.get() == Thread.currentThread())
+			super.scheduleRepeated(task);
+		else
+			intake.add(() -> super.scheduleRepeated(task));
+	}
+	
+	@Override
+	public boolean scheduleRefreshableRepeated(TickTask task)
+	{
+		if (task.key == null)
+			throw new NullPointerException("Refreshable tasks must have non-null key ID.");
+		if (ticking.get() == Thread.currentThread())
+			return super.scheduleRefreshableRepeated(task);
+		intake.add(() -> super.scheduleRefreshableRepeated(task));
+		return false;
+	}
+	
+	@Override
+	public boolean scheduleRefreshable(TickTask task)
+	{
+		if (task.key == null)
+			throw new NullPointerException("Refreshable tasks must have non-null key ID.");
+		if (ticking.get() == Thread.currentThread())
+			return super.scheduleRefreshable(task);
+		intake.add(() -> super.scheduleRefreshable(task));
+		return false;
+	}
+	
+	@Override
+	public void schedulePeriodic(Object key, IntSupplier period, BooleanSupplier removal, Runnable task)
+	{
+		if (period == null || removal == null || task == null)
+			throw new IllegalArgumentException("Cannot schedule periodic task with null period, removal or task.");
+		if (ticking.get() == Thread.currentThread())
+			super.schedulePeriodic(key, period, removal, task);
+		else
+			intake.add(() -> super.schedulePeriodic(key, period, removal, task));
+	}
+	
+	@Override
+	public void schedulePeriodic(Object key, IntSupplier period, int count, Runnable task)
+	{
+		if (period == null || task == null)
+			throw new IllegalArgumentException("Cannot schedule periodic task with null period or task.");
+		if (ticking.get() == Thread.currentThread())
+			super.schedulePeriodic(key, period, count, task);
+		else
+			intake.add(() -> super.schedulePeriodic(key, period, count, task));
+	}
+	
+	@Override
+	void resumePeriodic(TickTask task, IntSupplier period, BooleanSupplier removal, int remaining)
+	{
+		if (ticking.get() == Thread.currentThread())
+			super.resumePeriodic(task, period, removal, remaining);
+		else
+			intake.add(() -> super.resumePeriodic(task, period, removal, remaining));
+	}
+	
+	/**
+	 * @return Whether there are calls from other threads waiting to be applied at the next tick.
+	 */
+	public boolean hasIntake()
+	{
+		return !intake.isEmpty();
+	}
+	
+	/**
+	 * Starts a {@linkplain Driver} which ticks this scheduler at the given rate, catching up on every tick missed when it falls behind.
+	 * @param period The real time between ticks.
+	 * @param unit
+	 * @return The driver, which runs until stopped, or until a tick throws.
+	 */
+	public Driver drive(long period, TimeUnit unit)
+	{
+		return drive(period, unit, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Starts a {@linkplain Driver} which ticks this scheduler at the given rate.
+	 * <p>Each tick is timed from the start of the driver, rather than from the end of the last, so that the time spent ticking does not accumulate as drift.
+	 * Ticks which fall behind are run back to back until caught up, but no more than the given number: any further behind than that are skipped.
+	 * @param period The real time between ticks.
+	 * @param unit
+	 * @param maxCatchUp The most ticks which may be run late to catch up.
+	 * @return The driver, which runs until stopped, or until a tick throws.
+	 */
+	public Driver drive(long period, TimeUnit unit, long maxCatchUp)
+	{
+		if (period <= 0)
+			throw new IllegalArgumentException("Scheduler driver period must be positive.");
+		if (maxCatchUp < 0)
+			throw new IllegalArgumentException("Scheduler driver cannot catch up a negative number of ticks.");
+		return new Driver(unit.toNanos(period), maxCatchUp);
+	}
+	
+	/**
+	 * @return Whether this call claimed the scheduler, rather than being nested within a tick of the same thread.
+	 */
+	private boolean claim(Thread self)
+	{
+		if (ticking.compareAndSet(null, self))
+			return true;
+		if (ticking.get() != self)
+			throw new IllegalStateException("ConcurrentScheduler cannot be ticked by two threads at once.");
+		return false;
+	}
+	
+	private void drain()
+	{
+		Runnable call;
+		while ((call = intake.poll()) != null)
+			call.run();
+	}
+	
+	//////////////////////////////
+	
+	/**
+	 * 
+	 * A thread which ticks a {@linkplain ConcurrentScheduler} at a fixed rate of real time, as started by {@linkplain ConcurrentScheduler#drive(long, TimeUnit, long)}.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public class Driver implements AutoCloseable
+	{
+		private final long period, maxCatchUp;
+		private final Thread thread;
+		private volatile boolean running = true;
+		private volatile long ticks = 0, skipped = 0;
+		private volatile Throwable failure;
+		
+		private Driver(long period, long maxCatchUp)
+		{
+			this.period = period;
+			this.maxCatchUp = maxCatchUp;
+			thread = new Thread(this::loop, "Scheduler-Driver");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		
+		private void loop()
+		{
+			long next = System.nanoTime();
+			while (running)
+			{
+				long late = System.nanoTime() - next;
+				if (late < 0)
+				{
+					LockSupport.parkNanos(this, -late);
+					continue;
+				}
+				long behind = late / period;
+				if (behind > maxCatchUp)
+				{
+					skipped += behind - maxCatchUp;
+					next += (behind - maxCatchUp) * period;
+				}
+				try
+				{
+					tick();
+				}
+				catch (Throwable t)
+				{
+					failure = t;
+					running = false;
+					return;
+				}
+				ticks++;
+				next += period;
+			}
+		}
+		
+		/**
+		 * Stops ticking after the current tick, if any, without waiting for it.
+		 */
+		public void stop()
+		{
+			running = false;
+			LockSupport.unpark(thread);
+		}
+		
+		/**
+		 * Stops ticking, and waits for the current tick, if any, to finish.
+		 */
+		@Override
+		public void close()
+		{
+			stop();
+			boolean interrupted = false;
+			while (thread.isAlive())
+			{
+				try
+				{
+					thread.join();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		
+		/** @return Whether this driver is still ticking. */
+		public boolean isRunning() { return running; }
+		/** @return The number of ticks run by this driver. */
+		public long ticks() { return ticks; }
+		/** @return The number of ticks skipped for being further behind than could be caught up. */
+		public long skipped() { return skipped; }
+		/** @return The throwable which stopped this driver, or null if none has. */
+		public Throwable failure() { return failure; }
+	}
+}
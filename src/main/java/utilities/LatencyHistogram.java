@@ -0,0 +1,169 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * A concurrent histogram of durations, in nanoseconds, which may be recorded into from any number of threads at once.
+ * <p>Durations are counted in buckets which split each power of two into four, so that any reported percentile is within 25% of the true value.
+ * Each bucket is a {@linkplain LongAdder}, so recording threads do not contend upon a shared counter, and is only created once a duration falls into it,
+ * so that a histogram is cheap to create for a short-lived batch of tasks.
+ * 
+ * @author SerpentDagger
+ *
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS = 2, SUBS = 1 << SUB_BITS;
+	static final int BUCKETS = SUBS * (64 - SUB_BITS);
+	
+	/** Each null until a duration is counted in it. */
+	private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+	private final LongAdder count = new LongAdder(), total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Records a duration. Negative durations are counted as zero.
+	 * @param nanos
+	 */
+	public void record(long nanos)
+	{
+		nanos = Math.max(0, nanos);
+		bucket(indexOf(nanos)).increment();
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+	
+	/**
+	 * Adds bucket counts kept elsewhere, as by {@linkplain ParallelMetrics.Striped}, which are indexed by {@linkplain LatencyHistogram#indexOf(long)}.
+	 */
+	void merge(AtomicLongArray counts, long total, long max)
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			long c = counts.get(i);
+			if (c != 0)
+			{
+				bucket(i).add(c);
+				count.add(c);
+			}
+		}
+		this.total.add(total);
+		this.max.accumulate(max);
+	}
+	
+	/**
+	 * Clears every recorded duration. Durations recorded concurrently with this call may or may not be cleared.
+	 */
+	public void reset()
+	{
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null)
+				bucket.reset();
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+	
+	/**
+	 * @return The number of durations recorded.
+	 */
+	public long count()
+	{
+		return count.sum();
+	}
+	
+	/**
+	 * @return The mean of the durations recorded, or 0 if there are none.
+	 */
+	public long mean()
+	{
+		long c = count.sum();
+		return c == 0 ? 0 : total.sum() / c;
+	}
+	
+	/**
+	 * @return The greatest duration recorded, or 0 if there are none.
+	 */
+	public long max()
+	{
+		return max.get();
+	}
+	
+	/**
+	 * @param percentile From 0 to 100.
+	 * @return The upper bound of the bucket holding the given percentile of the durations recorded, or 0 if there are none.
+	 */
+	public long percentile(double percentile)
+	{
+		long c = count.sum();
+		if (c == 0)
+			return 0;
+		long rank = (long) Math.ceil(c * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			LongAdder bucket = buckets.get(i);
+			if (bucket != null && (seen += bucket.sum()) >= Math.max(1, rank))
+				return Math.min(upperOf(i), max.get());
+		}
+		return max.get();
+	}
+	
+	/**
+	 * @return The bucket of the given index, created if it has yet to be.
+	 */
+	private LongAdder bucket(int index)
+	{
+		LongAdder bucket = buckets.get(index);
+		if (bucket == null && !buckets.compareAndSet(index, null, bucket = new LongAdder()))
+			bucket = buckets.get(index);
+		return bucket;
+	}
+	
+	static int indexOf(long nanos)
+	{
+		if (nanos < SUBS)
+			return (int) nanos;
+		int exp = 63 - Long.numberOfLeadingZeros(nanos);
+		return ((exp - SUB_BITS + 1) << SUB_BITS) | (int) ((nanos >>> (exp - SUB_BITS)) & (SUBS - 1));
+	}
+	
+	private static long upperOf(int index)
+	{
+		if (index < SUBS)
+			return index;
+		int exp = (index >>> SUB_BITS) + SUB_BITS - 1, sub = index & (SUBS - 1);
+		long lower = (long) (SUBS | sub) << (exp - SUB_BITS);
+		return lower + (1L << (exp - SUB_BITS)) - 1;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return count() + " recorded: mean " + mean() + "ns, p50 " + percentile(50) + "ns, p90 " + percentile(90) + "ns, p99 " + percentile(99) + "ns, max " + max() + "ns";
+	}
+}
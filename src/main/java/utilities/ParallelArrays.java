@@ -0,0 +1,532 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+
+import utilities.Parallelizer.IterationSpecs;
+
+/**
+ * 
+ * Parallel kernels over primitive arrays, each of which runs upon the pool of the supplied {@linkplain Parallelizer}, rather than upon the common {@linkplain java.util.concurrent.ForkJoinPool}.
+ * <p>Each method blocks until its result is ready, and so must not be called from within a task running on the same {@linkplain Parallelizer}.
+ * 
+ * @author SerpentDagger
+ *
+ */
+public class ParallelArrays
+{
+	/** The least number of elements merged by a single task, below which splitting a merge costs more than it saves. */
+	private static final int MIN_MERGE = 1 << 13;
+	
+	////////////////////
+	
+	/**
+	 * Sorts the array into ascending order. Each thread sorts its own segment, and the sorted segments are then merged pairwise,
+	 * with every merge split across the threads, so that the later (larger) merges do not fall to a single thread.
+	 * @param par
+	 * @param arr
+	 */
+	public static void sort(Parallelizer par, int[] arr)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		par.invokeEach((th) -> Arrays.sort(arr, specs.starts[th], specs.ends[th]));
+		int[] src = arr, dst = new int[arr.length];
+		int[] bounds = boundsOf(specs);
+		while (bounds.length > 2)
+		{
+			final int[] from = src, to = dst;
+			forEachMerge(par, bounds, (a0, a1, b0, b1, k0, k1) ->
+			{
+				int i = a0 + coRank(from, a0, a1, b0, b1, k0 - a0), j = b0 + (k0 - a0) - (i - a0);
+				for (int k = k0; k < k1; k++)
+					to[k] = j >= b1 || (i < a1 && from[i] <= from[j]) ? from[i++] : from[j++];
+			});
+			bounds = halve(bounds);
+			src = to;
+			dst = from;
+		}
+		if (src != arr)
+		{
+			final int[] sorted = src;
+			par.invokeEach((th) -> System.arraycopy(sorted, specs.starts[th], arr, specs.starts[th], specs.ends[th] - specs.starts[th]));
+		}
+	}
+	
+	/**
+	 * Sorts the array into ascending order.
+	 * @param par
+	 * @param arr
+	 * @see ParallelArrays#sort(Parallelizer, int[])
+	 */
+	public static void sort(Parallelizer par, long[] arr)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		par.invokeEach((th) -> Arrays.sort(arr, specs.starts[th], specs.ends[th]));
+		long[] src = arr, dst = new long[arr.length];
+		int[] bounds = boundsOf(specs);
+		while (bounds.length > 2)
+		{
+			final long[] from = src, to = dst;
+			forEachMerge(par, bounds, (a0, a1, b0, b1, k0, k1) ->
+			{
+				int i = a0 + coRank(from, a0, a1, b0, b1, k0 - a0), j = b0 + (k0 - a0) - (i - a0);
+				for (int k = k0; k < k1; k++)
+					to[k] = j >= b1 || (i < a1 && from[i] <= from[j]) ? from[i++] : from[j++];
+			});
+			bounds = halve(bounds);
+			src = to;
+			dst = from;
+		}
+		if (src != arr)
+		{
+			final long[] sorted = src;
+			par.invokeEach((th) -> System.arraycopy(sorted, specs.starts[th], arr, specs.starts[th], specs.ends[th] - specs.starts[th]));
+		}
+	}
+	
+	/**
+	 * Sorts the array into ascending order, as defined by {@linkplain Double#compare(double, double)}, the same as {@linkplain Arrays#sort(double[])}.
+	 * @param par
+	 * @param arr
+	 * @see ParallelArrays#sort(Parallelizer, int[])
+	 */
+	public static void sort(Parallelizer par, double[] arr)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		par.invokeEach((th) -> Arrays.sort(arr, specs.starts[th], specs.ends[th]));
+		double[] src = arr, dst = new double[arr.length];
+		int[] bounds = boundsOf(specs);
+		while (bounds.length > 2)
+		{
+			final double[] from = src, to = dst;
+			forEachMerge(par, bounds, (a0, a1, b0, b1, k0, k1) ->
+			{
+				int i = a0 + coRank(from, a0, a1, b0, b1, k0 - a0), j = b0 + (k0 - a0) - (i - a0);
+				for (int k = k0; k < k1; k++)
+					to[k] = j >= b1 || (i < a1 && Double.compare(from[i], from[j]) <= 0) ? from[i++] : from[j++];
+			});
+			bounds = halve(bounds);
+			src = to;
+			dst = from;
+		}
+		if (src != arr)
+		{
+			final double[] sorted = src;
+			par.invokeEach((th) -> System.arraycopy(sorted, specs.starts[th], arr, specs.starts[th], specs.ends[th] - specs.starts[th]));
+		}
+	}
+	
+	/**
+	 * Runs the merge of each pair of neighbouring runs, split into pieces of the output, across the threads.
+	 * An odd run out is passed through as a merge with an empty run.
+	 */
+	private static void forEachMerge(Parallelizer par, int[] bounds, MergePiece piece)
+	{
+		int runs = bounds.length - 1, pairs = (runs + 1) / 2, total = bounds[runs] - bounds[0];
+		int grain = Math.max(MIN_MERGE, total / (par.threads() * 4));
+		int[] pieceStarts = new int[pairs + 1];
+		for (int p = 0; p < pairs; p++)
+		{
+			int len = bounds[Math.min(2 * p + 2, runs)] - bounds[2 * p];
+			pieceStarts[p + 1] = pieceStarts[p] + Math.max(1, (len + grain - 1) / grain);
+		}
+		par.parallelFor(0, pieceStarts[pairs], (n) ->
+		{
+			int p = Arrays.binarySearch(pieceStarts, n);
+			if (p < 0)
+				p = -p - 2;
+			int a0 = bounds[2 * p], a1 = bounds[Math.min(2 * p + 1, runs)], b1 = bounds[Math.min(2 * p + 2, runs)];
+			int pieces = pieceStarts[p + 1] - pieceStarts[p], len = b1 - a0, at = n - pieceStarts[p];
+			int k0 = a0 + (int) ((long) len * at / pieces), k1 = a0 + (int) ((long) len * (at + 1) / pieces);
+			if (k1 > k0)
+				piece.merge(a0, a1, a1, b1, k0, k1);
+		});
+	}
+	
+	/**
+	 * Finds how many of the first k outputs of the stable merge of runs A and B come from A, by binary search, such that a piece of the merge may start at k
+	 * without merging the outputs before it.
+	 */
+	private static int coRank(int[] arr, int a0, int a1, int b0, int b1, int k)
+	{
+		int lo = Math.max(0, k - (b1 - b0)), hi = Math.min(k, a1 - a0);
+		while (lo < hi)
+		{
+			int i = (lo + hi) >>> 1;
+			if (arr[a0 + i] <= arr[b0 + k - i - 1])
+				lo = i + 1;
+			else
+				hi = i;
+		}
+		return lo;
+	}
+	
+	private static int coRank(long[] arr, int a0, int a1, int b0, int b1, int k)
+	{
+		int lo = Math.max(0, k - (b1 - b0)), hi = Math.min(k, a1 - a0);
+		while (lo < hi)
+		{
+			int i = (lo + hi) >>> 1;
+			if (arr[a0 + i] <= arr[b0 + k - i - 1])
+				lo = i + 1;
+			else
+				hi = i;
+		}
+		return lo;
+	}
+	
+	private static int coRank(double[] arr, int a0, int a1, int b0, int b1, int k)
+	{
+		int lo = Math.max(0, k - (b1 - b0)), hi = Math.min(k, a1 - a0);
+		while (lo < hi)
+		{
+			int i = (lo + hi) >>> 1;
+			if (Double.compare(arr[a0 + i], arr[b0 + k - i - 1]) <= 0)
+				lo = i + 1;
+			else
+				hi = i;
+		}
+		return lo;
+	}
+	
+	private static int[] boundsOf(IterationSpecs specs)
+	{
+		int[] out = new int[specs.threadCount + 1];
+		System.arraycopy(specs.starts, 0, out, 0, specs.threadCount);
+		out[specs.threadCount] = specs.end;
+		return out;
+	}
+	
+	/**
+	 * @return The run boundaries after each pair of runs is merged.
+	 */
+	private static int[] halve(int[] bounds)
+	{
+		int runs = bounds.length - 1, merged = (runs + 1) / 2;
+		int[] out = new int[merged + 1];
+		for (int i = 0; i < merged; i++)
+			out[i] = bounds[2 * i];
+		out[merged] = bounds[runs];
+		return out;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Replaces each element of the array with the sum of the elements up to it: including it if inclusive, and excluding it otherwise.
+	 * <p>Each thread sums its own segment, the segment sums are offset by those of the segments before, and then each thread scans its segment from its offset.
+	 * @param par
+	 * @param arr
+	 * @param inclusive
+	 */
+	public static void prefixSum(Parallelizer par, int[] arr, boolean inclusive)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		long[] offsets = new long[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			int sum = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				sum += arr[i];
+			offsets[th + 1] = sum;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		par.invokeEach((th) ->
+		{
+			int sum = (int) offsets[th], tmp;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+			{
+				tmp = arr[i];
+				arr[i] = inclusive ? (sum += tmp) : sum;
+				if (!inclusive)
+					sum += tmp;
+			}
+		});
+	}
+	
+	/**
+	 * Replaces each element of the array with the sum of the elements up to it: including it if inclusive, and excluding it otherwise.
+	 * @param par
+	 * @param arr
+	 * @param inclusive
+	 * @see ParallelArrays#prefixSum(Parallelizer, int[], boolean)
+	 */
+	public static void prefixSum(Parallelizer par, long[] arr, boolean inclusive)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		long[] offsets = new long[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			long sum = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				sum += arr[i];
+			offsets[th + 1] = sum;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		par.invokeEach((th) ->
+		{
+			long sum = offsets[th], tmp;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+			{
+				tmp = arr[i];
+				arr[i] = inclusive ? (sum += tmp) : sum;
+				if (!inclusive)
+					sum += tmp;
+			}
+		});
+	}
+	
+	/**
+	 * Replaces each element of the array with the sum of the elements up to it: including it if inclusive, and excluding it otherwise.
+	 * <p>Since the segments are summed separately, the rounding of the results may differ slightly from that of a serial scan.
+	 * @param par
+	 * @param arr
+	 * @param inclusive
+	 * @see ParallelArrays#prefixSum(Parallelizer, int[], boolean)
+	 */
+	public static void prefixSum(Parallelizer par, double[] arr, boolean inclusive)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		double[] offsets = new double[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			double sum = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				sum += arr[i];
+			offsets[th + 1] = sum;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		par.invokeEach((th) ->
+		{
+			double sum = offsets[th], tmp;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+			{
+				tmp = arr[i];
+				arr[i] = inclusive ? (sum += tmp) : sum;
+				if (!inclusive)
+					sum += tmp;
+			}
+		});
+	}
+	
+	////////////////////
+	
+	/** @return The least element of the array, or {@linkplain Integer#MAX_VALUE} if it is empty. */
+	public static int min(Parallelizer par, int[] arr) { return par.minInt(0, arr.length, (i) -> arr[i]); }
+	/** @return The greatest element of the array, or {@linkplain Integer#MIN_VALUE} if it is empty. */
+	public static int max(Parallelizer par, int[] arr) { return par.maxInt(0, arr.length, (i) -> arr[i]); }
+	/** @return The least element of the array, or {@linkplain Long#MAX_VALUE} if it is empty. */
+	public static long min(Parallelizer par, long[] arr) { return par.minLong(0, arr.length, (i) -> arr[i]); }
+	/** @return The greatest element of the array, or {@linkplain Long#MIN_VALUE} if it is empty. */
+	public static long max(Parallelizer par, long[] arr) { return par.maxLong(0, arr.length, (i) -> arr[i]); }
+	/** @return The least element of the array, as by {@linkplain Math#min(double, double)}, or {@linkplain Double#POSITIVE_INFINITY} if it is empty. */
+	public static double min(Parallelizer par, double[] arr) { return par.minDouble(0, arr.length, (i) -> arr[i]); }
+	/** @return The greatest element of the array, as by {@linkplain Math#max(double, double)}, or {@linkplain Double#NEGATIVE_INFINITY} if it is empty. */
+	public static double max(Parallelizer par, double[] arr) { return par.maxDouble(0, arr.length, (i) -> arr[i]); }
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the greatest element of the array, or -1 if it is empty.
+	 */
+	public static int argMax(Parallelizer par, int[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) -> x < 0 ? y : y < 0 ? x : arr[y] > arr[x] || (arr[y] == arr[x] && y < x) ? y : x);
+	}
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the least element of the array, or -1 if it is empty.
+	 */
+	public static int argMin(Parallelizer par, int[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) -> x < 0 ? y : y < 0 ? x : arr[y] < arr[x] || (arr[y] == arr[x] && y < x) ? y : x);
+	}
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the greatest element of the array, or -1 if it is empty.
+	 */
+	public static int argMax(Parallelizer par, long[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) -> x < 0 ? y : y < 0 ? x : arr[y] > arr[x] || (arr[y] == arr[x] && y < x) ? y : x);
+	}
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the least element of the array, or -1 if it is empty.
+	 */
+	public static int argMin(Parallelizer par, long[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) -> x < 0 ? y : y < 0 ? x : arr[y] < arr[x] || (arr[y] == arr[x] && y < x) ? y : x);
+	}
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the greatest element of the array, as ordered by {@linkplain Double#compare(double, double)}, or -1 if it is empty.
+	 */
+	public static int argMax(Parallelizer par, double[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) ->
+		{
+			if (x < 0 || y < 0)
+				return x < 0 ? y : x;
+			int c = Double.compare(arr[y], arr[x]);
+			return c > 0 || (c == 0 && y < x) ? y : x;
+		});
+	}
+	
+	/**
+	 * @param par
+	 * @param arr
+	 * @return The first index of the least element of the array, as ordered by {@linkplain Double#compare(double, double)}, or -1 if it is empty.
+	 */
+	public static int argMin(Parallelizer par, double[] arr)
+	{
+		return par.reduceInt(0, arr.length, -1, (i) -> i, (x, y) ->
+		{
+			if (x < 0 || y < 0)
+				return x < 0 ? y : x;
+			int c = Double.compare(arr[y], arr[x]);
+			return c < 0 || (c == 0 && y < x) ? y : x;
+		});
+	}
+	
+	////////////////////
+	
+	/**
+	 * Compacts the elements of the array which pass the filter into a new array, in their original order.
+	 * <p>Each thread counts the passing elements of its segment, from which the offset of each segment in the output is found, and then each thread copies its passing elements.
+	 * The filter is therefore called twice for each element, and must give the same answer each time.
+	 * @param par
+	 * @param arr
+	 * @param filter
+	 * @return A new array of the passing elements.
+	 */
+	public static int[] filter(Parallelizer par, int[] arr, IntPredicate filter)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		int[] offsets = new int[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			int count = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					count++;
+			offsets[th + 1] = count;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		int[] out = new int[offsets[specs.threadCount]];
+		par.invokeEach((th) ->
+		{
+			int at = offsets[th];
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					out[at++] = arr[i];
+		});
+		return out;
+	}
+	
+	/**
+	 * Compacts the elements of the array which pass the filter into a new array, in their original order.
+	 * @param par
+	 * @param arr
+	 * @param filter
+	 * @return A new array of the passing elements.
+	 * @see ParallelArrays#filter(Parallelizer, int[], IntPredicate)
+	 */
+	public static long[] filter(Parallelizer par, long[] arr, LongPredicate filter)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		int[] offsets = new int[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			int count = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					count++;
+			offsets[th + 1] = count;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		long[] out = new long[offsets[specs.threadCount]];
+		par.invokeEach((th) ->
+		{
+			int at = offsets[th];
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					out[at++] = arr[i];
+		});
+		return out;
+	}
+	
+	/**
+	 * Compacts the elements of the array which pass the filter into a new array, in their original order.
+	 * @param par
+	 * @param arr
+	 * @param filter
+	 * @return A new array of the passing elements.
+	 * @see ParallelArrays#filter(Parallelizer, int[], IntPredicate)
+	 */
+	public static double[] filter(Parallelizer par, double[] arr, DoublePredicate filter)
+	{
+		IterationSpecs specs = par.specsOf(0, arr.length);
+		int[] offsets = new int[specs.threadCount + 1];
+		par.invokeEach((th) ->
+		{
+			int count = 0;
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					count++;
+			offsets[th + 1] = count;
+		});
+		for (int th = 1; th <= specs.threadCount; th++)
+			offsets[th] += offsets[th - 1];
+		double[] out = new double[offsets[specs.threadCount]];
+		par.invokeEach((th) ->
+		{
+			int at = offsets[th];
+			for (int i = specs.starts[th]; i < specs.ends[th]; i++)
+				if (filter.test(arr[i]))
+					out[at++] = arr[i];
+		});
+		return out;
+	}
+	
+	////////////////////
+	
+	/**
+	 * Merges the outputs k0 (inclusive) to k1 (exclusive) of the stable merge of the runs A = [a0, a1) and B = [b0, b1), where a1 == b0 and outputs are indexed as the inputs.
+	 */
+	@FunctionalInterface
+	private static interface MergePiece
+	{
+		public void merge(int a0, int a1, int b0, int b1, int k0, int k1);
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 
+ * Receives the events of the tasks run by a {@linkplain Parallelizer}, as set by {@linkplain Parallelizer#metrics(ParallelMetrics)}.
+ * <p>Every method defaults to doing nothing, so implementations need only override the events they care for. Events are reported from whichever thread
+ * they occur on, so implementations must be thread-safe, and should be cheap, as they are called once or twice per task.
+ * <p>{@linkplain ParallelMetrics#NONE} is the default, for which no clock is read at all.
+ * 
+ * @author SerpentDagger
+ *
+ */
+public interface ParallelMetrics
+{
+	/** Records nothing. A {@linkplain Parallelizer} using it skips all timing. */
+	public static final ParallelMetrics NONE = new ParallelMetrics()
+	{
+		@Override
+		public boolean enabled()
+		{
+			return false;
+		}
+	};
+	
+	/**
+	 * @return Whether this should be reported to. If false, no other method is called.
+	 */
+	public default boolean enabled()
+	{
+		return true;
+	}
+	
+	/**
+	 * Called as tasks are handed to the pool.
+	 * <p>An {@linkplain Parallelizer.Ingest} reports each task before offering it to its queue, and then reports a count of -1 if the task is refused.
+	 * @param count The number of tasks submitted.
+	 */
+	public default void submitted(int count)
+	{}
+	
+	/**
+	 * Called on the worker thread, after each task has run.
+	 * @param waitNanos The time the task spent waiting to start, after it was submitted.
+	 * @param runNanos The time the task spent running.
+	 * @param failed Whether the task threw.
+	 */
+	public default void ran(long waitNanos, long runNanos, boolean failed)
+	{}
+	
+	/**
+	 * Called for tasks which were submitted but never ran, having been cancelled or discarded first.
+	 * @param count
+	 */
+	public default void dropped(int count)
+	{}
+	
+	/**
+	 * Called once every task of a {@linkplain Parallelizer.Batch} has completed.
+	 * @param makespanNanos The time from the submission of the batch to the completion of its last task.
+	 */
+	public default void batchDone(long makespanNanos)
+	{}
+	
+	/**
+	 * 
+	 * The standard implementation of {@linkplain ParallelMetrics}, which keeps a separate stripe of counters and histogram buckets for each worker thread.
+	 * Each stripe is only ever written by its own thread, so reporting a task costs a few plain stores rather than any atomic update, and workers never contend.
+	 * The stripes are summed when read.
+	 * <p>From the busy time of each platform worker, {@linkplain Striped#busyRatios()} gives the fraction of time each has spent running tasks.
+	 * Virtual threads are too many and too short-lived to be given stripes of their own, and instead share a small set of locked stripes,
+	 * which are counted together as a single worker named "virtual".
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Striped implements ParallelMetrics
+	{
+		private final LongAdder submitted = new LongAdder(), dropped = new LongAdder(), batches = new LongAdder();
+		private final LatencyHistogram makespan = new LatencyHistogram();
+		private volatile Stripes stripes = new Stripes();
+		
+		@Override
+		public void submitted(int count)
+		{
+			submitted.add(count);
+		}
+		
+		@Override
+		public void ran(long waitNanos, long runNanos, boolean failed)
+		{
+			Thread thread = Thread.currentThread();
+			if (thread.isVirtual())
+			{
+				Stripe shared = stripes.shared[(int) (thread.threadId() % stripes.shared.length)];
+				synchronized (shared)
+				{
+					shared.ran(waitNanos, runNanos, failed);
+				}
+			}
+			else
+				stripes.local.get().ran(waitNanos, runNanos, failed);
+		}
+		
+		@Override
+		public void dropped(int count)
+		{
+			dropped.add(count);
+		}
+		
+		@Override
+		public void batchDone(long makespanNanos)
+		{
+			batches.increment();
+			makespan.record(makespanNanos);
+		}
+		
+		/** @return The number of tasks submitted. */
+		public long submitted() { return submitted.sum(); }
+		/** @return The number of tasks which ran succesfully. */
+		public long completed() { return sum(Stripe.COMPLETED); }
+		/** @return The number of tasks which threw. */
+		public long failed() { return sum(Stripe.FAILED); }
+		/** @return The number of tasks which were submitted, but never ran. */
+		public long dropped() { return dropped.sum(); }
+		/** @return The number of batches completed. */
+		public long batches() { return batches.sum(); }
+		/** @return The number of tasks submitted which have yet to finish, whether waiting in a queue or running. */
+		public long pending() { return submitted() - completed() - failed() - dropped(); }
+		/** @return The times from the submission of each batch to the completion of its last task. */
+		public LatencyHistogram makespan() { return makespan; }
+		
+		/**
+		 * @return A snapshot of the times tasks spent waiting to start.
+		 */
+		public LatencyHistogram queueWait()
+		{
+			LatencyHistogram out = new LatencyHistogram();
+			for (Stripe s : stripes.all())
+				out.merge(s.wait, s.counts.get(Stripe.WAIT_TOTAL), s.counts.get(Stripe.WAIT_MAX));
+			return out;
+		}
+		
+		/**
+		 * @return A snapshot of the times tasks spent running.
+		 */
+		public LatencyHistogram runTime()
+		{
+			LatencyHistogram out = new LatencyHistogram();
+			for (Stripe s : stripes.all())
+				out.merge(s.run, s.counts.get(Stripe.RUN_TOTAL), s.counts.get(Stripe.RUN_MAX));
+			return out;
+		}
+		
+		/**
+		 * @return The fraction of the time since creation (or the last {@linkplain Striped#reset()}) which each worker has spent running tasks, by thread name,
+		 * in the order in which the workers first ran a task.
+		 */
+		public Map<String, Double> busyRatios()
+		{
+			Stripes here = stripes;
+			double elapsed = Math.max(1, System.nanoTime() - here.since);
+			Map<String, Double> out = new LinkedHashMap<>();
+			for (Stripe s : here.all())
+			{
+				long busy = s.counts.get(Stripe.RUN_TOTAL);
+				if (busy != 0)
+					out.merge(s.name, busy / elapsed, Double::sum);
+			}
+			return out;
+		}
+		
+		/**
+		 * Clears every count and time. Events reported concurrently with this call may or may not be cleared.
+		 */
+		public void reset()
+		{
+			stripes = new Stripes();
+			submitted.reset();
+			dropped.reset();
+			batches.reset();
+			makespan.reset();
+		}
+		
+		private long sum(int counter)
+		{
+			long out = 0;
+			for (Stripe s : stripes.all())
+				out += s.counts.get(counter);
+			return out;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "Submitted " + submitted() + ", completed " + completed() + ", failed " + failed() + ", dropped " + dropped() + ", pending " + pending()
+					+ "\nQueue wait: " + queueWait() + "\nRun time: " + runTime() + "\nMakespan of " + batches() + " batches: " + makespan + "\nBusy: " + busyRatios();
+		}
+		
+		/**
+		 * One generation of stripes, replaced as a whole by {@linkplain Striped#reset()}, so that a reset never races with the plain writes of a worker.
+		 */
+		private static class Stripes
+		{
+			private final long since = System.nanoTime();
+			private final ConcurrentLinkedQueue<Stripe> registered = new ConcurrentLinkedQueue<>();
+			private final ThreadLocal<Stripe> local = ThreadLocal.withInitial(this::register);
+			private final Stripe[] shared = new Stripe[Runtime.getRuntime().availableProcessors() * 2];
+			
+			private Stripes()
+			{
+				for (int i = 0; i < shared.length; i++)
+					shared[i] = new Stripe("virtual");
+			}
+			
+			private Stripe register()
+			{
+				Stripe out = new Stripe(Thread.currentThread().getName());
+				registered.add(out);
+				return out;
+			}
+			
+			private List<Stripe> all()
+			{
+				List<Stripe> out = new ArrayList<>(registered);
+				out.addAll(Arrays.asList(shared));
+				return out;
+			}
+		}
+		
+		/**
+		 * The counters of a single worker. Only its own thread writes to it (or, for virtual threads, whichever holds its lock),
+		 * through lazy sets, which are plain stores ordered for the reading thread.
+		 */
+		private static class Stripe
+		{
+			private static final int COMPLETED = 0, FAILED = 1, WAIT_TOTAL = 2, RUN_TOTAL = 3, WAIT_MAX = 4, RUN_MAX = 5;
+			
+			private final String name;
+			private final AtomicLongArray wait = new AtomicLongArray(LatencyHistogram.BUCKETS), run = new AtomicLongArray(LatencyHistogram.BUCKETS), counts = new AtomicLongArray(6);
+			
+			private Stripe(String name)
+			{
+				this.name = name;
+			}
+			
+			private void ran(long waitNanos, long runNanos, boolean failed)
+			{
+				waitNanos = Math.max(0, waitNanos);
+				runNanos = Math.max(0, runNanos);
+				add(wait, LatencyHistogram.indexOf(waitNanos), 1);
+				add(run, LatencyHistogram.indexOf(runNanos), 1);
+				add(counts, failed ? FAILED : COMPLETED, 1);
+				add(counts, WAIT_TOTAL, waitNanos);
+				add(counts, RUN_TOTAL, runNanos);
+				if (waitNanos > counts.getPlain(WAIT_MAX))
+					counts.lazySet(WAIT_MAX, waitNanos);
+				if (runNanos > counts.getPlain(RUN_MAX))
+					counts.lazySet(RUN_MAX, runNanos);
+			}
+			
+			private static void add(AtomicLongArray array, int index, long amount)
+			{
+				array.lazySet(index, array.getPlain(index) + amount);
+			}
+		}
+	}
+}
@@ -16,34 +16,100 @@
 
 package utilities;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.Cleaner;
 import java.lang.reflect.Array;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 /**
  * 
  * A class for simple implementation of parallel processing.
- * <p>Each instance of this class produces and maintains its own pool of worker threads through {@linkplain Executors#newFixedThreadPool(int)}. The pool will be shutdown through
- * {@linkplain Object#finalize()} when the instance leaves scope. You can shutdown the instance and its pool early by using {@linkplain Parallelizer#shutdown()}.
+ * <p>Each instance of this class produces and maintains its own pool of worker threads, as created by its {@linkplain Backend} (by default {@linkplain Executors#newFixedThreadPool(int)}),
+ * excepting on the {@linkplain Backend#SHARED} backend, where each instance is a cheap partition of one process-wide pool. The pool should be shut down through
+ * {@linkplain Parallelizer#close()} (or {@linkplain Parallelizer#shutdown()}), for which purpose this class is {@linkplain AutoCloseable}. As a safety net, the pool of an instance
+ * which becomes unreachable without being closed is shut down through a {@linkplain Cleaner}.
  * <p>Use of this class follows the flow of instantiation, adding of tasks through the task methods, and then running those tasks through
  * the run methods. You can block the managing thread until completion of the currently running tasks by using {@linkplain Parallelizer#await()}.
- * <p>You should not share and use one instance of this class among multiple threads.
+ * <p>Each run of tasks is tracked by its own {@linkplain Batch}, so any number of runs may be in flight at once. The methods which act upon "the most recent" run,
+ * such as {@linkplain Parallelizer#await()} and {@linkplain Parallelizer#whenDone(Runnable)}, are conveniences over the {@linkplain Batch} returned by {@linkplain Parallelizer#latest()}.
+ * <p>You should not share and use one instance of this class among multiple threads, excepting the {@linkplain Batch}es it returns, which may be used from any thread.
  * 
  * @author SerpentDagger
  *
  */
-public class Parallelizer
+public class Parallelizer implements AutoCloseable
 {
+	/** The stride, in array slots, between the per-thread results of primitive reductions, such that each thread writes to its own cache line. */
+	private static final int PAD_INT = 16, PAD_LONG = 8;
+	private static final Cleaner CLEANER = Cleaner.create();
+	
 	private int threadCount;
+	private final Backend backend;
 	private ExecutorService threads;
 	private ArrayList<Callable<?>> tasks = new ArrayList<>();
-	private RunContext current;
+	private volatile Batch<?> latest;
+	private Scratch[] scratch;
+	/**
+	 * The object registered with the {@linkplain Cleaner} in place of this instance, which is reachable for exactly as long as this instance is.
+	 * Registering it, rather than this, keeps the constructors from leaking this before a subclass is initialized.
+	 */
+	private final Object owner = new Object();
+	private Cleaner.Cleanable cleanable;
+	private long deadline = 0;
+	private double speculate = 0;
+	private boolean recordLatency = false;
+	private ParallelMetrics metrics = ParallelMetrics.NONE;
+	private volatile Adapter adapter;
+	private Dispatcher dispatcher;
+	private int fuseSize = 1;
+	private Fusion fusion;
 	
 	/**
 	 * Create a new {@linkplain Parallelizer} with a number of threads equal to the number of available processors of the runtime environment.
@@ -59,8 +125,33 @@ public class Parallelizer
 	 */
 	public Parallelizer(int threadCount)
 	{
+		this(threadCount, Backend.FIXED);
+	}
+	
+	/**
+	 * Create a new {@linkplain Parallelizer} with a number of threads equal to the number of available processors of the runtime environment, running on the given {@linkplain Backend}.
+	 * @param backend
+	 */
+	public Parallelizer(Backend backend)
+	{
+		this(Runtime.getRuntime().availableProcessors(), backend);
+	}
+	
+	/**
+	 * Create a new {@linkplain Parallelizer} with a given number of threads, running on the given {@linkplain Backend}.
+	 * @param threadCount
+	 * @param backend
+	 */
+	public Parallelizer(int threadCount, Backend backend)
+	{
+		if (backend == null)
+			throw new IllegalArgumentException("Parallelizer cannot use a null backend.");
+		checkThreadCount(threadCount);
 		this.threadCount = threadCount;
-		threads = Executors.newFixedThreadPool(threadCount);
+		this.backend = backend;
+		threads = backend.create(threadCount);
+		cleanable = CLEANER.register(owner, new PoolCloser(threads));
+		scratch = newScratch(threadCount, null);
 	}
 	
 	/**
@@ -74,16 +165,238 @@ public class Parallelizer
 	
 	/**
 	 * Updates the number of threads being used by shutting down the current pool and starting a new one.
-	 * <p>The {@linkplain Parallelizer} must be empty of tasks in order to do this.
+	 * <p>The {@linkplain Parallelizer} must be empty of tasks in order to do this. Any adaptation, as by {@linkplain Parallelizer#adapt(int, int)}, is stopped.
+	 * To resize the pool while tasks are running, use adaptation instead.
 	 * @param threadCount
 	 * @return this
 	 */
 	public Parallelizer updateThreadCount(int threadCount)
 	{
+		checkThreadCount(threadCount);
 		assertEmpty();
+		stopAdapting();
 		this.threadCount = threadCount;
-		threads.shutdown();
-		threads = Executors.newFixedThreadPool(threadCount);
+		cleanable.clean();
+		threads = backend.create(threadCount);
+		cleanable = CLEANER.register(owner, new PoolCloser(threads));
+		scratch = newScratch(threadCount, scratch);
+		if (dispatcher != null)
+			dispatcher = new Dispatcher(threads, dispatcher.maxSkips);
+		return this;
+	}
+	
+	private static void checkThreadCount(int threadCount)
+	{
+		if (threadCount < 1)
+			throw new IllegalArgumentException("Parallelizer must have at least one thread.");
+	}
+	
+	/**
+	 * Sets a deadline for each task of the batches of subsequent runs. A task still running once the deadline has passed since it started is abandoned:
+	 * its future completes exceptionally with a {@linkplain TimeoutException}, counted as a failure of its {@linkplain Batch}, and its thread is interrupted.
+	 * <p>Deadlines are checked periodically by a single shared thread, at an eighth of the deadline (but no more often than once a millisecond),
+	 * so a task may overrun its deadline by that much before being abandoned.
+	 * @param timeout The deadline, or 0 for none.
+	 * @param unit
+	 * @return this
+	 */
+	public Parallelizer deadline(long timeout, TimeUnit unit)
+	{
+		if (timeout < 0)
+			throw new IllegalArgumentException("Parallelizer deadline cannot be negative.");
+		deadline = unit.toNanos(timeout);
+		return this;
+	}
+	
+	/**
+	 * Enables speculative re-execution for the batches of subsequent runs. Once half of the tasks of a batch have completed, any task which has run for longer
+	 * than the given percentile of their latencies is started again on another worker. Whichever copy succeeds first completes the future of the task,
+	 * and the other is interrupted.
+	 * <p>This trades extra work for a shorter tail, when a few tasks are slowed by their worker rather than by their input. The tasks must therefore be idempotent,
+	 * and a copy can only start once a worker is free, so it is of most use when there are fewer stragglers than threads.
+	 * <p>Enabling speculation also enables {@linkplain Parallelizer#recordLatency(boolean)}.
+	 * @param percentile From 0 to 100, or 0 to disable speculation.
+	 * @return this
+	 */
+	public Parallelizer speculate(double percentile)
+	{
+		if (!(percentile >= 0 && percentile <= 100))
+			throw new IllegalArgumentException("Parallelizer speculation percentile must be from 0 to 100.");
+		speculate = percentile;
+		return this;
+	}
+	
+	/**
+	 * Sets whether the batches of subsequent runs record the running time of each of their tasks, into the {@linkplain LatencyHistogram} of {@linkplain Batch#latencies()}.
+	 * Recording costs two reads of {@linkplain System#nanoTime()} per task.
+	 * @param recordLatency
+	 * @return this
+	 */
+	public Parallelizer recordLatency(boolean recordLatency)
+	{
+		this.recordLatency = recordLatency;
+		return this;
+	}
+	
+	/**
+	 * Sets the {@linkplain ParallelMetrics} to which the tasks of subsequent runs, ingests and scopes report, such as a {@linkplain ParallelMetrics.Striped}.
+	 * <p>Reporting costs two reads of {@linkplain System#nanoTime()} per task, which are skipped entirely under the default, {@linkplain ParallelMetrics#NONE}.
+	 * @param metrics
+	 * @return this
+	 */
+	public Parallelizer metrics(ParallelMetrics metrics)
+	{
+		if (metrics == null)
+			throw new IllegalArgumentException("Parallelizer cannot use null metrics; use ParallelMetrics.NONE.");
+		this.metrics = metrics;
+		return this;
+	}
+	
+	/**
+	 * @return The {@linkplain ParallelMetrics} to which tasks are reported.
+	 */
+	public ParallelMetrics metrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Begins adapting the size of the pool to its workload, checking four times a second, as by {@linkplain Parallelizer#adapt(int, int, long, TimeUnit)}.
+	 * @param min
+	 * @param max
+	 * @return this
+	 */
+	public Parallelizer adapt(int min, int max)
+	{
+		return adapt(min, max, 250, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Begins adapting the size of the pool to its workload, so that mixed CPU- and I/O-bound tasks need not be tuned for by hand.
+	 * <p>At each interval, the throughput of tasks is compared with that of the previous interval: a change of size which raised throughput is continued,
+	 * and one which lowered it is reversed. While throughput is flat, the pool grows if tasks are waiting in the queue while the processors have time to spare,
+	 * and otherwise shrinks, so that it settles at the least size which keeps up. The pool never grows while the processors are saturated. Growth is sized from the measured blocking ratio of the tasks
+	 * (the fraction of their running time spent off the CPU), toward the available processors divided by one minus that ratio. Idle intervals are ignored.
+	 * <p>The pool is resized in place. Growing starts new workers at once, while shrinking only retires workers as they become idle, so running tasks are never interrupted.
+	 * Only tasks of runs, ingests and scopes begun after this call are measured. {@linkplain Parallelizer#threads()} is unaffected, so tasks added per thread,
+	 * such as by {@linkplain Parallelizer#parallelFor(int, int, IntConsumer)}, keep the same split.
+	 * <p>Supported on the {@linkplain Backend#FIXED}, {@linkplain Backend#FORK_JOIN} and {@linkplain Backend#SHARED} backends. On {@linkplain Backend#SHARED},
+	 * only the width of the partition of this instance is adapted, which cannot usefully exceed the size of the shared pool.
+	 * @param min The least size of the pool.
+	 * @param max The greatest size of the pool.
+	 * @param interval The time between adjustments.
+	 * @param unit
+	 * @return this
+	 * @throws IllegalStateException If the backend of this {@linkplain Parallelizer} cannot be resized in place.
+	 */
+	public Parallelizer adapt(int min, int max, long interval, TimeUnit unit)
+	{
+		if (min < 1 || max < min)
+			throw new IllegalArgumentException("Parallelizer adaptation requires 1 <= min <= max.");
+		if (interval <= 0)
+			throw new IllegalArgumentException("Parallelizer adaptation interval must be positive.");
+		if (!(threads instanceof Resizable))
+			throw new IllegalStateException("Parallelizer cannot adapt the pool of the " + backend + " backend.");
+		stopAdapting();
+		adapter = new Adapter(threads, min, max, unit.toNanos(interval));
+		return this;
+	}
+	
+	/**
+	 * Stops adapting the size of the pool, leaving it at its current size.
+	 * @return this
+	 */
+	public Parallelizer stopAdapting()
+	{
+		Adapter here = adapter;
+		if (here != null)
+			here.stop();
+		adapter = null;
+		return this;
+	}
+	
+	/**
+	 * @return The number of workers the pool is currently sized for, which differs from {@linkplain Parallelizer#threads()} while adapting,
+	 * or -1 on the {@linkplain Backend#VIRTUAL} and {@linkplain Backend#PINNED} backends, whose pools are not sized in that way.
+	 */
+	public int poolSize()
+	{
+		return threads instanceof Resizable ? ((Resizable) threads).size() : -1;
+	}
+	
+	/**
+	 * Enables the {@linkplain TaskClass}es of tasks, as by {@linkplain Parallelizer#enablePriorities(int)}, with a low class served after being passed over 64 times.
+	 * @return this
+	 */
+	public Parallelizer enablePriorities()
+	{
+		return enablePriorities(64);
+	}
+	
+	/**
+	 * Enables the {@linkplain TaskClass}es of tasks, so that tasks of a higher priority overtake those of a lower one which were submitted before them.
+	 * <p>Every subsequent task, including those of ingests and scopes, then waits in a queue of its class rather than in the queue of the pool, and is handed to the pool
+	 * only once a worker is free. The next task is taken from the class of the highest priority with tasks waiting; classes of equal priority share the workers
+	 * in proportion to their weights. So that bulk work cannot be starved outright by a constant stream of urgent work, a class with tasks waiting which has been
+	 * passed over maxSkips times in a row is served next regardless of priority.
+	 * <p>Tasks added without a class belong to {@linkplain TaskClass#DEFAULT}, as do the tasks of ingests and scopes opened without one. Running tasks are never preempted,
+	 * so an urgent task still waits for a worker to finish its current task.
+	 * <p>Not supported on the {@linkplain Backend#VIRTUAL} backend, which has no queue to reorder, nor on {@linkplain Backend#PINNED}, whose tasks are fixed to their lanes.
+	 * @param maxSkips
+	 * @return this
+	 * @throws IllegalStateException On the {@linkplain Backend#VIRTUAL} or {@linkplain Backend#PINNED} backends.
+	 */
+	public Parallelizer enablePriorities(int maxSkips)
+	{
+		if (backend == Backend.VIRTUAL || backend == Backend.PINNED)
+			throw new IllegalStateException("Parallelizer cannot order the tasks of the " + backend + " backend.");
+		if (maxSkips < 1)
+			throw new IllegalArgumentException("Parallelizer maxSkips must be positive.");
+		dispatcher = new Dispatcher(threads, maxSkips);
+		return this;
+	}
+	
+	/**
+	 * Disables the {@linkplain TaskClass}es of tasks, so that subsequent tasks are handed straight to the pool in the order in which they are run.
+	 * Tasks already waiting in their classes are still run.
+	 * @return this
+	 */
+	public Parallelizer disablePriorities()
+	{
+		dispatcher = null;
+		return this;
+	}
+	
+	/**
+	 * Fuses the tasks of subsequent runs into groups of the given size, each of which is handed to the pool as a single job, and runs its tasks one after another.
+	 * <p>This removes the per-task cost of submission and of the shared counters of the {@linkplain Batch}, which otherwise outweighs the work of very small tasks.
+	 * Results, failures and cancellation are still reported for each task through its own future.
+	 * <p>Groups are never so large that a run has fewer than four groups per thread, so that small runs are still spread among the workers.
+	 * Tasks added per thread or with a {@linkplain TaskClass} are never fused, so that they may still be routed by lane and by class.
+	 * @param batchSize The number of tasks per group, or 1 to disable fusion.
+	 * @return this
+	 */
+	public Parallelizer fuse(int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Parallelizer fusion size must be positive.");
+		fuseSize = batchSize;
+		fusion = null;
+		return this;
+	}
+	
+	/**
+	 * Fuses the tasks of subsequent runs as by {@linkplain Parallelizer#fuse(int)}, sizing the groups so that each runs for about the given duration.
+	 * The running time of a task is estimated from the groups already run, starting from groups of 16 tasks.
+	 * @param target The running time to aim for per group.
+	 * @param unit
+	 * @return this
+	 */
+	public Parallelizer fuseFor(long target, TimeUnit unit)
+	{
+		if (target <= 0)
+			throw new IllegalArgumentException("Parallelizer fusion target must be positive.");
+		fusion = new Fusion(unit.toNanos(target));
 		return this;
 	}
 	
@@ -98,6 +411,45 @@ public class Parallelizer
 		return this;
 	}
 	
+	/**
+	 * Add a Callable task to the list. The corresponding {@linkplain Future} will return the result of the task on succesful completion.
+	 * <p>Named apart from {@linkplain Parallelizer#task(Runnable)}, so that a lambda given to that is always added as a Runnable.
+	 * @param task
+	 * @return this
+	 */
+	public Parallelizer call(Callable<?> task)
+	{
+		tasks.add(task);
+		return this;
+	}
+	
+	/**
+	 * Add a Runnable task of the given {@linkplain TaskClass} to the list, as with {@linkplain Parallelizer#task(Runnable)}.
+	 * Classes only take effect while priorities are enabled, as by {@linkplain Parallelizer#enablePriorities()}.
+	 * @param taskClass
+	 * @param task
+	 * @return this
+	 */
+	public Parallelizer task(TaskClass taskClass, Runnable task)
+	{
+		return call(taskClass, Executors.callable(task));
+	}
+	
+	/**
+	 * Add a Callable task of the given {@linkplain TaskClass} to the list, as with {@linkplain Parallelizer#call(Callable)}.
+	 * Classes only take effect while priorities are enabled, as by {@linkplain Parallelizer#enablePriorities()}.
+	 * @param taskClass
+	 * @param task
+	 * @return this
+	 */
+	public Parallelizer call(TaskClass taskClass, Callable<?> task)
+	{
+		if (taskClass == null)
+			throw new IllegalArgumentException("Parallelizer cannot add a task of null class.");
+		tasks.add(new ClassedTask(taskClass, task));
+		return this;
+	}
+	
 	/**
 	 * Adds the multiple Runnable tasks to the list. The corresponding {@linkplain Future}s will return null on succesful completion.
 	 * @param tasks
@@ -113,19 +465,31 @@ public class Parallelizer
 	/**
 	 * Adds a {@linkplain ByThread} task to be executed for each thread. The task will recieve the index of the thread on which it is run. The corresponding {@linkplain Future}s will return null on succesful completion.
 	 * <p>Useful for alloting threads to chunks of an array.
+	 * <p>On the {@linkplain Backend#VIRTUAL} backend, one task is added per logical lane, and each receives its lane index.
 	 * @param task
 	 * @return this
 	 */
 	public Parallelizer taskEach(ByThread task)
 	{
 		for (int i = 0; i < threadCount; i++)
-		{
-			final int ii = i;
-			tasks.add(() -> { task.run(ii); return null; });
-		}
+			tasks.add(new LaneTask(i, task));
 		return this;
 	}
 	
+	/**
+	 * Adds a {@linkplain ByLane} task to be executed for each thread. The task will recieve the index of its thread, and the {@linkplain Scratch} of that thread.
+	 * The corresponding {@linkplain Future}s will return null on succesful completion.
+	 * <p>The same {@linkplain Scratch} is handed to a given thread index by every run, so buffers taken from it are reused rather than allocated again.
+	 * A {@linkplain Scratch} must only be used by one task at a time, which is assured on the {@linkplain Backend#PINNED} backend, and otherwise holds
+	 * so long as runs using the same thread index do not overlap.
+	 * @param task
+	 * @return this
+	 */
+	public Parallelizer taskEach(ByLane task)
+	{
+		return taskEach((th) -> task.run(th, scratch[th]));
+	}
+	
 	/**
 	 * Runs all tasks in the list.
 	 * @return An array of {@linkplain Future}s as returned from {@linkplain ExecutorService#submit(Callable)}.
@@ -148,34 +512,11 @@ public class Parallelizer
 	/**
 	 * Runs the latest countToRun tasks in the list.
 	 * @param countToRun
-	 * @return An array of {@linkplain Future}s as returned from {@linkplain ExecutorService#submit(Callable)}.
+	 * @return An array of the {@linkplain Future}s of the tasks, in the order in which the tasks were added.
 	 */
 	public Future<?>[] outputRun(int countToRun)
 	{
-		if (countToRun > tasks.size())
-			throw new IllegalArgumentException("Parallelizer cannot run more tasks than are in its list.");
-		current = new RunContext(countToRun);
-		final RunContext here = current;
-		Iterator<Callable<?>> it = tasks.iterator();
-		for (int i = tasks.size() - countToRun; i < countToRun && it.hasNext(); i++)
-		{
-			final Callable<?> task = it.next();
-			here.output[i] = threads.submit(() ->
-			{
-				try
-				{
-					return task.call();
-				}
-				finally
-				{
-					here.latch.countDown();
-					if (here.latch.getCount() == 0)
-						here.runDone();
-				}
-			});
-			it.remove();
-		}
-		return here.output;
+		return batchRun(countToRun).futures();
 	}
 	
 	/**
@@ -185,10 +526,161 @@ public class Parallelizer
 	 */
 	public Parallelizer run(int countToRun)
 	{
-		outputRun(countToRun);
+		batchRun(countToRun);
 		return this;
 	}
 	
+	/**
+	 * Runs all tasks in the list.
+	 * @param <T> The type of output expected from <b>each</b> task.
+	 * @return A {@linkplain Batch} holding a {@linkplain CompletableFuture} for each task.
+	 */
+	public <T> Batch<T> batchRunAll()
+	{
+		return batchRun(tasks.size());
+	}
+	
+	/**
+	 * Runs the latest countToRun tasks in the list.
+	 * <p>Unlike {@linkplain Parallelizer#outputRun(int)}, the returned {@linkplain Batch} never needs to be polled: its futures may be chained upon,
+	 * and the failure of any task is kept and reported rather than discarded.
+	 * @param <T> The type of output expected from <b>each</b> task.
+	 * @param countToRun
+	 * @return A {@linkplain Batch} holding a {@linkplain CompletableFuture} for each task, in the order in which the tasks were added.
+	 */
+	public <T> Batch<T> batchRun(int countToRun)
+	{
+		if (countToRun > tasks.size() || countToRun < 0)
+			throw new IllegalArgumentException("Parallelizer cannot run more tasks than are in its list.");
+		List<Callable<?>> toRun = tasks.subList(tasks.size() - countToRun, tasks.size());
+		final Batch<T> batch = new Batch<>(toRun.toArray(new Callable<?>[countToRun]));
+		toRun.clear();
+		latest = batch;
+		batch.time(threads, deadline, speculate, recordLatency);
+		launch(batch);
+		return batch;
+	}
+	
+	private void launch(Batch<?> batch)
+	{
+		ParallelMetrics reporting = reporting();
+		if (reporting != null)
+			batch.measure(reporting);
+		final Runnable[] jobs = jobsOf(batch);
+		if (dispatcher != null)
+			dispatcher.execute(jobs);
+		else
+			backend.execute(threads, jobs);
+	}
+	
+	/**
+	 * Divides a batch into jobs, fusing runs of adjacent tasks which may be fused, as set by {@linkplain Parallelizer#fuse(int)}.
+	 */
+	private Runnable[] jobsOf(Batch<?> batch)
+	{
+		Fusion here = fusion;
+		int n = batch.size(), size = Math.max(1, Math.min(here != null ? here.size() : fuseSize, n / (4 * Math.max(1, threadCount))));
+		batch.fusion = here;
+		if (size == 1)
+		{
+			final Runnable[] jobs = new Runnable[n];
+			for (int i = 0; i < n; i++)
+				jobs[i] = new Job(batch, i, i + 1);
+			return jobs;
+		}
+		ArrayList<Runnable> jobs = new ArrayList<>(n / size + 1);
+		int from = 0;
+		while (from < n)
+		{
+			int to = from + 1;
+			if (Job.fusable(batch.tasks[from]))
+				while (to < n && to - from < size && Job.fusable(batch.tasks[to]))
+					to++;
+			jobs.add(new Job(batch, from, to));
+			from = to;
+		}
+		return jobs.toArray(new Runnable[jobs.size()]);
+	}
+	
+	/**
+	 * Opens a bounded {@linkplain Ingest} over the pool of this {@linkplain Parallelizer}, through which tasks may be submitted continuously rather than in batches.
+	 * Up to {@linkplain Parallelizer#threads()} tasks of the ingest run at once.
+	 * @param bound The greatest number of tasks which may wait in the ingest queue.
+	 * @param overflow What to do with a task submitted while the queue is full.
+	 * @return The new {@linkplain Ingest}.
+	 */
+	public Ingest ingest(int bound, Overflow overflow)
+	{
+		return ingest(bound, overflow, TaskClass.DEFAULT);
+	}
+	
+	/**
+	 * Opens a bounded {@linkplain Ingest} as by {@linkplain Parallelizer#ingest(int, Overflow)}, whose tasks belong to the given {@linkplain TaskClass}.
+	 * <p>While priorities are enabled, each worker of the ingest returns to the queue of its class after every task, so that waiting tasks of other classes
+	 * are served between those of the ingest just as between those of runs.
+	 * @param bound The greatest number of tasks which may wait in the ingest queue.
+	 * @param overflow What to do with a task submitted while the queue is full.
+	 * @param taskClass
+	 * @return The new {@linkplain Ingest}.
+	 */
+	public Ingest ingest(int bound, Overflow overflow, TaskClass taskClass)
+	{
+		if (taskClass == null)
+			throw new IllegalArgumentException("Parallelizer cannot open an ingest of null class.");
+		return new Ingest(executor(), threadCount, bound, overflow, taskClass, reporting());
+	}
+	
+	/**
+	 * Begins building a {@linkplain Pipeline} whose stages run upon the pool of this {@linkplain Parallelizer}.
+	 * <p>Each worker of each stage holds a thread for as long as the pipeline runs, so the stages may have no more workers in total than {@linkplain Parallelizer#threads()},
+	 * excepting on the {@linkplain Backend#VIRTUAL} backend.
+	 * <p>Not supported on the {@linkplain Backend#SHARED} backend, as workers blocked upon the queues between stages would hold threads of the process-wide pool,
+	 * starving every other instance upon it.
+	 * @param <I> The type of the items to be pushed into the pipeline.
+	 * @param capacity The capacity, in batches, of the queue before each stage.
+	 * @param batchSize The number of items passed between stages at once.
+	 * @return A new {@linkplain Pipeline.Builder}, with no stages.
+	 * @throws IllegalStateException On the {@linkplain Backend#SHARED} backend.
+	 */
+	public <I> Pipeline.Builder<I, I> pipeline(int capacity, int batchSize)
+	{
+		if (backend == Backend.SHARED)
+			throw new IllegalStateException("Parallelizer cannot run a Pipeline upon the " + backend + " backend.");
+		return new Pipeline.Builder<>(this, capacity, batchSize);
+	}
+	
+	/**
+	 * Opens a {@linkplain Scope} over the pool of this {@linkplain Parallelizer}, into which subtasks may be forked and then joined as a unit.
+	 * <p>Scopes may be opened from within tasks of this {@linkplain Parallelizer}, including from within the subtasks of another scope.
+	 * @return The new {@linkplain Scope}, which should be closed, as by try-with-resources.
+	 */
+	public Scope scope()
+	{
+		return scope(TaskClass.DEFAULT);
+	}
+	
+	/**
+	 * Opens a {@linkplain Scope} as by {@linkplain Parallelizer#scope()}, whose subtasks belong to the given {@linkplain TaskClass}.
+	 * @param taskClass
+	 * @return The new {@linkplain Scope}, which should be closed, as by try-with-resources.
+	 */
+	public Scope scope(TaskClass taskClass)
+	{
+		if (taskClass == null)
+			throw new IllegalArgumentException("Parallelizer cannot open a scope of null class.");
+		return new Scope(executor(), taskClass, reporting());
+	}
+	
+	/**
+	 * @param <T> The type of output expected from <b>each</b> task.
+	 * @return The {@linkplain Batch} of the most recent call of {@linkplain Parallelizer#batchRun(int)} (or equivelant), or null if none has been made.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Batch<T> latest()
+	{
+		return (Batch<T>) latest;
+	}
+	
 	/**
 	 * Await execution of the tasks started with the most recent call of {@linkplain Parallelizer#outputRun(int)} (or equivelant).
 	 * <p>This method will block until those tasks have finished.
@@ -196,12 +688,28 @@ public class Parallelizer
 	 */
 	public Parallelizer await()
 	{
-		buryInterrupted(() -> current.latch.await());
+		Batch<?> here = latest;
+		if (here != null)
+			here.await();
 		return this;
 	}
 	
 	/**
-	 * Defines a Runnable to be run when the most recently launched execution of tasks finishes. The Runnable will be called on whichever worker thread finishes its task last.
+	 * Await execution of the tasks started with the most recent call of {@linkplain Parallelizer#outputRun(int)} (or equivelant), for at most the given time.
+	 * @param timeout
+	 * @param unit
+	 * @return Whether those tasks have finished.
+	 * @throws InterruptedException If the calling thread is interrupted while waiting.
+	 */
+	public boolean await(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		Batch<?> here = latest;
+		return here == null || here.await(timeout, unit);
+	}
+	
+	/**
+	 * Defines a Runnable to be run when the most recently launched execution of tasks finishes. The Runnable will be called on whichever worker thread finishes its task last,
+	 * or immediately on the calling thread if the execution has already finished.
 	 * <p>This method is designed to be called after {@linkplain Parallelizer#outputRun(int)} (or equivelant), and before {@linkplain Parallelizer#await()}.
 	 * <p>This method can be called for any number of individual asynchronous run methods. Example:<p>
 	 * <pre>{@code
@@ -213,11 +721,13 @@ par.run(6).whenDone(done2);
 ...}</pre>
 	 * @param whenDone Runnable to be run when execution finishes.
 	 * @return this
+	 * @see Batch#whenDone(Runnable)
 	 */
 	public Parallelizer whenDone(Runnable whenDone)
 	{
-		if (current != null)
-			current.whenDone.set(whenDone);
+		Batch<?> here = latest;
+		if (here != null)
+			here.whenDone(whenDone);
 		return this;
 	}
 	
@@ -229,7 +739,8 @@ par.run(6).whenDone(done2);
 	 */
 	public <T> T[] castOutput()
 	{
-		return castOutput(current.output);
+		Batch<?> here = latest;
+		return here == null ? null : castOutput(here.futures());
 	}
 	
 	/**
@@ -237,7 +748,8 @@ par.run(6).whenDone(done2);
 	 */
 	public Future<?>[] getLatestOutput()
 	{
-		return current == null ? null : current.output;
+		Batch<?> here = latest;
+		return here == null ? null : here.futures();
 	}
 	
 	/**
@@ -246,20 +758,25 @@ par.run(6).whenDone(done2);
 	 */
 	public Parallelizer assertEmpty()
 	{
-		assert tasks.isEmpty() && (current == null || current.latch == null || current.latch.getCount() == 0);
+		assert tasks.isEmpty() && (latest == null || latest.isDone());
 		return this;
 	}
 	
 	/**
-	 * Uses {@linkplain ExecutorService#shutdown()} to shut down the thread pool.
+	 * Uses {@linkplain ExecutorService#shutdown()} to shut down the thread pool. Tasks already running or submitted will still be completed.
+	 * <p>On the {@linkplain Backend#SHARED} backend, only the partition of this instance is shut down.
 	 */
 	public void shutdown()
 	{
-		threads.shutdown();
+		stopAdapting();
+		cleanable.clean();
 	}
 	
+	/**
+	 * Equivalent to {@linkplain Parallelizer#shutdown()}.
+	 */
 	@Override
-	public void finalize() throws Throwable
+	public void close()
 	{
 		shutdown();
 	}
@@ -267,13 +784,46 @@ par.run(6).whenDone(done2);
 	////////////////////
 	
 	/**
-	 * @return The number of threads managed by this {@linkplain Parallelizer}.
+	 * @return The number of threads managed by this {@linkplain Parallelizer}, or the number of logical lanes on the {@linkplain Backend#VIRTUAL} backend.
 	 */
 	public int threads()
 	{
 		return threadCount;
 	}
 	
+	/**
+	 * @return The {@linkplain Backend} on which this {@linkplain Parallelizer} runs its tasks.
+	 */
+	public Backend backend()
+	{
+		return backend;
+	}
+	
+	/**
+	 * @return The metrics to which tasks should report, combining those set by {@linkplain Parallelizer#metrics(ParallelMetrics)} with any {@linkplain Adapter},
+	 * or null if there are none.
+	 */
+	private ParallelMetrics reporting()
+	{
+		Adapter here = adapter;
+		if (!metrics.enabled())
+			return here;
+		return here == null ? metrics : new Tee(metrics, here);
+	}
+	
+	/**
+	 * @return Where tasks outside of batches should be executed: the {@linkplain Dispatcher} while priorities are enabled, and otherwise the pool.
+	 */
+	private ExecutorService executor()
+	{
+		return dispatcher != null ? dispatcher : threads;
+	}
+	
+	ExecutorService pool()
+	{
+		return threads;
+	}
+	
 	/**
 	 * @return The number of un-started tasks stored in this {@linkplain Parallelizer}.
 	 */
@@ -293,6 +843,15 @@ par.run(6).whenDone(done2);
 		return new IterationSpecs(start, end, threadCount);
 	}
 	
+	/**
+	 * @param thread
+	 * @return The {@linkplain Scratch} of the given thread index.
+	 */
+	public Scratch scratch(int thread)
+	{
+		return scratch[thread];
+	}
+	
 	/**
 	 * Fill the supplied array with the results of the filler, called for each index of the array or thread (whichever is fewer).
 	 * <p>Useful for allocating resources to different threads.
@@ -323,24 +882,283 @@ par.run(6).whenDone(done2);
 		return out;
 	}
 	
-	////////////////////
-	
 	/**
-	 * Cast the supplied array of {@linkplain Future}s to a new array T[] by filling that array with the results of {@linkplain Future#get()}.
-	 * <p>Unfinished Futures will be skipped (corresponding slot in the array left null). If each Future is unfinished, the returned array will be null.
-	 * @param <T>
-	 * @param output The array of Futures whose results are to be fetched.
-	 * @return A new array T[] containing the results of the supplied Futures.
+	 * Runs the {@linkplain ByThread} task once for each thread, and blocks until every thread has finished.
+	 * <p>Unlike {@linkplain Parallelizer#taskEach(ByThread)}, the tasks do not pass through the task list, so this may be used regardless of the tasks stored in this {@linkplain Parallelizer}.
+	 * <p>This method must not be called from within a task running on this {@linkplain Parallelizer}, since the calling worker would wait upon workers that may never become free.
+	 * @param task
+	 * @return this
+	 * @throws CompletionException Wrapping the first checked exception thrown by a thread. Unchecked exceptions and errors are rethrown directly.
 	 */
-	@SuppressWarnings("unchecked")
-	public static <T> T[] castOutput(Future<?>[] output)
+	public Parallelizer invokeEach(ByThread task)
 	{
-		try
-		{
-			T first = null;
-			int i = 0;
-			while (i < output.length)
-			{
+		final Callable<?>[] lanes = new Callable<?>[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			lanes[i] = new LaneTask(i, task);
+		Batch<?> batch = new Batch<>(lanes);
+		launch(batch);
+		batch.await().rethrow();
+		return this;
+	}
+	
+	/**
+	 * Runs the {@linkplain ByLane} task once for each thread, and blocks until every thread has finished.
+	 * @param task
+	 * @return this
+	 * @see Parallelizer#invokeEach(ByThread)
+	 * @see Parallelizer#taskEach(ByLane)
+	 */
+	public Parallelizer invokeEach(ByLane task)
+	{
+		return invokeEach((th) -> task.run(th, scratch[th]));
+	}
+	
+	/**
+	 * Runs the body for each index from start (inclusive) to end (exclusive), and blocks until all indices are done.
+	 * <p>Indices are handed out in chunks that shrink as the range is consumed (see {@linkplain Parallelizer#parallelForChunked(int, int, int, IntRangeConsumer)}),
+	 * so threads that finish early take on more of the range.
+	 * @param start
+	 * @param end
+	 * @param body Called once for each index.
+	 * @return this
+	 */
+	public Parallelizer parallelFor(int start, int end, IntConsumer body)
+	{
+		return parallelForChunked(start, end, 1, (lo, hi) ->
+		{
+			for (int i = lo; i < hi; i++)
+				body.accept(i);
+		});
+	}
+	
+	/**
+	 * Runs the body for each index from start (inclusive) to end (exclusive), and blocks until all indices are done.
+	 * @param start
+	 * @param end
+	 * @param body Called once for each index.
+	 * @return this
+	 * @see Parallelizer#parallelFor(int, int, IntConsumer)
+	 */
+	public Parallelizer parallelForLong(long start, long end, LongConsumer body)
+	{
+		return parallelForChunkedLong(start, end, 1, (lo, hi) ->
+		{
+			for (long i = lo; i < hi; i++)
+				body.accept(i);
+		});
+	}
+	
+	/**
+	 * Runs the body over chunks of the range from start (inclusive) to end (exclusive), and blocks until the whole range is done.
+	 * @param start
+	 * @param end
+	 * @param body Called once for each chunk.
+	 * @return this
+	 * @see Parallelizer#parallelForChunked(int, int, int, IntRangeConsumer)
+	 */
+	public Parallelizer parallelForChunked(int start, int end, IntRangeConsumer body)
+	{
+		return parallelForChunked(start, end, 1, body);
+	}
+	
+	/**
+	 * Runs the body over chunks of the range from start (inclusive) to end (exclusive), and blocks until the whole range is done.
+	 * <p>Rather than the static, equal split of an {@linkplain IterationSpecs}, each thread repeatedly claims the next chunk from a shared cursor.
+	 * Each chunk is a fraction of the indices remaining when it is claimed, so chunks start large and shrink toward minGrain as the range runs out,
+	 * which keeps every thread busy until the end even when some indices cost far more than others.
+	 * @param start
+	 * @param end
+	 * @param minGrain The smallest number of indices to be given in a single chunk (excepting the last).
+	 * @param body Called once for each chunk.
+	 * @return this
+	 */
+	public Parallelizer parallelForChunked(int start, int end, int minGrain, IntRangeConsumer body)
+	{
+		if (end <= start)
+			return this;
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, minGrain);
+		return invokeEach((th) ->
+		{
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				body.accept((int) lo, (int) cursor.endOf(lo));
+		});
+	}
+	
+	/**
+	 * Runs the body over chunks of the range from start (inclusive) to end (exclusive), and blocks until the whole range is done.
+	 * <p>The range may hold more than {@linkplain Long#MAX_VALUE} indices, as from {@linkplain Long#MIN_VALUE} to {@linkplain Long#MAX_VALUE}.
+	 * @param start
+	 * @param end
+	 * @param minGrain The smallest number of indices to be given in a single chunk (excepting the last).
+	 * @param body Called once for each chunk.
+	 * @return this
+	 * @see Parallelizer#parallelForChunked(int, int, int, IntRangeConsumer)
+	 */
+	public Parallelizer parallelForChunkedLong(long start, long end, long minGrain, LongRangeConsumer body)
+	{
+		if (end <= start)
+			return this;
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, minGrain);
+		return invokeEach((th) ->
+		{
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				body.accept(lo, cursor.endOf(lo));
+		});
+	}
+	
+	/**
+	 * Reduces the range from start (inclusive) to end (exclusive) in parallel, and blocks until the result is ready.
+	 * <p>Each thread claims chunks of the range as in {@linkplain Parallelizer#parallelFor(int, int, IntConsumer)}, and folds them into its own accumulator,
+	 * starting from a fresh identity. The per-thread accumulators are then merged pairwise in parallel, as a tree, rather than one by one on the calling thread:
+	 * of each pair of threads, the later to finish merges the pair, and carries on up the tree.
+	 * @param <A> The type of the accumulator.
+	 * @param start
+	 * @param end
+	 * @param identity Supplies the starting accumulator of each thread. Called once per thread.
+	 * @param accumulator Folds an index into an accumulator, returning the new accumulator (which may be the same, mutated, object).
+	 * @param combiner Merges two accumulators, returning the merged accumulator. Since threads claim chunks in no fixed order,
+	 * the indices folded into either argument are interleaved, so the reduction must not depend upon the order of indices.
+	 * @return The reduction of the whole range.
+	 */
+	public <A> A parallelReduce(int start, int end, Supplier<A> identity, Accumulator<A> accumulator, BinaryOperator<A> combiner)
+	{
+		final Object[] partial = new Object[threadCount];
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, 1);
+		final TreeCombine combine = new TreeCombine(threadCount, (into, from) ->
+		{
+			@SuppressWarnings("unchecked")
+			A merged = combiner.apply((A) partial[into], (A) partial[from]);
+			partial[into] = merged;
+		});
+		invokeEach((th) ->
+		{
+			A acc = identity.get();
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				for (int i = (int) lo, hi = (int) cursor.endOf(lo); i < hi; i++)
+					acc = accumulator.accumulate(acc, i);
+			partial[th] = acc;
+			combine.settle(th);
+		});
+		@SuppressWarnings("unchecked")
+		A out = (A) partial[0];
+		return out;
+	}
+	
+	/**
+	 * Reduces the mapped values of the range from start (inclusive) to end (exclusive) in parallel, and blocks until the result is ready.
+	 * @param start
+	 * @param end
+	 * @param identity The identity value of the operator.
+	 * @param map Maps each index to the value to be reduced.
+	 * @param op An associative and commutative operator to reduce the values.
+	 * @return The reduction of the whole range, or the identity if it is empty.
+	 * @see Parallelizer#parallelReduce(int, int, Supplier, Accumulator, BinaryOperator)
+	 */
+	public int reduceInt(int start, int end, int identity, IntUnaryOperator map, IntBinaryOperator op)
+	{
+		final int[] partial = new int[threadCount * PAD_INT];
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, 1);
+		final TreeCombine combine = new TreeCombine(threadCount, (into, from) -> partial[into * PAD_INT] = op.applyAsInt(partial[into * PAD_INT], partial[from * PAD_INT]));
+		invokeEach((th) ->
+		{
+			int acc = identity;
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				for (int i = (int) lo, hi = (int) cursor.endOf(lo); i < hi; i++)
+					acc = op.applyAsInt(acc, map.applyAsInt(i));
+			partial[th * PAD_INT] = acc;
+			combine.settle(th);
+		});
+		return partial[0];
+	}
+	
+	/**
+	 * Reduces the mapped values of the range from start (inclusive) to end (exclusive) in parallel, and blocks until the result is ready.
+	 * @param start
+	 * @param end
+	 * @param identity The identity value of the operator.
+	 * @param map Maps each index to the value to be reduced.
+	 * @param op An associative and commutative operator to reduce the values.
+	 * @return The reduction of the whole range, or the identity if it is empty.
+	 * @see Parallelizer#parallelReduce(int, int, Supplier, Accumulator, BinaryOperator)
+	 */
+	public long reduceLong(int start, int end, long identity, IntToLongFunction map, LongBinaryOperator op)
+	{
+		final long[] partial = new long[threadCount * PAD_LONG];
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, 1);
+		final TreeCombine combine = new TreeCombine(threadCount, (into, from) -> partial[into * PAD_LONG] = op.applyAsLong(partial[into * PAD_LONG], partial[from * PAD_LONG]));
+		invokeEach((th) ->
+		{
+			long acc = identity;
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				for (int i = (int) lo, hi = (int) cursor.endOf(lo); i < hi; i++)
+					acc = op.applyAsLong(acc, map.applyAsLong(i));
+			partial[th * PAD_LONG] = acc;
+			combine.settle(th);
+		});
+		return partial[0];
+	}
+	
+	/**
+	 * Reduces the mapped values of the range from start (inclusive) to end (exclusive) in parallel, and blocks until the result is ready.
+	 * @param start
+	 * @param end
+	 * @param identity The identity value of the operator.
+	 * @param map Maps each index to the value to be reduced.
+	 * @param op An associative and commutative operator to reduce the values.
+	 * @return The reduction of the whole range, or the identity if it is empty.
+	 * @see Parallelizer#parallelReduce(int, int, Supplier, Accumulator, BinaryOperator)
+	 */
+	public double reduceDouble(int start, int end, double identity, IntToDoubleFunction map, DoubleBinaryOperator op)
+	{
+		final double[] partial = new double[threadCount * PAD_LONG];
+		final RangeCursor cursor = new RangeCursor(start, end, threadCount, 1);
+		final TreeCombine combine = new TreeCombine(threadCount, (into, from) -> partial[into * PAD_LONG] = op.applyAsDouble(partial[into * PAD_LONG], partial[from * PAD_LONG]));
+		invokeEach((th) ->
+		{
+			double acc = identity;
+			long lo;
+			while ((lo = cursor.claim()) < end)
+				for (int i = (int) lo, hi = (int) cursor.endOf(lo); i < hi; i++)
+					acc = op.applyAsDouble(acc, map.applyAsDouble(i));
+			partial[th * PAD_LONG] = acc;
+			combine.settle(th);
+		});
+		return partial[0];
+	}
+	
+	public int sumInt(int start, int end, IntUnaryOperator map) { return reduceInt(start, end, 0, map, Integer::sum); }
+	public int minInt(int start, int end, IntUnaryOperator map) { return reduceInt(start, end, Integer.MAX_VALUE, map, Math::min); }
+	public int maxInt(int start, int end, IntUnaryOperator map) { return reduceInt(start, end, Integer.MIN_VALUE, map, Math::max); }
+	public long sumLong(int start, int end, IntToLongFunction map) { return reduceLong(start, end, 0L, map, Long::sum); }
+	public long minLong(int start, int end, IntToLongFunction map) { return reduceLong(start, end, Long.MAX_VALUE, map, Math::min); }
+	public long maxLong(int start, int end, IntToLongFunction map) { return reduceLong(start, end, Long.MIN_VALUE, map, Math::max); }
+	public double sumDouble(int start, int end, IntToDoubleFunction map) { return reduceDouble(start, end, 0.0, map, Double::sum); }
+	public double minDouble(int start, int end, IntToDoubleFunction map) { return reduceDouble(start, end, Double.POSITIVE_INFINITY, map, Math::min); }
+	public double maxDouble(int start, int end, IntToDoubleFunction map) { return reduceDouble(start, end, Double.NEGATIVE_INFINITY, map, Math::max); }
+	
+	////////////////////
+	
+	/**
+	 * Cast the supplied array of {@linkplain Future}s to a new array T[] by filling that array with the results of {@linkplain Future#get()}.
+	 * <p>Unfinished Futures will be skipped (corresponding slot in the array left null). If each Future is unfinished, the returned array will be null.
+	 * @param <T>
+	 * @param output The array of Futures whose results are to be fetched.
+	 * @return A new array T[] containing the results of the supplied Futures.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T[] castOutput(Future<?>[] output)
+	{
+		try
+		{
+			T first = null;
+			int i = 0;
+			while (i < output.length)
+			{
 				if (output[i].isDone())
 					first = (T) output[i].get();
 				if (first == null)
@@ -361,22 +1179,85 @@ par.run(6).whenDone(done2);
 		return null; // No exception should ever be thrown, because only done futures are considered for the output.
 	}
 	
-	private static void buryInterrupted(Interruptable from)
+	private static Scratch[] newScratch(int threadCount, Scratch[] old)
 	{
-		try
-		{
-			from.run();
-		}
-		catch (InterruptedException e)
-		{}
+		Scratch[] out = new Scratch[threadCount];
+		for (int i = 0; i < threadCount; i++)
+			out[i] = old != null && i < old.length ? old[i] : new Scratch();
+		return out;
+	}
+	
+	private static void rethrow(Throwable failure)
+	{
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		throw new CompletionException(failure);
 	}
 	
 	///////////////////
 	
 	@FunctionalInterface
-	private static interface Interruptable
+	private static interface Merge
+	{
+		public void merge(int into, int from);
+	}
+	
+	/**
+	 * Merges the per-thread results of a reduction into index 0, as a tree of pairwise merges run by the threads themselves as they finish.
+	 * <p>Each level merges index i + stride into index i, for every i that is a multiple of 2 * stride. Every index above 0 is the right of exactly one pair,
+	 * so counts the arrivals at that pair: the first thread to arrive leaves, and the second merges the pair and carries it on to the next level.
+	 */
+	private static class TreeCombine
+	{
+		private final int count;
+		private final AtomicIntegerArray arrived;
+		private final Merge merge;
+		
+		private TreeCombine(int count, Merge merge)
+		{
+			this.count = count;
+			this.merge = merge;
+			arrived = new AtomicIntegerArray(count);
+		}
+		
+		/**
+		 * Called by each thread once its own result is written.
+		 * @param th The index of the thread.
+		 */
+		private void settle(int th)
+		{
+			int at = th;
+			for (int stride = 1; stride < count; stride <<= 1)
+			{
+				int left = at & ~stride, right = left + stride;
+				if (right >= count)
+					continue;
+				if (arrived.getAndIncrement(right) == 0)
+					return;
+				merge.merge(left, right);
+				at = left;
+			}
+		}
+	}
+	
+	/**
+	 * A function which folds an index into an accumulator, for use in {@linkplain Parallelizer#parallelReduce(int, int, Supplier, Accumulator, BinaryOperator)}.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 * @param <A> The type of the accumulator.
+	 */
+	@FunctionalInterface
+	public static interface Accumulator<A>
 	{
-		public void run() throws InterruptedException;
+		/**
+		 * @param acc The current accumulator.
+		 * @param index The index to be folded in.
+		 * @return The new accumulator.
+		 */
+		public A accumulate(A acc, int index);
 	}
 	
 	/**
@@ -414,25 +1295,2439 @@ par.run(6).whenDone(done2);
 		public void run(int thread);
 	}
 	
+	/**
+	 * 
+	 * A function which should be run on a thread-by-thread basis, distinguished by the supplied thread index, and given the {@linkplain Scratch} of that thread.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	@FunctionalInterface
+	public static interface ByLane
+	{
+		/**
+		 * The method to be run on each thread, distinguished by the supplied thread index.
+		 * @param thread The index of the thread on which the code is being run.
+		 * @param scratch The reusable buffers of that thread.
+		 */
+		public void run(int thread, Scratch scratch);
+	}
+	
+	/**
+	 * 
+	 * A function which should be run over a chunk of int indices.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	@FunctionalInterface
+	public static interface IntRangeConsumer
+	{
+		/**
+		 * The method to be run over the chunk.
+		 * @param lo The first index of the chunk (inclusive).
+		 * @param hi The last index of the chunk (exclusive).
+		 */
+		public void accept(int lo, int hi);
+	}
+	
+	/**
+	 * 
+	 * A function which should be run over a chunk of long indices.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	@FunctionalInterface
+	public static interface LongRangeConsumer
+	{
+		/**
+		 * The method to be run over the chunk.
+		 * @param lo The first index of the chunk (inclusive).
+		 * @param hi The last index of the chunk (exclusive).
+		 */
+		public void accept(long lo, long hi);
+	}
+	
 	//////////////////////
 	
-	private static class RunContext
+	/**
+	 * 
+	 * The execution backend of a {@linkplain Parallelizer}, which determines how its worker pool is built and how each run of tasks is handed to that pool.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static enum Backend
+	{
+		/**
+		 * A pool as from {@linkplain Executors#newFixedThreadPool(int)}. Every task is submitted individually through the single shared queue of the pool.
+		 */
+		FIXED
+		{
+			@Override
+			protected ExecutorService create(int threadCount)
+			{
+				return new FixedPool(threadCount);
+			}
+		},
+		/**
+		 * A {@linkplain ForkJoinPool} in async (FIFO) mode. Each run of tasks enters the pool as a single submission, which is then split recursively
+		 * onto the per-worker deques, so idle workers steal from busy ones rather than all contending on one queue.
+		 * <p>Preferable when running large numbers of small tasks.
+		 */
+		FORK_JOIN
+		{
+			@Override
+			protected ExecutorService create(int threadCount)
+			{
+				return new StealingPool(threadCount);
+			}
+			
+			@Override
+			protected void execute(ExecutorService pool, Runnable[] jobs)
+			{
+				if (jobs.length != 0)
+					((ForkJoinPool) pool).execute(new Spread(jobs, 0, jobs.length));
+			}
+		
+		},
+		/**
+		 * An executor from {@linkplain Executors#newVirtualThreadPerTaskExecutor()}, which starts a new virtual thread for every task.
+		 * <p>Suited to blocking (I/O-bound) tasks, any number of which may wait at once without holding a platform thread.
+		 * The thread count of a {@linkplain Parallelizer} on this backend is a count of logical lanes rather than of threads:
+		 * {@linkplain Parallelizer#taskEach(ByThread)} adds one task per lane, and {@linkplain Parallelizer#threads()} reports the lane count.
+		 */
+		VIRTUAL
+		{
+			@Override
+			protected ExecutorService create(int threadCount)
+			{
+				return Executors.newVirtualThreadPerTaskExecutor();
+			}
+		},
+		/**
+		 * One single-threaded worker per lane. Tasks added through {@linkplain Parallelizer#taskEach(ByThread)} (or equivalent) always run upon the worker of their own index,
+		 * so that data touched by a given index, such as its {@linkplain Scratch}, stays with one thread and in the caches of its core. Other tasks are dealt to the workers in turn.
+		 */
+		PINNED
+		{
+			@Override
+			protected ExecutorService create(int threadCount)
+			{
+				return new LanePool(threadCount);
+			}
+			
+			@Override
+			protected void execute(ExecutorService pool, Runnable[] jobs)
+			{
+				LanePool lanes = (LanePool) pool;
+				for (Runnable job : jobs)
+				{
+					if (job == null)
+						continue;
+					int lane = job instanceof Job ? ((Job) job).lane() : -1;
+					if (lane < 0)
+						lanes.execute(job);
+					else
+						lanes.execute(lane, job);
+				}
+			}
+		},
+		/**
+		 * A partition of a single, process-wide pool of daemon threads, sized to the available processors. Each {@linkplain Parallelizer} on this backend
+		 * runs no more than its thread count of tasks at once upon the shared pool, and owns no threads of its own, so instances are cheap to create and discard.
+		 * <p>Shutting down an instance on this backend shuts down only its partition.
+		 * <p>As the threads are shared, tasks on this backend should not block for long. {@linkplain Pipeline}s, whose workers block upon the queues between
+		 * their stages, are not supported.
+		 */
+		SHARED
+		{
+			@Override
+			protected ExecutorService create(int threadCount)
+			{
+				return new Partition(SharedPool.POOL, threadCount);
+			}
+		};
+		
+		/**
+		 * Creates the worker pool used by this backend.
+		 * @param threadCount
+		 * @return A new pool with the given number of threads.
+		 */
+		protected abstract ExecutorService create(int threadCount);
+		
+		/**
+		 * Hands the given jobs to a pool previously created by this backend. Null jobs are skipped.
+		 * @param pool
+		 * @param jobs
+		 */
+		protected void execute(ExecutorService pool, Runnable[] jobs)
+		{
+			for (Runnable job : jobs)
+				if (job != null)
+					pool.execute(job);
+		}
+	}
+	
+	/**
+	 * A pool which may be resized in place, as by {@linkplain Parallelizer#adapt(int, int, long, TimeUnit)}. Only the pools of the {@linkplain Backend}s
+	 * which support resizing implement it.
+	 */
+	private static interface Resizable
+	{
+		/**
+		 * @return The number of workers the pool is sized for.
+		 */
+		int size();
+		
+		/**
+		 * Resizes the pool in place, without interrupting running tasks.
+		 * @param size
+		 */
+		void resize(int size);
+	}
+	
+	/**
+	 * The pool of {@linkplain Backend#FIXED}: as from {@linkplain Executors#newFixedThreadPool(int)}, but resizable.
+	 */
+	private static class FixedPool extends ThreadPoolExecutor implements Resizable
+	{
+		private FixedPool(int threadCount)
+		{
+			super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		}
+		
+		@Override
+		public int size()
+		{
+			return getCorePoolSize();
+		}
+		
+		@Override
+		public void resize(int size)
+		{
+			if (size > getMaximumPoolSize())
+			{
+				setMaximumPoolSize(size);
+				setCorePoolSize(size);
+			}
+			else
+			{
+				setCorePoolSize(size);
+				setMaximumPoolSize(size);
+			}
+		}
+	}
+	
+	/**
+	 * The pool of {@linkplain Backend#FORK_JOIN}: a {@linkplain ForkJoinPool} in async mode, resized through its parallelism.
+	 */
+	private static class StealingPool extends ForkJoinPool implements Resizable
 	{
-		private CountDownLatch latch;
-		private Future<?>[] output;
-		private AtomicReference<Runnable> whenDone;
+		private StealingPool(int threadCount)
+		{
+			super(threadCount, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		}
+		
+		@Override
+		public int size()
+		{
+			return getParallelism();
+		}
 		
-		private RunContext(int toRun)
+		@Override
+		public void resize(int size)
 		{
-			latch = new CountDownLatch(toRun);
-			output = new Future<?>[toRun];
+			setParallelism(size);
+		}
+	}
+	
+	/**
+	 * Shuts down a pool on behalf of a {@linkplain Parallelizer}, without holding a reference to it, as required by {@linkplain Cleaner}.
+	 */
+	private static class PoolCloser implements Runnable
+	{
+		private final ExecutorService pool;
+		
+		private PoolCloser(ExecutorService pool)
+		{
+			this.pool = pool;
+		}
+		
+		@Override
+		public void run()
+		{
+			pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Holds the process-wide pool of {@linkplain Backend#SHARED}, which is only created upon first use.
+	 */
+	private static class SharedPool
+	{
+		private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+	
+	/**
+	 * Holds the single daemon thread which checks the deadlines and stragglers of running {@linkplain Batch}es, and drives each {@linkplain Adapter},
+	 * which is only created upon first use.
+	 */
+	private static class Watcher
+	{
+		private static final ScheduledThreadPoolExecutor POOL = create();
+		
+		private static ScheduledThreadPoolExecutor create()
+		{
+			ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, (r) ->
+			{
+				Thread thread = new Thread(r, "Parallelizer-Watcher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			pool.setRemoveOnCancelPolicy(true);
+			return pool;
+		}
+	}
+	
+	/**
+	 * Reports to two {@linkplain ParallelMetrics} at once.
+	 */
+	private static class Tee implements ParallelMetrics
+	{
+		private final ParallelMetrics a, b;
+		
+		private Tee(ParallelMetrics a, ParallelMetrics b)
+		{
+			this.a = a;
+			this.b = b;
+		}
+		
+		@Override public void submitted(int count) { a.submitted(count); b.submitted(count); }
+		@Override public void ran(long waitNanos, long runNanos, boolean failed) { a.ran(waitNanos, runNanos, failed); b.ran(waitNanos, runNanos, failed); }
+		@Override public void dropped(int count) { a.dropped(count); b.dropped(count); }
+		@Override public void batchDone(long makespanNanos) { a.batchDone(makespanNanos); b.batchDone(makespanNanos); }
+	}
+	
+	/**
+	 * The controller of {@linkplain Parallelizer#adapt(int, int, long, TimeUnit)}, which measures tasks as {@linkplain ParallelMetrics}, and resizes the pool
+	 * from the {@linkplain Watcher} thread. It holds only the pool, and not the {@linkplain Parallelizer}, so that the {@linkplain Cleaner} of an unreachable instance still runs,
+	 * after which the adapter stops itself.
+	 * <p>The CPU time of the workers is read per thread, excepting upon a {@linkplain Partition}, whose threads also run the tasks of other instances,
+	 * and which instead meters the CPU time of its own tasks.
+	 */
+	private static class Adapter implements ParallelMetrics
+	{
+		private static final ThreadMXBean CPU = ManagementFactory.getThreadMXBean();
+		/**
+		 * The relative change of throughput regarded as noise, the greatest blocking ratio trusted, the CPU use regarded as saturated,
+		 * and the queue wait, relative to running time, regarded as unmet demand.
+		 */
+		private static final double FLAT = 0.05, MAX_BLOCKING = 0.99, SATURATED = 0.9, QUEUED = 0.1;
+		
+		private final ExecutorService pool;
+		private final Resizable sizing;
+		private final int min, max, processors = Runtime.getRuntime().availableProcessors();
+		private final LongAdder completed = new LongAdder(), busy = new LongAdder(), waited = new LongAdder();
+		private final ConcurrentLinkedQueue<Thread> workers = new ConcurrentLinkedQueue<>();
+		private final ThreadLocal<Boolean> registered = ThreadLocal.withInitial(this::register);
+		private final ScheduledFuture<?> control;
+		/** Only touched by the {@linkplain Watcher}. */
+		private final HashMap<Thread, Long> lastCpu = new HashMap<>();
+		private long lastAt = System.nanoTime(), lastCompleted, lastBusy, lastWaited, lastMetered;
+		private double lastThroughput = -1, blocking;
+		private int direction = 0;
+		
+		private Adapter(ExecutorService pool, int min, int max, long interval)
+		{
+			this.pool = pool;
+			sizing = (Resizable) pool;
+			this.min = min;
+			this.max = max;
+			if (pool instanceof Partition)
+			{
+				Partition partition = (Partition) pool;
+				partition.metering.incrementAndGet();
+				lastMetered = partition.cpu.sum();
+			}
+			int size = sizing.size();
+			if (size < min || size > max)
+				sizing.resize(Math.min(max, Math.max(min, size)));
+			control = Watcher.POOL.scheduleAtFixedRate(this::adjust, interval, interval, TimeUnit.NANOSECONDS);
+		}
+		
+		private Boolean register()
+		{
+			workers.add(Thread.currentThread());
+			return true;
+		}
+		
+		@Override
+		public void ran(long waitNanos, long runNanos, boolean failed)
+		{
+			completed.increment();
+			busy.add(runNanos);
+			waited.add(waitNanos);
+			registered.get();
+		}
+		
+		private void stop()
+		{
+			if (control.cancel(false) && pool instanceof Partition)
+				((Partition) pool).metering.decrementAndGet();
+		}
+		
+		/**
+		 * @return The CPU time used by the workers since the last call, in nanoseconds, or -1 if it cannot be measured.
+		 */
+		private long cpuSince()
+		{
+			if (!CPU.isThreadCpuTimeSupported() || !CPU.isThreadCpuTimeEnabled())
+				return -1;
+			if (pool instanceof Partition)
+			{
+				long metered = ((Partition) pool).cpu.sum(), out = metered - lastMetered;
+				lastMetered = metered;
+				return out;
+			}
+			long out = 0;
+			for (Thread worker : workers)
+			{
+				long cpu = worker.isAlive() ? CPU.getThreadCpuTime(worker.threadId()) : -1;
+				if (cpu < 0)
+				{
+					workers.remove(worker);
+					lastCpu.remove(worker);
+					continue;
+				}
+				Long last = lastCpu.put(worker, cpu);
+				out += cpu - (last == null ? 0 : last);
+			}
+			return out;
+		}
+		
+		private void adjust()
+		{
+			if (pool.isShutdown())
+			{
+				stop();
+				return;
+			}
+			long now = System.nanoTime(), done = completed.sum(), busyNow = busy.sum(), waitedNow = waited.sum(), cpu = cpuSince();
+			long elapsed = Math.max(1, now - lastAt), doneSince = done - lastCompleted, busySince = busyNow - lastBusy, waitedSince = waitedNow - lastWaited;
+			double throughput = doneSince / (double) elapsed;
+			lastAt = now;
+			lastCompleted = done;
+			lastBusy = busyNow;
+			lastWaited = waitedNow;
+			if (doneSince == 0)
+				return;
+			boolean saturated = cpu >= 0 && cpu >= SATURATED * elapsed * processors, queued = waitedSince > QUEUED * busySince;
+			// Only trusted while the processors have time to spare, as otherwise time spent waiting for a processor looks like blocking.
+			if (cpu >= 0 && busySince > 0 && !saturated)
+				blocking = Math.min(MAX_BLOCKING, Math.max(0, 1 - cpu / (double) busySince));
+			int size = sizing.size(), step = Math.max(1, size / 8);
+			if (lastThroughput >= 0 && Math.abs(throughput - lastThroughput) > FLAT * lastThroughput && direction != 0)
+				direction = throughput > lastThroughput ? direction : -direction;
+			else if (queued && !saturated)
+			{
+				direction = 1;
+				step = Math.max(step, Math.min(size, (int) Math.ceil(processors / (1 - blocking)) - size));
+			}
+			else
+				direction = -1;
+			if (saturated && direction > 0)
+				direction = -1;
+			lastThroughput = throughput;
+			int next = Math.min(max, Math.max(min, size + direction * step));
+			if (next != size)
+				sizing.resize(next);
+		}
+	}
+	
+	/**
+	 * Holds the tasks of a {@linkplain Parallelizer} with priorities enabled in one queue per {@linkplain TaskClass}, and runs them upon the pool
+	 * through as many draining workers as the pool has threads, each of which takes the next task by class whenever it finishes one.
+	 * <p>Classes of higher priority are always served first, excepting a class passed over maxSkips times in a row. Among classes of equal priority,
+	 * the next is chosen by stride scheduling: each class advances its pass by the inverse of its weight when served, and the class with the least pass is served.
+	 */
+	private static class Dispatcher extends AbstractExecutorService
+	{
+		/** The pass advanced by a class of weight 1 when served. */
+		private static final long STRIDE = 1 << 20;
+		
+		private final ExecutorService pool;
+		private final int maxSkips;
+		/** Ordered by descending priority. */
+		private final ArrayList<ClassQueue> queues = new ArrayList<>();
+		private final HashMap<TaskClass, ClassQueue> byClass = new HashMap<>();
+		private int active = 0, queued = 0;
+		private boolean shutdown = false;
+		
+		private Dispatcher(ExecutorService pool, int maxSkips)
+		{
+			this.pool = pool;
+			this.maxSkips = maxSkips;
+		}
+		
+		/**
+		 * @return The number of workers to run at once, which follows the size of an adapting pool.
+		 */
+		private int width()
+		{
+			return pool instanceof Resizable ? Math.max(1, ((Resizable) pool).size()) : 1;
+		}
+		
+		@Override
+		public void execute(Runnable command)
+		{
+			execute(new Runnable[] { command });
+		}
+		
+		private void execute(Runnable[] jobs)
+		{
+			int start = 0;
+			synchronized (this)
+			{
+				if (shutdown)
+					throw new RejectedExecutionException("Parallelizer dispatcher has been shut down.");
+				for (Runnable job : jobs)
+				{
+					if (job == null)
+						continue;
+					enqueue(job instanceof Classed ? ((Classed) job).taskClass() : TaskClass.DEFAULT, job);
+				}
+				start = Math.max(0, Math.min(queued, width() - active));
+				active += start;
+			}
+			for (int i = 0; i < start; i++)
+			{
+				try
+				{
+					pool.execute(this::drain);
+				}
+				catch (RejectedExecutionException e)
+				{
+					synchronized (this)
+					{
+						active -= start - i;
+					}
+					throw e;
+				}
+			}
+		}
+		
+		private void enqueue(TaskClass taskClass, Runnable job)
+		{
+			ClassQueue queue = byClass.get(taskClass);
+			if (queue == null)
+			{
+				byClass.put(taskClass, queue = new ClassQueue(taskClass));
+				int at = 0;
+				while (at < queues.size() && queues.get(at).taskClass.priority() >= taskClass.priority())
+					at++;
+				queues.add(at, queue);
+			}
+			if (queue.jobs.isEmpty())
+			{
+				// A class returning from idleness starts level with its peers, rather than being owed the turns it did not need.
+				for (ClassQueue peer : queues)
+					if (peer != queue && !peer.jobs.isEmpty() && peer.taskClass.priority() == taskClass.priority())
+						queue.pass = Math.max(queue.pass, peer.pass);
+				queue.skipped = 0;
+			}
+			queue.jobs.add(job);
+			queued++;
+		}
+		
+		/**
+		 * @return The next job to run, or null if none are waiting, or if the calling worker should retire because the pool has shrunk.
+		 */
+		private synchronized Runnable next(boolean retireIfWide)
+		{
+			if (queued == 0 || (retireIfWide && active > width()))
+			{
+				active--;
+				if (active == 0)
+					notifyAll();
+				return null;
+			}
+			ClassQueue chosen = null;
+			for (ClassQueue queue : queues)
+			{
+				if (queue.jobs.isEmpty())
+					continue;
+				if (queue.skipped >= maxSkips)
+				{
+					chosen = queue;
+					break;
+				}
+			}
+			if (chosen == null)
+			{
+				for (ClassQueue queue : queues)
+				{
+					if (queue.jobs.isEmpty())
+						continue;
+					if (chosen != null && queue.taskClass.priority() < chosen.taskClass.priority())
+						break;
+					if (chosen == null || queue.pass < chosen.pass)
+						chosen = queue;
+				}
+			}
+			for (ClassQueue queue : queues)
+				if (queue != chosen && !queue.jobs.isEmpty())
+					queue.skipped++;
+			chosen.skipped = 0;
+			chosen.pass += STRIDE / chosen.taskClass.weight();
+			queued--;
+			return chosen.jobs.poll();
+		}
+		
+		private void drain()
+		{
+			Runnable job = next(false);
+			while (job != null)
+			{
+				try
+				{
+					job.run();
+				}
+				catch (Throwable t)
+				{
+					Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), t);
+				}
+				job = next(true);
+			}
+		}
+		
+		@Override
+		public synchronized void shutdown()
+		{
+			shutdown = true;
+		}
+		
+		@Override
+		public synchronized List<Runnable> shutdownNow()
+		{
+			shutdown = true;
+			List<Runnable> out = new ArrayList<>();
+			for (ClassQueue queue : queues)
+			{
+				out.addAll(queue.jobs);
+				queue.jobs.clear();
+			}
+			queued = 0;
+			return out;
+		}
+		
+		@Override
+		public synchronized boolean isShutdown()
+		{
+			return shutdown;
+		}
+		
+		@Override
+		public synchronized boolean isTerminated()
+		{
+			return shutdown && active == 0 && queued == 0;
+		}
+		
+		@Override
+		public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+		{
+			long end = System.nanoTime() + unit.toNanos(timeout);
+			while (!isTerminated())
+			{
+				long left = end - System.nanoTime();
+				if (left <= 0)
+					return false;
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+			return true;
+		}
+		
+		private static class ClassQueue
+		{
+			private final TaskClass taskClass;
+			private final ArrayDeque<Runnable> jobs = new ArrayDeque<>();
+			private long pass = 0;
+			private int skipped = 0;
+			
+			private ClassQueue(TaskClass taskClass)
+			{
+				this.taskClass = taskClass;
+			}
+		}
+	}
+	
+	/**
+	 * A logical slice of a shared pool, which runs up to a fixed number of its tasks at once upon that pool, and may be shut down without affecting it.
+	 */
+	private static class Partition extends AbstractExecutorService implements Resizable
+	{
+		private final ExecutorService pool;
+		private volatile int width;
+		/** The number of adapters metering the CPU time of the tasks of this partition, into cpu, as only they need it. */
+		private final AtomicInteger metering = new AtomicInteger();
+		private final LongAdder cpu = new LongAdder();
+		private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger active = new AtomicInteger();
+		private volatile boolean shutdown = false;
+		
+		private Partition(ExecutorService pool, int width)
+		{
+			this.pool = pool;
+			this.width = Math.max(1, width);
+		}
+		
+		@Override
+		public void execute(Runnable command)
+		{
+			if (shutdown)
+				throw new RejectedExecutionException("Parallelizer partition has been shut down.");
+			queue.add(command);
+			if (claimWorker())
+				pool.execute(this::drain);
+		}
+		
+		@Override
+		public int size()
+		{
+			return width;
+		}
+		
+		/**
+		 * Changes the number of tasks run at once, starting extra workers for any tasks already waiting. Excess workers retire as they find the queue empty.
+		 */
+		@Override
+		public void resize(int width)
+		{
+			this.width = Math.max(1, width);
+			while (!queue.isEmpty() && claimWorker())
+				pool.execute(this::drain);
+		}
+		
+		private void drain()
+		{
+			Runnable task;
+			do
+			{
+				while ((task = queue.poll()) != null)
+				{
+					long start = metering.get() > 0 ? Adapter.CPU.getCurrentThreadCpuTime() : -1;
+					try
+					{
+						task.run();
+					}
+					catch (Throwable t)
+					{
+						Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), t);
+					}
+					if (start >= 0)
+						cpu.add(Adapter.CPU.getCurrentThreadCpuTime() - start);
+				}
+			}
+			while (!retire());
+		}
+		
+		private boolean claimWorker()
+		{
+			int current;
+			do
+			{
+				current = active.get();
+				if (current >= width)
+					return false;
+			}
+			while (!active.compareAndSet(current, current + 1));
+			return true;
+		}
+		
+		private boolean retire()
+		{
+			if (active.decrementAndGet() == 0)
+			{
+				synchronized (this)
+				{
+					notifyAll();
+				}
+			}
+			return queue.isEmpty() || !claimWorker();
+		}
+		
+		@Override
+		public void shutdown()
+		{
+			shutdown = true;
+		}
+		
+		@Override
+		public List<Runnable> shutdownNow()
+		{
+			shutdown = true;
+			List<Runnable> out = new ArrayList<>();
+			Runnable task;
+			while ((task = queue.poll()) != null)
+				out.add(task);
+			return out;
+		}
+		
+		@Override
+		public boolean isShutdown()
+		{
+			return shutdown;
+		}
+		
+		@Override
+		public boolean isTerminated()
+		{
+			return shutdown && active.get() == 0 && queue.isEmpty();
+		}
+		
+		@Override
+		public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+		{
+			long deadline = System.nanoTime() + unit.toNanos(timeout), left;
+			while (!isTerminated())
+			{
+				if ((left = deadline - System.nanoTime()) <= 0)
+					return false;
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * A pool of single-threaded workers, one per lane.
+	 */
+	private static class LanePool extends AbstractExecutorService
+	{
+		private final ExecutorService[] lanes;
+		private final AtomicInteger next = new AtomicInteger();
+		
+		private LanePool(int threadCount)
+		{
+			lanes = new ExecutorService[threadCount];
+			for (int i = 0; i < threadCount; i++)
+				lanes[i] = Executors.newSingleThreadExecutor();
+		}
+		
+		private void execute(int lane, Runnable command)
+		{
+			lanes[lane % lanes.length].execute(command);
+		}
+		
+		@Override
+		public void execute(Runnable command)
+		{
+			execute(Math.floorMod(next.getAndIncrement(), lanes.length), command);
+		}
+		
+		@Override
+		public void shutdown()
+		{
+			for (ExecutorService lane : lanes)
+				lane.shutdown();
+		}
+		
+		@Override
+		public List<Runnable> shutdownNow()
+		{
+			List<Runnable> out = new ArrayList<>();
+			for (ExecutorService lane : lanes)
+				out.addAll(lane.shutdownNow());
+			return out;
+		}
+		
+		@Override
+		public boolean isShutdown()
+		{
+			for (ExecutorService lane : lanes)
+				if (!lane.isShutdown())
+					return false;
+			return true;
+		}
+		
+		@Override
+		public boolean isTerminated()
+		{
+			for (ExecutorService lane : lanes)
+				if (!lane.isTerminated())
+					return false;
+			return true;
+		}
+		
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+		{
+			long deadline = System.nanoTime() + unit.toNanos(timeout);
+			for (ExecutorService lane : lanes)
+				if (!lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+					return false;
+			return true;
+		}
+	}
+	
+	/**
+	 * Forks the right half of its range until a single job remains, which is run directly. Forked halves land on the deque of the forking worker, where they can be stolen.
+	 */
+	@SuppressWarnings("serial")
+	private static class Spread extends RecursiveAction
+	{
+		private final Runnable[] jobs;
+		private final int from, to;
+		
+		private Spread(Runnable[] jobs, int from, int to)
+		{
+			this.jobs = jobs;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			int hi = to;
+			while (hi - from > 1)
+			{
+				int mid = (from + hi) >>> 1;
+				new Spread(jobs, mid, hi).fork();
+				hi = mid;
+			}
+			if (jobs[from] != null)
+				jobs[from].run();
+		}
+	}
+	
+	/**
+	 * A task added for a particular thread index, as by {@linkplain Parallelizer#taskEach(ByThread)}.
+	 */
+	private static class LaneTask implements Callable<Object>
+	{
+		private final int lane;
+		private final ByThread task;
+		
+		private LaneTask(int lane, ByThread task)
+		{
+			this.lane = lane;
+			this.task = task;
+		}
+		
+		@Override
+		public Object call()
+		{
+			task.run(lane);
+			return null;
+		}
+	}
+	
+	/**
+	 * A job which the {@linkplain Dispatcher} queues under its own {@linkplain TaskClass}, rather than {@linkplain TaskClass#DEFAULT}.
+	 */
+	private static interface Classed
+	{
+		TaskClass taskClass();
+	}
+	
+	/**
+	 * A job of an ingest or scope, handed to the {@linkplain Dispatcher} under the class with which it was opened.
+	 */
+	private static class Routed implements Runnable, Classed
+	{
+		private final TaskClass taskClass;
+		private final Runnable job;
+		
+		private Routed(TaskClass taskClass, Runnable job)
+		{
+			this.taskClass = taskClass;
+			this.job = job;
+		}
+		
+		@Override
+		public TaskClass taskClass()
+		{
+			return taskClass;
+		}
+		
+		@Override
+		public void run()
+		{
+			job.run();
+		}
+	}
+	
+	/**
+	 * A task added with a {@linkplain TaskClass}, by which the {@linkplain Dispatcher} may find its class.
+	 */
+	private static class ClassedTask implements Callable<Object>
+	{
+		private final TaskClass taskClass;
+		private final Callable<?> task;
+		
+		private ClassedTask(TaskClass taskClass, Callable<?> task)
+		{
+			this.taskClass = taskClass;
+			this.task = task;
+		}
+		
+		@Override
+		public Object call() throws Exception
+		{
+			return task.call();
+		}
+	}
+	
+	/**
+	 * The state of {@linkplain Parallelizer#fuseFor(long, TimeUnit)}: an estimate of the running time of a task, as measured from the fused jobs run so far.
+	 */
+	private static class Fusion
+	{
+		private static final int FIRST = 16, MAX = 1 << 16;
+		
+		private final long target;
+		/** Races between workers may lose a sample, which does not matter to an estimate. */
+		private volatile double taskNanos = -1;
+		
+		private Fusion(long target)
+		{
+			this.target = target;
+		}
+		
+		private int size()
+		{
+			double estimate = taskNanos;
+			return estimate < 0 ? FIRST : (int) Math.max(1, Math.min(MAX, target / Math.max(1, estimate)));
+		}
+		
+		private void observe(int tasks, long nanos)
+		{
+			double sample = nanos / (double) tasks, estimate = taskNanos;
+			taskNanos = estimate < 0 ? sample : estimate * 0.8 + sample * 0.2;
+		}
+	}
+	
+	/**
+	 * The unit handed to a pool: a single task of a {@linkplain Batch}, or a range of adjacent tasks fused together.
+	 */
+	private static class Job implements Runnable, Classed
+	{
+		private final Batch<?> batch;
+		private final int from, to;
+		
+		private Job(Batch<?> batch, int from, int to)
+		{
+			this.batch = batch;
+			this.from = from;
+			this.to = to;
+		}
+		
+		/**
+		 * @return Whether the given task may be fused with others, which is not so for tasks routed by lane or by class.
+		 */
+		private static boolean fusable(Callable<?> task)
+		{
+			return !(task instanceof LaneTask || task instanceof ClassedTask);
+		}
+		
+		/**
+		 * @return The thread index for which the task was added, or -1 if it was not added for a particular thread.
+		 */
+		private int lane()
+		{
+			Callable<?> task = batch.tasks[from];
+			return task instanceof LaneTask ? ((LaneTask) task).lane : -1;
+		}
+		
+		/**
+		 * @return The {@linkplain TaskClass} with which the task was added, or {@linkplain TaskClass#DEFAULT} if none.
+		 */
+		@Override
+		public TaskClass taskClass()
+		{
+			Callable<?> task = batch.tasks[from];
+			return task instanceof ClassedTask ? ((ClassedTask) task).taskClass : TaskClass.DEFAULT;
+		}
+		
+		@Override
+		public void run()
+		{
+			batch.run(from, to);
+		}
+	}
+	
+	/**
+	 * 
+	 * A set of reusable primitive buffers belonging to a single thread index, as handed to {@linkplain ByLane} tasks.
+	 * <p>Each method returns an array of at least the requested length, which is kept and returned again by later calls, so long as it is long enough.
+	 * The contents of the arrays are not cleared between uses.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Scratch
+	{
+		private int[] ints = new int[0];
+		private long[] longs = new long[0];
+		private float[] floats = new float[0];
+		private double[] doubles = new double[0];
+		private byte[] bytes = new byte[0];
+		
+		public int[] ints(int length) { return ints.length >= length ? ints : (ints = new int[grow(ints.length, length)]); }
+		public long[] longs(int length) { return longs.length >= length ? longs : (longs = new long[grow(longs.length, length)]); }
+		public float[] floats(int length) { return floats.length >= length ? floats : (floats = new float[grow(floats.length, length)]); }
+		public double[] doubles(int length) { return doubles.length >= length ? doubles : (doubles = new double[grow(doubles.length, length)]); }
+		public byte[] bytes(int length) { return bytes.length >= length ? bytes : (bytes = new byte[grow(bytes.length, length)]); }
+		
+		/**
+		 * Grows to at least half again the old length, so that slowly increasing requests do not reallocate each time.
+		 */
+		private static int grow(int old, int length)
+		{
+			return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(length, old + (long) (old >> 1)));
+		}
+	}
+	
+	/**
+	 * 
+	 * The handle of a single run of tasks, as returned by {@linkplain Parallelizer#batchRun(int)}.
+	 * <p>Each task is given a {@linkplain CompletableFuture}, which completes with the result of the task, or exceptionally with whatever the task threw.
+	 * The batch as a whole completes once every task has, through {@linkplain Batch#allDone()}.
+	 * <p>Each batch keeps its own completion callbacks, progress counters and cancellation, so batches are independent of one another,
+	 * and may be awaited, cancelled or inspected from any thread.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 * @param <T> The type of output expected from <b>each</b> task.
+	 */
+	public static class Batch<T>
+	{
+		private static final Object INTERRUPTING = new Object(), INTERRUPTED = new Object();
+		/** The least and default periods, in nanoseconds, of the checks for overdue and straggling tasks. */
+		private static final long MIN_WATCH = 1_000_000, SPECULATE_WATCH = 10_000_000;
+		/** The outcomes of {@linkplain Batch#settle(int, Object, Throwable)}. */
+		private static final int UNSETTLED = 0, SUCCEEDED = 1, FAILED = 2;
+		
+		private final Callable<?>[] tasks;
+		private final CompletableFuture<T>[] futures;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		/** Holds the thread running each task, or one of the interrupt states of {@linkplain Batch#cancel(boolean)}. */
+		private final AtomicReferenceArray<Object> runners;
+		private final AtomicInteger remaining, started = new AtomicInteger(), succeeded = new AtomicInteger(), cancelled = new AtomicInteger();
+		private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger timedOut = new AtomicInteger(), speculated = new AtomicInteger();
+		/** Set before launch when the batch is timed, and otherwise null. */
+		private ExecutorService pool;
+		private long deadline;
+		private double speculate;
+		private AtomicLongArray starts;
+		private LatencyHistogram latencies;
+		/** Set before launch when metrics are enabled, and otherwise null. */
+		private ParallelMetrics metrics;
+		/** Set before launch when fused jobs are to be measured for {@linkplain Parallelizer#fuseFor(long, TimeUnit)}, and otherwise null. */
+		private Fusion fusion;
+		private long launched;
+		/** The threads running speculative copies, as with {@linkplain Batch#runners}. */
+		private AtomicReferenceArray<Object> copies;
+		/** Only touched by the {@linkplain Watcher}. */
+		private boolean[] copied;
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private Batch(Callable<?>[] tasks)
+		{
+			this.tasks = tasks;
+			futures = new CompletableFuture[tasks.length];
+			for (int i = 0; i < tasks.length; i++)
+				futures[i] = new CompletableFuture<>();
+			runners = new AtomicReferenceArray<>(tasks.length);
+			remaining = new AtomicInteger(tasks.length);
+			if (tasks.length == 0)
+				done.complete(null);
+		}
+		
+		/**
+		 * Prepares the deadlines, speculation and latency recording of this batch, before it is launched.
+		 */
+		private void time(ExecutorService pool, long deadline, double speculate, boolean record)
+		{
+			if (deadline <= 0 && speculate <= 0 && !record)
+				return;
+			this.pool = pool;
+			this.deadline = deadline;
+			this.speculate = speculate;
+			starts = new AtomicLongArray(tasks.length);
+			if (record || speculate > 0)
+				latencies = new LatencyHistogram();
+			if (speculate > 0)
+			{
+				copies = new AtomicReferenceArray<>(tasks.length);
+				copied = new boolean[tasks.length];
+			}
+			if ((deadline > 0 || speculate > 0) && tasks.length > 0)
+			{
+				long period = deadline > 0 ? Math.max(MIN_WATCH, deadline / 8) : SPECULATE_WATCH;
+				ScheduledFuture<?> watch = Watcher.POOL.scheduleAtFixedRate(this::watch, period, period, TimeUnit.NANOSECONDS);
+				done.whenComplete((v, t) -> watch.cancel(false));
+			}
+		}
+		
+		private void measure(ParallelMetrics metrics)
+		{
+			this.metrics = metrics;
+			launched = System.nanoTime();
+			metrics.submitted(tasks.length);
+		}
+		
+		/**
+		 * Runs the tasks from index from to index to, one after another. The counters of completion are updated once for the whole range,
+		 * so that fused jobs do not contend upon them for every task.
+		 */
+		private void run(int from, int to)
+		{
+			Thread thread = Thread.currentThread();
+			long fusedStart = fusion != null ? System.nanoTime() : 0;
+			int skipped = 0, settled = 0, won = 0;
+			for (int index = from; index < to; index++)
+			{
+				if (futures[index].isDone())
+				{
+					skipped++;
+					continue;
+				}
+				started.incrementAndGet();
+				runners.set(index, thread);
+				long start = starts != null || metrics != null ? System.nanoTime() : 0;
+				if (starts != null)
+					starts.set(index, start == 0 ? 1 : start);
+				Object out = null;
+				Throwable failure = null;
+				try
+				{
+					out = tasks[index].call();
+				}
+				catch (Throwable t)
+				{
+					failure = t;
+				}
+				if (starts != null || metrics != null)
+				{
+					long end = System.nanoTime();
+					if (latencies != null)
+						latencies.record(end - start);
+					if (metrics != null)
+						metrics.ran(start - launched, end - start, failure != null);
+				}
+				tasks[index] = null;
+				if (!runners.compareAndSet(index, thread, null))
+					absorbInterrupt(runners, index);
+				int outcome = settle(index, out, failure);
+				if (outcome != UNSETTLED)
+				{
+					settled++;
+					if (outcome == SUCCEEDED)
+						won++;
+					if (copies != null)
+						interrupt(copies, index);
+				}
+			}
+			if (skipped != 0 && metrics != null)
+				metrics.dropped(skipped);
+			if (fusion != null && skipped != to - from)
+				fusion.observe(to - from - skipped, System.nanoTime() - fusedStart);
+			if (won != 0)
+				succeeded.addAndGet(won);
+			finish(settled);
+		}
+		
+		/**
+		 * Runs a speculative copy of a straggling task. Only success of the copy settles the task; failure is left to the original.
+		 */
+		private void runCopy(int index)
+		{
+			Callable<?> task = tasks[index];
+			if (task == null || futures[index].isDone())
+				return;
+			copies.set(index, Thread.currentThread());
+			Object out = null;
+			boolean threw = false;
+			try
+			{
+				out = task.call();
+			}
+			catch (Throwable t)
+			{
+				threw = true;
+			}
+			if (!copies.compareAndSet(index, Thread.currentThread(), null))
+				absorbInterrupt(copies, index);
+			if (!threw && settle(index, out, null) == SUCCEEDED)
+			{
+				succeeded.incrementAndGet();
+				finish(1);
+				interrupt(runners, index);
+			}
+		}
+		
+		/**
+		 * Completes the future of a task, if it has not already been. The caller is left to count the outcome, and to {@linkplain Batch#finish(int)}.
+		 * @return {@linkplain Batch#SUCCEEDED} or {@linkplain Batch#FAILED} if this call completed it, or else {@linkplain Batch#UNSETTLED}.
+		 */
+		private int settle(int index, Object out, Throwable failure)
+		{
+			if (failure == null)
+			{
+				@SuppressWarnings("unchecked")
+				T result = (T) out;
+				return futures[index].complete(result) ? SUCCEEDED : UNSETTLED;
+			}
+			if (!futures[index].completeExceptionally(failure))
+				return UNSETTLED;
+			failures.add(failure);
+			return FAILED;
+		}
+		
+		/**
+		 * Checks the running tasks for those past their deadline, and for stragglers to be copied.
+		 */
+		private void watch()
+		{
+			long now = System.nanoTime(), threshold = Long.MAX_VALUE;
+			if (speculate > 0 && latencies.count() >= Math.max(1, tasks.length / 2))
+				threshold = latencies.percentile(speculate);
+			for (int i = 0; i < futures.length; i++)
+			{
+				long start = starts.get(i);
+				if (start == 0 || futures[i].isDone())
+					continue;
+				if (deadline > 0 && now - start > deadline)
+					timeOut(i);
+				else if (now - start > threshold && !copied[i])
+				{
+					copied[i] = true;
+					speculated.incrementAndGet();
+					final int index = i;
+					try
+					{
+						pool.execute(() -> runCopy(index));
+					}
+					catch (RejectedExecutionException e)
+					{}
+				}
+			}
+		}
+		
+		private void timeOut(int index)
+		{
+			TimeoutException e = new TimeoutException("Task " + index + " exceeded its deadline of " + deadline + "ns.");
+			if (!futures[index].completeExceptionally(e))
+				return;
+			timedOut.incrementAndGet();
+			failures.add(e);
+			finish(1);
+			interrupt(runners, index);
+			if (copies != null)
+				interrupt(copies, index);
+		}
+		
+		/**
+		 * Interrupts whichever thread is running in the given slot, if any, in a way which may be waited for by {@linkplain Batch#absorbInterrupt(AtomicReferenceArray, int)}.
+		 */
+		private static void interrupt(AtomicReferenceArray<Object> slots, int index)
+		{
+			Object runner = slots.getAndSet(index, INTERRUPTING);
+			if (runner instanceof Thread)
+				((Thread) runner).interrupt();
+			slots.set(index, INTERRUPTED);
+		}
+		
+		/**
+		 * Called by a worker whose task was cancelled, timed out or beaten by a copy while running, to wait for the interrupt sent to it to be delivered and then clear it,
+		 * so that it cannot leak into whichever task the worker runs next.
+		 */
+		private static void absorbInterrupt(AtomicReferenceArray<Object> slots, int index)
+		{
+			while (slots.get(index) == INTERRUPTING)
+				Thread.yield();
+			Thread.interrupted();
+		}
+		
+		/**
+		 * Counts the given number of tasks as completed, completing the batch if they were the last.
+		 */
+		private void finish(int count)
+		{
+			if (count == 0 || remaining.addAndGet(-count) != 0)
+				return;
+			if (metrics != null)
+				metrics.batchDone(System.nanoTime() - launched);
+			if (!failures.isEmpty())
+				done.completeExceptionally(aggregate());
+			else if (cancelled.get() != 0)
+				done.completeExceptionally(new CancellationException(cancelled.get() + " of " + futures.length + " tasks were cancelled."));
+			else
+				done.complete(null);
+		}
+		
+		/**
+		 * Rethrows the failures of this batch, as with {@linkplain Parallelizer#invokeEach(ByThread)}.
+		 */
+		private void rethrow()
+		{
+			Iterator<Throwable> it = failures.iterator();
+			if (!it.hasNext())
+				return;
+			Throwable first = it.next();
+			while (it.hasNext())
+				first.addSuppressed(it.next());
+			Parallelizer.rethrow(first);
+		}
+		
+		/**
+		 * Cancels every task of this batch which has not yet completed. Tasks which have not yet started will be skipped, and the futures of all cancelled tasks
+		 * complete with a {@linkplain CancellationException}.
+		 * <p>Every task is cancelled before any thread is interrupted, so that a worker freed by the interrupt cannot go on to start a task not yet reached by this call.
+		 * @param mayInterrupt Whether or not to interrupt the threads running tasks which have already started.
+		 * @return The number of tasks cancelled by this call.
+		 */
+		public int cancel(boolean mayInterrupt)
+		{
+			boolean[] ours = mayInterrupt ? new boolean[futures.length] : null;
+			int count = 0;
+			for (int i = 0; i < futures.length; i++)
+			{
+				if (!futures[i].cancel(false))
+					continue;
+				count++;
+				cancelled.incrementAndGet();
+				if (ours != null)
+					ours[i] = true;
+			}
+			finish(count);
+			if (ours != null)
+			{
+				for (int i = 0; i < futures.length; i++)
+				{
+					if (!ours[i])
+						continue;
+					interrupt(runners, i);
+					if (copies != null)
+						interrupt(copies, i);
+				}
+			}
+			return count;
+		}
+		
+		/**
+		 * Defines a Runnable to be run when every task of this batch has completed, whether succesfully or not.
+		 * The Runnable will be called on whichever thread completes the last task, or immediately on the calling thread if the batch is already done.
+		 * <p>Any number of Runnables may be added; each will be run once.
+		 * @param whenDone
+		 * @return this
+		 */
+		public Batch<T> whenDone(Runnable whenDone)
+		{
+			done.whenComplete((v, t) -> whenDone.run());
+			return this;
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have started running.
+		 */
+		public int started()
+		{
+			return started.get();
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have completed succesfully.
+		 */
+		public int succeeded()
+		{
+			return succeeded.get();
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have failed, including those which timed out.
+		 */
+		public int failed()
+		{
+			return failures.size();
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have been cancelled.
+		 */
+		public int cancelled()
+		{
+			return cancelled.get();
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which were abandoned for passing their deadline, as set by {@linkplain Parallelizer#deadline(long, TimeUnit)}.
+		 */
+		public int timedOut()
+		{
+			return timedOut.get();
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have been started again speculatively, as enabled by {@linkplain Parallelizer#speculate(double)}.
+		 */
+		public int speculated()
+		{
+			return speculated.get();
+		}
+		
+		/**
+		 * @return The running times of the tasks of this batch which have finished so far, or null if this batch does not record them,
+		 * as set by {@linkplain Parallelizer#recordLatency(boolean)}.
+		 */
+		public LatencyHistogram latencies()
+		{
+			return latencies;
+		}
+		
+		/**
+		 * @return The number of tasks of this batch which have yet to complete in any way.
+		 */
+		public int remaining()
+		{
+			return remaining.get();
+		}
+		
+		private CompletionException aggregate()
+		{
+			Iterator<Throwable> it = failures.iterator();
+			CompletionException out = new CompletionException(failures.size() + " of " + futures.length + " tasks failed.", it.next());
+			while (it.hasNext())
+				out.addSuppressed(it.next());
+			return out;
+		}
+		
+		/**
+		 * @return The number of tasks in this batch.
+		 */
+		public int size()
+		{
+			return futures.length;
+		}
+		
+		/**
+		 * @param index
+		 * @return The {@linkplain CompletableFuture} of the task at the given index.
+		 */
+		public CompletableFuture<T> future(int index)
+		{
+			return futures[index];
+		}
+		
+		/**
+		 * @return A copy of the array of {@linkplain CompletableFuture}s of the tasks of this batch.
+		 */
+		public CompletableFuture<T>[] futures()
+		{
+			return futures.clone();
+		}
+		
+		/**
+		 * Equivalent to {@linkplain CompletableFuture#allOf(CompletableFuture...)} over the tasks of this batch,
+		 * except that exceptional completion carries every failure: the {@linkplain CompletionException} has the first failure as its cause, and the rest as suppressed exceptions.
+		 * @return A {@linkplain CompletableFuture} completing once every task has completed.
+		 */
+		public CompletableFuture<Void> allDone()
+		{
+			return done;
+		}
+		
+		/**
+		 * @return Whether every task of this batch has completed.
+		 */
+		public boolean isDone()
+		{
+			return done.isDone();
+		}
+		
+		/**
+		 * @return The exceptions thrown by the tasks of this batch so far, in the order in which they were thrown.
+		 */
+		public List<Throwable> failures()
+		{
+			return new ArrayList<>(failures);
+		}
+		
+		/**
+		 * Blocks until every task of this batch has completed, whether succesfully or not.
+		 * @return this
+		 */
+		public Batch<T> await()
+		{
+			try
+			{
+				done.join();
+			}
+			catch (CompletionException | CancellationException e)
+			{}
+			return this;
+		}
+		
+		/**
+		 * Blocks until every task of this batch has completed, whether succesfully or not, or until the given time has passed.
+		 * @param timeout
+		 * @param unit
+		 * @return Whether every task has completed.
+		 * @throws InterruptedException If the calling thread is interrupted while waiting.
+		 */
+		public boolean await(long timeout, TimeUnit unit) throws InterruptedException
+		{
+			try
+			{
+				done.get(timeout, unit);
+			}
+			catch (ExecutionException | CancellationException e)
+			{}
+			catch (TimeoutException e)
+			{
+				return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Completes with the results of the first k tasks of this batch to succeed, in the order in which they succeeded, and then cancels the rest,
+		 * interrupting those which are running.
+		 * @param k The number of successes required, from 1 to {@linkplain Batch#size()}.
+		 * @return A {@linkplain CompletableFuture} of the k results, which completes exceptionally once so many tasks have failed or been cancelled that k can no longer succeed.
+		 */
+		public CompletableFuture<List<T>> quorum(int k)
+		{
+			if (k < 1 || k > futures.length)
+				throw new IllegalArgumentException("Batch quorum must be from 1 to the size of the batch.");
+			CompletableFuture<List<T>> out = new CompletableFuture<>();
+			AtomicReferenceArray<T> picked = new AtomicReferenceArray<>(k);
+			AtomicInteger wins = new AtomicInteger(), filled = new AtomicInteger(), losses = new AtomicInteger();
+			// Gathered here rather than read from the failures of the batch, which a failure only joins once its future has completed.
+			ConcurrentLinkedQueue<Throwable> lost = new ConcurrentLinkedQueue<>();
+			for (CompletableFuture<T> future : futures)
+			{
+				future.whenComplete((result, t) ->
+				{
+					if (t == null)
+					{
+						int win = wins.getAndIncrement();
+						if (win >= k)
+							return;
+						picked.set(win, result);
+						if (filled.incrementAndGet() != k)
+							return;
+						List<T> results = new ArrayList<>(k);
+						for (int i = 0; i < k; i++)
+							results.add(picked.get(i));
+						out.complete(results);
+						cancel(true);
+					}
+					else
+					{
+						if (!(t instanceof CancellationException))
+							lost.add(t);
+						if (losses.incrementAndGet() != futures.length - k + 1)
+							return;
+						String message = "Quorum of " + k + " cannot be reached: " + losses.get() + " of " + futures.length + " tasks failed or were cancelled.";
+						Iterator<Throwable> it = lost.iterator();
+						if (!it.hasNext())
+							out.completeExceptionally(new CancellationException(message));
+						else
+						{
+							CompletionException e = new CompletionException(message, it.next());
+							while (it.hasNext())
+								e.addSuppressed(it.next());
+							out.completeExceptionally(e);
+						}
+					}
+				});
+			}
+			return out;
+		}
+		
+		/**
+		 * Completes with the result of the first task of this batch to succeed, and then cancels the rest, as with {@linkplain Batch#quorum(int)}.
+		 * <p>Equivalent to {@linkplain ExecutorService#invokeAny(java.util.Collection)}, without blocking.
+		 * @return A {@linkplain CompletableFuture} of the first result, which completes exceptionally if every task fails or is cancelled.
+		 */
+		public CompletableFuture<T> firstSuccess()
+		{
+			return quorum(1).thenApply((results) -> results.get(0));
+		}
+		
+		/**
+		 * Blocks until every task of this batch has completed, and collects their results.
+		 * @param generator Creates the output array, given its length. (For example: {@code String[]::new})
+		 * @return An array of the results of the tasks, in order.
+		 * @throws CompletionException If any task failed, as with {@linkplain Batch#allDone()}.
+		 * @throws CancellationException If any task was cancelled, and none failed.
+		 */
+		public T[] collect(IntFunction<T[]> generator)
+		{
+			done.join();
+			return results(generator);
+		}
+		
+		/**
+		 * Collects the results of the tasks without blocking, once every task has completed.
+		 * @param generator Creates the output array, given its length. (For example: {@code String[]::new})
+		 * @return A {@linkplain CompletableFuture} of the array of the results of the tasks, in order, which completes exceptionally as with {@linkplain Batch#allDone()}.
+		 */
+		public CompletableFuture<T[]> thenCollect(IntFunction<T[]> generator)
+		{
+			return done.thenApply((v) -> results(generator));
+		}
+		
+		private T[] results(IntFunction<T[]> generator)
+		{
+			T[] out = generator.apply(futures.length);
+			for (int i = 0; i < out.length; i++)
+				out[i] = futures[i].getNow(null);
+			return out;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "Batch of " + futures.length + " tasks (" + started.get() + " started, " + remaining.get() + " remaining, " + failures.size() + " failed, " + cancelled.get() + " cancelled"
+					+ (timedOut.get() == 0 ? "" : ", " + timedOut.get() + " timed out") + (speculated.get() == 0 ? "" : ", " + speculated.get() + " speculated") + ")";
+		}
+	}
+	
+	/**
+	 * 
+	 * A structured group of subtasks running upon the pool of a {@linkplain Parallelizer}, as opened by {@linkplain Parallelizer#scope()}.
+	 * <p>Subtasks are forked into the scope, and then joined together through {@linkplain Scope#join()}. The first subtask to fail shuts the scope down:
+	 * subtasks which have not yet started are skipped, those which are running are interrupted, and the futures of both complete with a {@linkplain CancellationException}.
+	 * {@linkplain Scope#join()} then throws that failure, with those of any subtasks which failed alongside it as suppressed exceptions.
+	 * <p>A joining thread runs any subtasks which no worker has yet claimed, rather than waiting for them, so a subtask may open and join a scope of its own
+	 * upon the same pool without starving it of workers.
+	 * <p>Closing a scope which has not been joined cancels its subtasks, and waits for those already running to stop, so that no subtask outlives its scope.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Scope implements AutoCloseable
+	{
+		private final ExecutorService pool;
+		private final TaskClass taskClass;
+		/** Null when disabled. */
+		private final ParallelMetrics metrics;
+		/** The forks which have yet to finish, each removed as it does, so that neither joining nor shutting down rescans those already finished. */
+		private final Set<Fork<?>> forks = ConcurrentHashMap.newKeySet();
+		private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		/** The number of forks which have yet to finish, and the number which have ever been made. */
+		private final AtomicInteger live = new AtomicInteger(), forked = new AtomicInteger();
+		private final AtomicBoolean shutdown = new AtomicBoolean();
+		private volatile boolean closed = false, joining = false;
+		private Throwable thrown;
+		
+		private Scope(ExecutorService pool, TaskClass taskClass, ParallelMetrics metrics)
+		{
+			this.pool = pool;
+			this.taskClass = taskClass;
+			this.metrics = metrics;
+		}
+		
+		/**
+		 * Forks a subtask into this scope. If the scope has already been shut down by a failure, the subtask is not run, and its future is cancelled.
+		 * @param <T>
+		 * @param task
+		 * @return A {@linkplain CompletableFuture} of the result of the subtask.
+		 * @throws IllegalStateException If this scope has been closed.
+		 */
+		public <T> CompletableFuture<T> fork(Callable<T> task)
+		{
+			if (closed)
+				throw new IllegalStateException("Cannot fork into a closed Scope.");
+			Fork<T> fork = new Fork<>(this, task);
+			if (shutdown.get())
+			{
+				fork.future.cancel(false);
+				return fork.future;
+			}
+			live.incrementAndGet();
+			forks.add(fork);
+			forked.incrementAndGet();
+			if (metrics != null)
+			{
+				fork.at = System.nanoTime();
+				metrics.submitted(1);
+			}
+			if (joining)
+				synchronized (this)
+				{
+					notifyAll();
+				}
+			try
+			{
+				pool.execute(fork);
+			}
+			catch (RejectedExecutionException e)
+			{}
+			if (shutdown.get())
+				fork.cancel(true);
+			return fork.future;
+		}
+		
+		/**
+		 * Forks a Runnable subtask into this scope, as with {@linkplain Scope#fork(Callable)}.
+		 * @param task
+		 * @return A {@linkplain CompletableFuture} which completes with null once the subtask has.
+		 */
+		public CompletableFuture<Void> fork(Runnable task)
+		{
+			return fork(() ->
+			{
+				task.run();
+				return null;
+			});
+		}
+		
+		/**
+		 * Blocks until every subtask of this scope has finished, running any which have not yet been claimed by a worker upon the calling thread.
+		 * <p>Should only be called by the thread which opened the scope, and not from within its own subtasks.
+		 * @return this
+		 * @throws RuntimeException The first failure of a subtask, if it was a RuntimeException, or else wrapped within a {@linkplain CompletionException}.
+		 * @throws Error The first failure of a subtask, if it was an Error.
+		 */
+		public Scope join()
+		{
+			awaitForks();
+			Throwable failure = thrown();
+			if (failure != null)
+				Parallelizer.rethrow(failure);
+			return this;
+		}
+		
+		/**
+		 * Shuts this scope down, as though a subtask had failed, without recording a failure.
+		 * @return Whether this call shut the scope down, rather than it having already been.
+		 */
+		public boolean shutdown()
+		{
+			if (!shutdown.compareAndSet(false, true))
+				return false;
+			for (Fork<?> fork : forks)
+				fork.cancel(true);
+			return true;
+		}
+		
+		/**
+		 * @return Whether this scope has been shut down, whether by a failure or by {@linkplain Scope#shutdown()}.
+		 */
+		public boolean isShutdown()
+		{
+			return shutdown.get();
+		}
+		
+		/**
+		 * @return The failures of the subtasks of this scope so far, in the order in which they occurred.
+		 */
+		public List<Throwable> failures()
+		{
+			return new ArrayList<>(failures);
+		}
+		
+		/**
+		 * Cancels any subtasks which have yet to finish, and waits for those which are running to stop. Failures are not thrown; use {@linkplain Scope#join()} for them.
+		 */
+		@Override
+		public void close()
+		{
+			closed = true;
+			shutdown();
+			awaitForks();
+		}
+		
+		private void fail(Throwable failure)
+		{
+			failures.add(failure);
+			shutdown();
+		}
+		
+		private void retire(Fork<?> fork)
+		{
+			forks.remove(fork);
+			if (live.decrementAndGet() == 0)
+				synchronized (this)
+				{
+					notifyAll();
+				}
+		}
+		
+		/**
+		 * Helps with, and then waits for, every fork of this scope. A fork made while waiting wakes the waiting thread, so that it may be helped with too.
+		 */
+		private void awaitForks()
+		{
+			boolean interrupted = false;
+			joining = true;
+			while (live.get() != 0)
+			{
+				int seen = forked.get();
+				for (Fork<?> fork : forks)
+					fork.run();
+				synchronized (this)
+				{
+					while (live.get() != 0 && forked.get() == seen)
+					{
+						try
+						{
+							wait();
+						}
+						catch (InterruptedException e)
+						{
+							interrupted = true;
+						}
+					}
+				}
+			}
+			joining = false;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		
+		/**
+		 * @return The first failure, with the rest suppressed within it, or null if there were none. Assembled only once, however many times the scope is joined.
+		 */
+		private synchronized Throwable thrown()
+		{
+			if (thrown == null && !failures.isEmpty())
+			{
+				Iterator<Throwable> it = failures.iterator();
+				thrown = it.next();
+				while (it.hasNext())
+					thrown.addSuppressed(it.next());
+			}
+			return thrown;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "Scope of " + forked.get() + " subtasks (" + live.get() + " live, " + failures.size() + " failed" + (shutdown.get() ? ", shut down)" : ")");
+		}
+	}
+	
+	/**
+	 * A single subtask of a {@linkplain Scope}, which is run by whichever of a worker or the joining thread claims it first.
+	 */
+	private static class Fork<T> implements Runnable, Classed
+	{
+		private final Scope scope;
+		private final Callable<T> task;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		/** Holds the thread running this fork, or one of the interrupt states of {@linkplain Batch#cancel(boolean)}. */
+		private final AtomicReference<Object> runner = new AtomicReference<>();
+		/** When this fork was made, if its scope has metrics. */
+		private long at;
+		
+		private Fork(Scope scope, Callable<T> task)
+		{
+			this.scope = scope;
+			this.task = task;
+		}
+		
+		@Override
+		public TaskClass taskClass()
+		{
+			return scope.taskClass;
+		}
+		
+		@Override
+		public void run()
+		{
+			if (!claimed.compareAndSet(false, true))
+				return;
+			try
+			{
+				if (scope.shutdown.get() || future.isDone())
+				{
+					future.cancel(false);
+					if (scope.metrics != null)
+						scope.metrics.dropped(1);
+					return;
+				}
+				runner.set(Thread.currentThread());
+				long start = scope.metrics != null ? System.nanoTime() : 0;
+				T out = null;
+				Throwable failure = null;
+				try
+				{
+					out = task.call();
+				}
+				catch (Throwable t)
+				{
+					failure = t;
+				}
+				if (scope.metrics != null)
+					scope.metrics.ran(start - at, System.nanoTime() - start, failure != null);
+				if (!runner.compareAndSet(Thread.currentThread(), null))
+				{
+					while (runner.get() == Batch.INTERRUPTING)
+						Thread.yield();
+					Thread.interrupted();
+				}
+				if (failure == null)
+					future.complete(out);
+				else if (future.completeExceptionally(failure))
+					scope.fail(failure);
+			}
+			finally
+			{
+				scope.retire(this);
+			}
+		}
+		
+		private void cancel(boolean mayInterrupt)
+		{
+			if (claimed.compareAndSet(false, true))
+			{
+				future.cancel(false);
+				if (scope.metrics != null)
+					scope.metrics.dropped(1);
+				scope.retire(this);
+			}
+			else if (future.cancel(false) && mayInterrupt)
+			{
+				Object thread = runner.getAndSet(Batch.INTERRUPTING);
+				if (thread instanceof Thread)
+					((Thread) thread).interrupt();
+				runner.set(Batch.INTERRUPTED);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * A class of tasks, by which a {@linkplain Parallelizer} with priorities enabled orders them, as by {@linkplain Parallelizer#enablePriorities(int)}.
+	 * <p>Tasks of a class of higher priority are run before those of lower priority, whenever both are waiting. Classes of equal priority share the workers
+	 * in proportion to their weights, so that a class of weight 3 is run three times as often as one of weight 1 while both have tasks waiting.
+	 * <p>Classes are compared by identity, so the same instance should be used for every task of a class.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class TaskClass
+	{
+		/** The class of tasks added without one, of priority 0 and weight 1. */
+		public static final TaskClass DEFAULT = new TaskClass("default", 0, 1);
+		
+		private final String name;
+		private final int priority, weight;
+		
+		/**
+		 * @param name A name by which to recognise the class.
+		 * @param priority Higher priorities are run first.
+		 * @param weight The share of the workers given to this class among classes of equal priority. Must be positive.
+		 */
+		public TaskClass(String name, int priority, int weight)
+		{
+			if (weight < 1)
+				throw new IllegalArgumentException("TaskClass weight must be positive.");
+			this.name = name;
+			this.priority = priority;
+			this.weight = weight;
+		}
+		
+		public String name()
+		{
+			return name;
+		}
+		
+		public int priority()
+		{
+			return priority;
+		}
+		
+		public int weight()
+		{
+			return weight;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "TaskClass " + name + " (priority " + priority + ", weight " + weight + ")";
+		}
+	}
+	
+	/**
+	 * 
+	 * The policy of an {@linkplain Ingest} for tasks submitted while its queue is full.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static enum Overflow
+	{
+		/** Block the submitting thread until there is room in the queue. */
+		BLOCK,
+		/** Run the task directly on the submitting thread, which slows the producer to the pace of the workers. */
+		CALLER_RUNS,
+		/** Discard the oldest waiting task to make room for the new one. */
+		DROP_OLDEST,
+		/** Refuse the new task. */
+		REJECT;
+	}
+	
+	/**
+	 * 
+	 * A long-lived, bounded stage of tasks running upon the pool of a {@linkplain Parallelizer}, as opened by {@linkplain Parallelizer#ingest(int, Overflow)}.
+	 * <p>Submitted tasks wait in a queue of fixed capacity, from which a limited number of workers drain them. When the queue is full,
+	 * further submissions are handled according to the {@linkplain Overflow} policy, so that a fast producer cannot grow the heap without bound.
+	 * <p>An ingest may be submitted to from any number of threads. Closing it stops further submissions, and waits for those already accepted to run.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Ingest implements AutoCloseable
+	{
+		private final ExecutorService pool;
+		private final int parallelism;
+		private final ArrayBlockingQueue<Runnable> queue;
+		private final Overflow overflow;
+		/** Hands a worker to the pool under the class of this ingest. */
+		private final Routed worker;
+		private final AtomicInteger active = new AtomicInteger();
+		private final LongAdder submitted = new LongAdder(), completed = new LongAdder(), failed = new LongAdder(), rejected = new LongAdder(), dropped = new LongAdder();
+		private volatile Consumer<Throwable> onFailure;
+		private volatile boolean shutdown = false;
+		/** Null when disabled. */
+		private final ParallelMetrics metrics;
+		
+		private Ingest(ExecutorService pool, int parallelism, int bound, Overflow overflow, TaskClass taskClass, ParallelMetrics metrics)
+		{
+			if (bound < 1)
+				throw new IllegalArgumentException("Ingest bound must be positive.");
+			if (overflow == null)
+				throw new IllegalArgumentException("Ingest cannot use a null overflow policy.");
+			this.pool = pool;
+			this.parallelism = Math.max(1, parallelism);
+			this.overflow = overflow;
+			this.metrics = metrics;
+			worker = new Routed(taskClass, this::drain);
+			queue = new ArrayBlockingQueue<>(bound);
+		}
+		
+		/**
+		 * Submits a task to be run.
+		 * @param task
+		 * @return Whether or not the task was accepted. A task is refused under {@linkplain Overflow#REJECT} when the queue is full,
+		 * or under {@linkplain Overflow#BLOCK} when the submitting thread is interrupted while waiting.
+		 * @throws IllegalStateException If this ingest has been shut down.
+		 */
+		public boolean submit(Runnable task)
+		{
+			if (task == null)
+				throw new IllegalArgumentException("Cannot submit null task.");
+			if (shutdown)
+				throw new IllegalStateException("Cannot submit to a shut down Ingest.");
+			if (metrics != null)
+				task = new Stamped(task);
+			// Counted before a worker can see the task, so that the count of those completed never runs ahead of it; taken back if the task is refused.
+			count(1);
+			if (!queue.offer(task))
+			{
+				switch (overflow)
+				{
+					case BLOCK:
+						try
+						{
+							queue.put(task);
+						}
+						catch (InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							refuse();
+							return false;
+						}
+						break;
+					case CALLER_RUNS:
+						runOne(task);
+						return true;
+					case DROP_OLDEST:
+						while (!queue.offer(task))
+						{
+							if (queue.poll() != null)
+							{
+								dropped.increment();
+								if (metrics != null)
+									metrics.dropped(1);
+							}
+						}
+						break;
+					case REJECT:
+						refuse();
+						return false;
+				}
+			}
+			if (claimWorker())
+			{
+				try
+				{
+					pool.execute(worker);
+				}
+				catch (RuntimeException e)
+				{
+					retire();
+					throw e;
+				}
+			}
+			return true;
+		}
+		
+		private void count(int tasks)
+		{
+			submitted.add(tasks);
+			if (metrics != null)
+				metrics.submitted(tasks);
+		}
+		
+		private void refuse()
+		{
+			count(-1);
+			rejected.increment();
+		}
+		
+		/**
+		 * Defines a Consumer to recieve the exceptions thrown by tasks of this ingest. Failing tasks are otherwise only counted.
+		 * @param onFailure
+		 * @return this
+		 */
+		public Ingest onFailure(Consumer<Throwable> onFailure)
+		{
+			this.onFailure = onFailure;
+			return this;
+		}
+		
+		/**
+		 * Blocks until the queue is empty and no task of this ingest is running.
+		 * @return this
+		 */
+		public Ingest awaitIdle()
+		{
+			synchronized (this)
+			{
+				try
+				{
+					while (active.get() != 0 || !queue.isEmpty())
+						wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			return this;
+		}
+		
+		/**
+		 * Stops this ingest from accepting further tasks. Those already accepted still run, as may one whose submission is blocked under {@linkplain Overflow#BLOCK}.
+		 * The pool of the {@linkplain Parallelizer} is unaffected.
+		 */
+		public void shutdown()
+		{
+			shutdown = true;
+		}
+		
+		/**
+		 * @return Whether this ingest has been shut down, by {@linkplain Ingest#shutdown()} or {@linkplain Ingest#close()}.
+		 */
+		public boolean isShutdown()
+		{
+			return shutdown;
+		}
+		
+		/**
+		 * Shuts this ingest down, and then blocks until the tasks it had accepted have run, as by {@linkplain Ingest#awaitIdle()}.
+		 */
+		@Override
+		public void close()
+		{
+			shutdown();
+			awaitIdle();
+		}
+		
+		/**
+		 * Runs tasks until the queue is empty. Under a {@linkplain Dispatcher}, the worker instead returns to the queue of its class after each task,
+		 * so that the tasks of other classes are served in between.
+		 */
+		private void drain()
+		{
+			Runnable task;
+			do
+			{
+				while ((task = queue.poll()) != null)
+				{
+					runOne(task);
+					if (pool instanceof Dispatcher && !queue.isEmpty() && requeue())
+						return;
+				}
+			}
+			while (!retire());
+		}
+		
+		/**
+		 * @return Whether this worker was handed back to the pool, to carry on once it is next served.
+		 */
+		private boolean requeue()
+		{
+			try
+			{
+				pool.execute(worker);
+				return true;
+			}
+			catch (RejectedExecutionException e)
+			{
+				return false;
+			}
+		}
+		
+		private void runOne(Runnable task)
+		{
+			long start = metrics != null ? System.nanoTime() : 0;
+			boolean threw = false;
+			try
+			{
+				task.run();
+				completed.increment();
+			}
+			catch (Throwable t)
+			{
+				threw = true;
+				failed.increment();
+				Consumer<Throwable> handler = onFailure;
+				if (handler != null)
+					handler.accept(t);
+			}
+			if (metrics != null)
+				metrics.ran(start - ((Stamped) task).at, System.nanoTime() - start, threw);
+		}
+		
+		private boolean claimWorker()
+		{
+			int current;
+			do
+			{
+				current = active.get();
+				if (current >= parallelism)
+					return false;
+			}
+			while (!active.compareAndSet(current, current + 1));
+			return true;
+		}
+		
+		/**
+		 * Retires a worker, unless tasks arrived after it emptied the queue and it can take them on.
+		 * @return Whether or not the worker retired.
+		 */
+		private boolean retire()
+		{
+			if (active.decrementAndGet() == 0)
+			{
+				synchronized (this)
+				{
+					notifyAll();
+				}
+			}
+			return queue.isEmpty() || !claimWorker();
+		}
+		
+		/**
+		 * A task of an ingest with metrics, which remembers when it was submitted.
+		 */
+		private static class Stamped implements Runnable
+		{
+			private final Runnable task;
+			private final long at = System.nanoTime();
+			
+			private Stamped(Runnable task)
+			{
+				this.task = task;
+			}
+			
+			@Override
+			public void run()
+			{
+				task.run();
+			}
+		}
+		
+		/** @return The number of tasks waiting in the queue. */
+		public int depth() { return queue.size(); }
+		/** @return The capacity of the queue. */
+		public int bound() { return queue.size() + queue.remainingCapacity(); }
+		/** @return The number of workers currently draining the queue. */
+		public int active() { return active.get(); }
+		/** @return The number of tasks accepted. */
+		public long submitted() { return submitted.sum(); }
+		/** @return The number of tasks which completed succesfully. */
+		public long completed() { return completed.sum(); }
+		/** @return The number of tasks which threw. */
+		public long failed() { return failed.sum(); }
+		/** @return The number of tasks refused. */
+		public long rejected() { return rejected.sum(); }
+		/** @return The number of accepted tasks discarded by {@linkplain Overflow#DROP_OLDEST}. */
+		public long dropped() { return dropped.sum(); }
+		
+		@Override
+		public String toString()
+		{
+			return "Ingest (" + overflow + "): " + depth() + "/" + bound() + " queued, " + active() + " active, " + submitted() + " submitted, " + completed() + " completed, "
+					+ failed() + " failed, " + rejected() + " rejected, " + dropped() + " dropped";
+		}
+	}
+	
+	/**
+	 * A shared cursor over a range of indices, from which threads claim successive chunks.
+	 * <p>Each chunk is sized as a fraction of the indices remaining, so the size of a chunk depends only upon where it starts.
+	 * <p>A range may span more than {@linkplain Long#MAX_VALUE} indices, in which case chunks are sized as though only that many remained, until fewer do.
+	 */
+	private static class RangeCursor
+	{
+		private final AtomicLong next;
+		private final long end;
+		private final long divisor;
+		private final long minGrain;
+		
+		private RangeCursor(long start, long end, int threadCount, long minGrain)
+		{
+			next = new AtomicLong(start);
+			this.end = end;
+			divisor = 2L * Math.max(1, threadCount);
+			this.minGrain = Math.max(1, minGrain);
+		}
+		
+		/**
+		 * @return The start of the claimed chunk, or the end of the range if none remains.
+		 */
+		private long claim()
+		{
+			long lo;
+			do
+			{
+				lo = next.get();
+				if (lo >= end)
+					return end;
+			}
+			while (!next.compareAndSet(lo, endOf(lo)));
+			return lo;
 		}
 		
-		private void runDone()
+		private long endOf(long lo)
 		{
-			Runnable current = whenDone.get();
-			if (current != null)
-				current.run();
+			long remaining = end - lo;
+			if (remaining < 0)
+				remaining = Long.MAX_VALUE;
+			return lo + Math.min(remaining, Math.max(minGrain, remaining / divisor));
 		}
 	}
 	
@@ -0,0 +1,464 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 
+ * A chain of stages running upon the pool of a {@linkplain Parallelizer}, through which items flow as soon as the previous stage emits them.
+ * <p>Stages are connected by bounded queues of batches, so that no stage waits upon a barrier at the end of the one before it, and a slow stage
+ * holds back its producers rather than letting its queue grow. Each stage runs with its own parallelism, and keeps {@linkplain StageStats}
+ * with which the bottleneck stage may be found.
+ * <p>Example Usage:<p>
+ * <pre>{@code
+Parallelizer par = new Parallelizer();
+Pipeline<String> pipe = par.<String>pipeline(16, 64)
+	.stage("parse", 2, Integer::parseInt)
+	.stage("square", 4, (i) -> i * i)
+	.sink("sum", 1, total::addAndGet)
+	.start();
+for (String line : lines)
+	pipe.push(line);
+pipe.close().await();}</pre>
+ * 
+ * @author SerpentDagger
+ * 
+ * @param <I> The type of the items pushed into the pipeline.
+ */
+public class Pipeline<I>
+{
+	/** Marks the end of the items of a queue. Passed on by each worker to its siblings, and by the last worker of a stage to the next stage. */
+	private static final Object[] END = new Object[0];
+	
+	private final Stage[] stages;
+	private final ExecutorService pool;
+	private final int batchSize;
+	private final CompletableFuture<Void> done = new CompletableFuture<>();
+	private final ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+	private ArrayList<Object> pending;
+	private boolean started = false, closed = false;
+	private long startNanos;
+	
+	private Pipeline(Builder<I, ?> builder, Stage last)
+	{
+		stages = new Stage[builder.stages.size() + 1];
+		for (int i = 0; i < stages.length - 1; i++)
+			stages[i] = new Stage(builder.stages.get(i));
+		stages[stages.length - 1] = last;
+		pool = builder.par.pool();
+		batchSize = builder.batchSize;
+		pending = new ArrayList<>(batchSize);
+		int total = 0;
+		for (int i = 0; i < stages.length; i++)
+		{
+			stages[i].in = new ArrayBlockingQueue<>(builder.capacity);
+			total += stages[i].parallelism;
+		}
+		for (int i = 0; i < stages.length - 1; i++)
+			stages[i].out = stages[i + 1].in;
+		if (builder.par.backend() != Parallelizer.Backend.VIRTUAL && total > builder.par.threads())
+			throw new IllegalArgumentException("Pipeline needs " + total + " workers, but its Parallelizer has only " + builder.par.threads() + " threads.");
+	}
+	
+	/**
+	 * Starts the workers of every stage.
+	 * @return this
+	 */
+	public synchronized Pipeline<I> start()
+	{
+		if (started)
+			throw new IllegalStateException("Pipeline has already been started.");
+		started = true;
+		startNanos = System.nanoTime();
+		for (Stage stage : stages)
+		{
+			stage.live.set(stage.parallelism);
+			for (int i = 0; i < stage.parallelism; i++)
+				pool.execute(() -> work(stage));
+		}
+		return this;
+	}
+	
+	/**
+	 * Pushes an item into the first stage. Items are passed on in batches, so an item may wait until the batch fills, or until {@linkplain Pipeline#flush()} or {@linkplain Pipeline#close()}.
+	 * <p>Blocks while the queue of the first stage is full.
+	 * @param item
+	 * @return this
+	 * @throws IllegalStateException If the pipeline has not been started, as nothing would drain the queue, or has been closed.
+	 */
+	public synchronized Pipeline<I> push(I item)
+	{
+		checkStarted();
+		if (closed)
+			throw new IllegalStateException("Cannot push to a closed Pipeline.");
+		pending.add(item);
+		if (pending.size() >= batchSize)
+			flush();
+		return this;
+	}
+	
+	/**
+	 * Passes any partial batch of pushed items on to the first stage.
+	 * @return this
+	 * @throws IllegalStateException If the pipeline has not been started.
+	 */
+	public synchronized Pipeline<I> flush()
+	{
+		checkStarted();
+		if (!pending.isEmpty())
+		{
+			put(stages[0].in, pending.toArray());
+			pending = new ArrayList<>(batchSize);
+		}
+		return this;
+	}
+	
+	/**
+	 * Flushes the pushed items and marks the end of the input. Each stage finishes once it has processed every item before the end.
+	 * @return this
+	 */
+	public synchronized Pipeline<I> close()
+	{
+		if (closed)
+			return this;
+		flush();
+		closed = true;
+		put(stages[0].in, END);
+		return this;
+	}
+	
+	/**
+	 * Blocks until every stage has finished.
+	 * @return this
+	 * @throws CompletionException If any stage threw, with the first failure as its cause and the rest suppressed.
+	 */
+	public Pipeline<I> await()
+	{
+		done.join();
+		return this;
+	}
+	
+	/**
+	 * @return A {@linkplain CompletableFuture} completing once every stage has finished.
+	 */
+	public CompletableFuture<Void> done()
+	{
+		return done;
+	}
+	
+	/**
+	 * @return A snapshot of the statistics of each stage, in order.
+	 */
+	public StageStats[] stats()
+	{
+		long elapsed = started ? System.nanoTime() - startNanos : 0;
+		StageStats[] out = new StageStats[stages.length];
+		for (int i = 0; i < out.length; i++)
+			out[i] = new StageStats(stages[i], elapsed);
+		return out;
+	}
+	
+	/**
+	 * @return The statistics of the stage whose workers are the busiest, which is the stage limiting the throughput of the pipeline.
+	 */
+	public StageStats bottleneck()
+	{
+		StageStats worst = null;
+		for (StageStats s : stats())
+			if (worst == null || s.utilization > worst.utilization)
+				worst = s;
+		return worst;
+	}
+	
+	////////////////////
+	
+	private void checkStarted()
+	{
+		if (!started)
+			throw new IllegalStateException("Pipeline must be started before items are pushed.");
+	}
+	
+	private void work(Stage stage)
+	{
+		ArrayList<Object> out = stage.out == null ? null : new ArrayList<>(batchSize);
+		while (true)
+		{
+			Object[] batch = stage.in.poll();
+			if (batch == null)
+			{
+				if (out != null && !out.isEmpty())
+					out = emit(stage, out);
+				batch = take(stage.in);
+			}
+			if (batch == END)
+			{
+				put(stage.in, END);
+				if (out != null && !out.isEmpty())
+					emit(stage, out);
+				if (stage.live.decrementAndGet() == 0)
+					endOf(stage);
+				return;
+			}
+			stage.occupancy.add(stage.in.size());
+			stage.samples.increment();
+			long start = System.nanoTime();
+			for (Object item : batch)
+			{
+				try
+				{
+					Object result = stage.fn.apply(item);
+					if (out != null && result != null)
+					{
+						out.add(result);
+						if (out.size() >= batchSize)
+							out = emit(stage, out);
+					}
+				}
+				catch (Throwable t)
+				{
+					failures.add(t);
+					stage.failed.increment();
+				}
+			}
+			stage.busy.add(System.nanoTime() - start);
+			stage.processed.add(batch.length);
+		}
+	}
+	
+	private ArrayList<Object> emit(Stage stage, ArrayList<Object> out)
+	{
+		stage.emitted.add(out.size());
+		put(stage.out, out.toArray());
+		return new ArrayList<>(batchSize);
+	}
+	
+	private void endOf(Stage stage)
+	{
+		if (stage.out != null)
+		{
+			stage.in.clear();
+			put(stage.out, END);
+			return;
+		}
+		stage.in.clear();
+		if (failures.isEmpty())
+		{
+			done.complete(null);
+			return;
+		}
+		CompletionException ex = new CompletionException(failures.size() + " pipeline items failed.", failures.peek());
+		failures.stream().skip(1).forEach(ex::addSuppressed);
+		done.completeExceptionally(ex);
+	}
+	
+	private static Object[] take(ArrayBlockingQueue<Object[]> queue)
+	{
+		boolean interrupted = false;
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					return queue.take();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+		finally
+		{
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+	
+	private static void put(ArrayBlockingQueue<Object[]> queue, Object[] batch)
+	{
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				queue.put(batch);
+				break;
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+	
+	////////////////////
+	
+	/**
+	 *
+	 * Builds a {@linkplain Pipeline}, one stage at a time, as begun by {@linkplain Parallelizer#pipeline(int, int)}.
+	 * <p>Builders are immutable: each stage returns a new builder, so one builder may be branched, or reused to build any number of pipelines.
+	 *
+	 * @author SerpentDagger
+	 *
+	 * @param <I> The type of the items pushed into the pipeline.
+	 * @param <O> The type of the items emitted by the latest stage.
+	 */
+	public static class Builder<I, O>
+	{
+		private final Parallelizer par;
+		private final int capacity, batchSize;
+		private final ArrayList<Stage> stages;
+		
+		Builder(Parallelizer par, int capacity, int batchSize)
+		{
+			this(par, capacity, batchSize, new ArrayList<>());
+		}
+		
+		private Builder(Parallelizer par, int capacity, int batchSize, ArrayList<Stage> stages)
+		{
+			if (capacity < 1 || batchSize < 1)
+				throw new IllegalArgumentException("Pipeline queue capacity and batch size must be positive.");
+			this.par = par;
+			this.capacity = capacity;
+			this.batchSize = batchSize;
+			this.stages = stages;
+		}
+		
+		/**
+		 * Adds a stage which maps each item to a new item. Items mapped to null are dropped.
+		 * @param <N> The type of the items emitted by the new stage.
+		 * @param name
+		 * @param parallelism The number of workers of the stage.
+		 * @param fn
+		 * @return A builder with the new stage as its latest.
+		 */
+		@SuppressWarnings("unchecked")
+		public <N> Builder<I, N> stage(String name, int parallelism, Function<? super O, ? extends N> fn)
+		{
+			ArrayList<Stage> next = new ArrayList<>(stages);
+			next.add(new Stage(name, parallelism, (Function<Object, Object>) fn));
+			return new Builder<>(par, capacity, batchSize, next);
+		}
+		
+		/**
+		 * Adds the final stage, which consumes each item, and builds the {@linkplain Pipeline}.
+		 * @param name
+		 * @param parallelism The number of workers of the stage.
+		 * @param fn
+		 * @return The new, unstarted, {@linkplain Pipeline}.
+		 */
+		@SuppressWarnings("unchecked")
+		public Pipeline<I> sink(String name, int parallelism, Consumer<? super O> fn)
+		{
+			return new Pipeline<>(this, new Stage(name, parallelism, (item) -> { fn.accept((O) item); return null; }));
+		}
+	}
+	
+	private static class Stage
+	{
+		private final String name;
+		private final int parallelism;
+		private final Function<Object, Object> fn;
+		private ArrayBlockingQueue<Object[]> in, out;
+		private final AtomicInteger live = new AtomicInteger();
+		private final LongAdder processed = new LongAdder(), emitted = new LongAdder(), failed = new LongAdder(), busy = new LongAdder(),
+				occupancy = new LongAdder(), samples = new LongAdder();
+		
+		private Stage(String name, int parallelism, Function<Object, Object> fn)
+		{
+			if (parallelism < 1)
+				throw new IllegalArgumentException("Pipeline stage parallelism must be positive.");
+			this.name = name;
+			this.parallelism = parallelism;
+			this.fn = fn;
+		}
+		
+		/**
+		 * Copies the definition of a stage held by a {@linkplain Builder}, without its queues or statistics, for a new pipeline.
+		 */
+		private Stage(Stage of)
+		{
+			this(of.name, of.parallelism, of.fn);
+		}
+	}
+	
+	/**
+	 *
+	 * A snapshot of the statistics of one stage of a {@linkplain Pipeline}.
+	 *
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class StageStats
+	{
+		/** The name of the stage. */
+		public final String name;
+		/** The number of workers of the stage. */
+		public final int parallelism;
+		/** The number of items taken in by the stage. */
+		public final long processed;
+		/** The number of items passed on by the stage. */
+		public final long emitted;
+		/** The number of items on which the stage threw. */
+		public final long failed;
+		/** Items processed per second, since the pipeline started. */
+		public final double throughput;
+		/** The fraction of the time since the pipeline started that the workers of the stage spent processing items, rather than waiting. */
+		public final double utilization;
+		/** The number of batches waiting in the input queue of the stage. */
+		public final int queueDepth;
+		/** The capacity, in batches, of the input queue of the stage. */
+		public final int queueCapacity;
+		/** The mean number of batches waiting in the input queue of the stage, as sampled each time a batch is taken. */
+		public final double meanOccupancy;
+		
+		private StageStats(Stage stage, long elapsedNanos)
+		{
+			name = stage.name;
+			parallelism = stage.parallelism;
+			processed = stage.processed.sum();
+			emitted = stage.emitted.sum();
+			failed = stage.failed.sum();
+			throughput = elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+			utilization = elapsedNanos == 0 ? 0 : stage.busy.sum() / ((double) elapsedNanos * parallelism);
+			queueDepth = stage.in.size();
+			queueCapacity = queueDepth + stage.in.remainingCapacity();
+			long samples = stage.samples.sum();
+			meanOccupancy = samples == 0 ? 0 : stage.occupancy.sum() / (double) samples;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return name + " (x" + parallelism + "): " + processed + " in, " + emitted + " out, " + failed + " failed, " + (long) throughput + "/s, "
+					+ Profiler.PERCENT_FORMAT.format(100 * utilization) + "% busy, queue " + queueDepth + "/" + queueCapacity + " (mean " + Math.round(meanOccupancy * 10) / 10.0 + ")";
+		}
+	}
+}
@@ -125,6 +125,14 @@ public class Profiler
 		return root == null ? 0 : root.getDepth();
 	}
 	
+	/**
+	 * @return Whether a mark has been pushed since the last {@linkplain Profiler#reset()}, and not yet popped, so that any pushed now is nested within it.
+	 */
+	public boolean isOpen()
+	{
+		return root != null && !root.popped;
+	}
+	
 	@Override
 	public String toString()
 	{
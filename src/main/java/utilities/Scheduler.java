@@ -16,49 +16,464 @@
 
 package utilities;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Objects;
 import java.util.PriorityQueue;
 import java.util.Random;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 public class Scheduler
 {
-	private PriorityQueue<TickTask> queue = new PriorityQueue<TickTask>((a, b) -> { return Integer.compare(a.runTick, b.runTick); } );
-	private ArrayList<TickTask> constant = new ArrayList<>();
-	private int tick = 0;
+	private static final int COMPACT_MIN = 1024;
+	private static final int SNAPSHOT_MAGIC = 0x53445343, SNAPSHOT_BUFFER = 1 << 16;
+	private static final byte SNAPSHOT_VERSION = 1, END = 0, PENDING = 1, REPEATED = 2, ENDLESS = 3, PERIODIC = 4;
+	
+	private final Engine engine;
+	private final TickQueue queue;
+	private ArrayList<Entry> constant = new ArrayList<>();
+	/** The most recently scheduled entry of each key, from which the rest are chained, for the pending and the repeated tasks respectively. */
+	private final HashMap<Object, Entry> keyed = new HashMap<>(), keyedRepeated = new HashMap<>();
+	/** The number of cancelled entries still held by the queue. */
+	private int cancelled = 0;
+	private volatile int tick = 0;
+	/** Null unless sharded tasks are to be run in parallel. */
+	private Parallelizer parallel;
+	/** The sharded tasks of the current tick, by lane, and how far through each lane its thread got before it threw, if it did. */
+	private final ArrayList<ArrayList<Entry>> lanes = new ArrayList<>();
+	private Throwable[] laneFailures;
+	private int[] laneRan;
+	/** Whether sharded tasks are running in parallel, during which any change to the scheduler is deferred to the end of the tick. */
+	private volatile boolean sharding = false;
+	private final ConcurrentLinkedQueue<Runnable> deferred = new ConcurrentLinkedQueue<>();
+	/** Null unless ticks are to be recorded. */
+	private TickMetrics metrics;
+	/** The metrics recording the current tick, if any, and the number of tasks it has run. */
+	private TickMetrics measuring;
+	private int tasksRun = 0;
+	/** While coalescing by {@linkplain Scheduler#advanceTo(int, boolean)}, the tick being advanced to, from which periodic tasks are re-armed. */
+	private int coalesceTo = Integer.MIN_VALUE;
+	
+	public Scheduler()
+	{
+		this(Engine.HEAP);
+	}
+	
+	/**
+	 * Create a new {@linkplain Scheduler} which keeps its pending tasks in the given {@linkplain Engine}.
+	 * @param engine
+	 */
+	public Scheduler(Engine engine)
+	{
+		if (engine == null)
+			throw new IllegalArgumentException("Scheduler cannot use null engine.");
+		this.engine = engine;
+		queue = engine.create();
+	}
 	
 	public void tick()
+	{
+		TickMetrics m = metrics;
+		if (m == null || !m.enabled())
+		{
+			step();
+			return;
+		}
+		tasksRun = 0;
+		long start = m.begin();
+		measuring = m;
+		try
+		{
+			step();
+		}
+		finally
+		{
+			measuring = null;
+			m.end(tick, tasksRun, start);
+		}
+	}
+	
+	private void step()
 	{
 		tick++;
-		while (queue.peek() != null && queue.peek().runTick < tick)
-			queue.poll().task.run();
+		if (parallel == null)
+		{
+			Entry e;
+			while ((e = queue.poll(tick)) != null)
+				run(e);
+		}
+		else
+			tickSharded();
+		if (!constant.isEmpty())
+			tickRepeated(1);
+	}
+	
+	/**
+	 * Ticks the given number of times, as by {@linkplain Scheduler#advanceTo(int)}.
+	 * @param count
+	 */
+	public void tick(int count)
+	{
+		advanceTo(tick + count);
+	}
+	
+	/**
+	 * Ticks until the given tick is reached, as by {@linkplain Scheduler#advanceTo(int, boolean)}, without coalescing.
+	 * @param target
+	 */
+	public void advanceTo(int target)
+	{
+		advanceTo(target, false);
+	}
+	
+	/**
+	 * Ticks until the given tick is reached, with the same effect as calling {@linkplain Scheduler#tick()} once per tick, but jumping directly
+	 * over every tick on which no pending task comes due, so that catching up costs in proportion to the tasks run, rather than the ticks passed.
+	 * <p>Ticks cannot be skipped while there are repeated tasks, which run every tick, unless every one is an {@linkplain ElapsedTask},
+	 * in which case each is run once for each run of ticks skipped, with the number of ticks elapsed.
+	 * @param target The tick to reach. Nothing is done if it has already been reached.
+	 * @param coalesce Whether periodic tasks which come due before the target should run only once, and then be re-armed as though they had run on the target tick,
+	 * rather than running for every period missed.
+	 */
+	public void advanceTo(int target, boolean coalesce)
+	{
+		int was = coalesceTo;
+		if (coalesce)
+			coalesceTo = target;
+		try
+		{
+			while (tick < target)
+			{
+				int stop = (int) Math.min(target, Math.max(queue.nextDue(), tick + 1L));
+				if (stop > tick + 1)
+					skip(stop - 1);
+				tick();
+			}
+		}
+		finally
+		{
+			coalesceTo = was;
+		}
+	}
+	
+	/**
+	 * Moves on to the given tick, before which no pending task comes due.
+	 */
+	private void skip(int to)
+	{
+		for (int i = 0; i < constant.size(); i++)
+		{
+			if (!(constant.get(i).task.task instanceof ElapsedTask))
+			{
+				while (tick < to)
+					tick();
+				return;
+			}
+		}
+		int elapsed = to - tick;
+		tick = to;
 		if (!constant.isEmpty())
+			tickRepeated(elapsed);
+	}
+	
+	/**
+	 * Runs the tasks due this tick as set by {@linkplain Scheduler#parallelize(Parallelizer)}: those without a shard as they come due,
+	 * and then the rest in parallel, one lane of tasks per thread.
+	 * <p>Sharded entries stay in the index of their key until the lanes have finished, so that a task without a shard may still cancel one due on the same tick,
+	 * whichever came out of the queue first. Those cancelled are skipped by their lane, and counted out of the cancelled entries once it has finished.
+	 */
+	private void tickSharded()
+	{
+		int width = parallel.threads();
+		if (lanes.size() != width)
 		{
-			Iterator<TickTask> it = constant.iterator();
-			TickTask t;
-			while (it.hasNext())
+			lanes.clear();
+			for (int i = 0; i < width; i++)
+				lanes.add(new ArrayList<>());
+			laneFailures = new Throwable[width];
+			laneRan = new int[width];
+		}
+		int count = 0;
+		Entry e;
+		while ((e = queue.poll(tick)) != null)
+		{
+			Object shard = e.task.shard;
+			if (shard == null || e.cancelled)
 			{
-				t = it.next();
-				t.task.run();
-				if (t.runTick >= 0 && t.runTick < tick)
-					it.remove();
+				run(e);
+				continue;
+			}
+			int lane = shard == TickTask.INDEPENDENT ? count % width : Math.floorMod(spread(shard.hashCode()), width);
+			lanes.get(lane).add(e);
+			count++;
+		}
+		if (count == 0)
+			return;
+		sharding = true;
+		try
+		{
+			parallel.invokeEach(this::runLane);
+		}
+		finally
+		{
+			sharding = false;
+		}
+		Throwable failure = null;
+		for (int l = 0; l < width; l++)
+		{
+			ArrayList<Entry> lane = lanes.get(l);
+			int ran = laneRan[l];
+			for (int i = 0; i < lane.size(); i++)
+			{
+				e = lane.get(i);
+				if (e.cancelled && !(e instanceof Periodic))
+					cancelled--;
+				else if (i > ran)
+					queue.add(e);
+				else if (!(e instanceof Periodic))
+				{
+					tasksRun++;
+					unlink(keyed, e);
+				}
+				else
+				{
+					Periodic p = (Periodic) e;
+					boolean again = false;
+					if (!p.cancelled)
+						tasksRun++;
+					try
+					{
+						again = i < ran && !p.cancelled && p.again();
+					}
+					catch (Throwable t)
+					{
+						failure = merge(failure, t);
+					}
+					rearm(p, again);
+				}
+			}
+			lane.clear();
+			failure = merge(failure, laneFailures[l]);
+			laneFailures[l] = null;
+		}
+		Runnable call;
+		while ((call = deferred.poll()) != null)
+			call.run();
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new RuntimeException(failure);
+	}
+	
+	/**
+	 * Runs one lane of sharded tasks, in order, skipping those cancelled and stopping at the first which throws. The tasks after it are returned to the queue,
+	 * to run on the next tick.
+	 */
+	private void runLane(int thread)
+	{
+		ArrayList<Entry> lane = lanes.get(thread);
+		int i = 0;
+		try
+		{
+			for (; i < lane.size(); i++)
+			{
+				Entry e = lane.get(i);
+				if (!e.cancelled)
+					invoke(e.task, 1);
+			}
+		}
+		catch (Throwable t)
+		{
+			laneFailures[thread] = t;
+		}
+		laneRan[thread] = i;
+	}
+	
+	private static int spread(int hash)
+	{
+		return hash ^ hash >>> 16;
+	}
+	
+	private static Throwable merge(Throwable first, Throwable next)
+	{
+		if (first == null)
+			return next;
+		if (next != null)
+			first.addSuppressed(next);
+		return first;
+	}
+	
+	/**
+	 * Runs the tasks of subsequent ticks which have a {@linkplain TickTask#shard} in parallel, on the threads of the given {@linkplain Parallelizer}.
+	 * <p>Tasks of the same shard are run one after another on the same thread, in the order in which they come due, while those of
+	 * {@linkplain TickTask#INDEPENDENT} are dealt evenly among the threads.
+	 * Tasks without a shard are run on the ticking thread as they come due, before the sharded tasks of the tick, and repeated tasks are run after them, as before.
+	 * Every sharded task of a tick finishes before the tick returns.
+	 * <p>While the sharded tasks run, every call which would change this scheduler, from any thread, is deferred until they have all finished, and then applied in order.
+	 * Such calls return false where they would report whether a task was replaced or removed.
+	 * <p>If sharded tasks throw, the rest of the tick's tasks in the same lanes are left to the next tick, and the first throwable is rethrown once the others have finished,
+	 * with the rest suppressed.
+	 * <p>The {@linkplain Parallelizer} must not be one whose tasks tick this scheduler.
+	 * @param parallelizer The {@linkplain Parallelizer} to run on, or null to run every task on the ticking thread.
+	 * @return this
+	 */
+	public Scheduler parallelize(Parallelizer parallelizer)
+	{
+		parallel = parallelizer;
+		return this;
+	}
+	
+	/**
+	 * Runs each repeated task, compacting away those which have expired or been cancelled as it goes.
+	 * Tasks repeated during the tick are first run on the next.
+	 * @param elapsed The number of ticks up to the current one to run for, which may only be more than one if every repeated task is an {@linkplain ElapsedTask}.
+	 */
+	private void tickRepeated(int elapsed)
+	{
+		int size = constant.size(), kept = 0, i = 0;
+		try
+		{
+			for (; i < size; i++)
+			{
+				Entry e = constant.get(i);
+				if (e.cancelled)
+					continue;
+				tasksRun++;
+				if (elapsed == 1)
+					invoke(e.task, 1);
+				else
+					invoke(e.task, e.task.runTick < 0 ? elapsed : Math.max(1, Math.min(elapsed, e.task.runTick + 1 - (tick - elapsed))));
+				if (e.cancelled)
+					continue;
+				if (e.task.runTick >= 0 && e.task.runTick < tick)
+					unlink(keyedRepeated, e);
+				else
+					constant.set(kept++, e);
 			}
 		}
+		finally
+		{
+			for (int j = i; j < constant.size(); j++)
+				constant.set(kept++, constant.get(j));
+			constant.subList(kept, constant.size()).clear();
+		}
 	}
 	
 	public void runAll()
 	{
-		while (queue.peek() != null)
-			queue.poll().task.run();
+		Entry e;
+		while ((e = queue.pollAny()) != null)
+			run(e);
+	}
+	
+	private void run(Entry e)
+	{
+		if (e.cancelled)
+		{
+			cancelled--;
+			return;
+		}
+		tasksRun++;
+		if (e instanceof Periodic)
+		{
+			run((Periodic) e);
+			return;
+		}
+		unlink(keyed, e);
+		invoke(e.task, 1);
+	}
+	
+	/**
+	 * Runs a task, for the given number of ticks if it is an {@linkplain ElapsedTask}, and times it if sampled by the metrics recording the tick.
+	 */
+	private void invoke(TickTask t, int elapsed)
+	{
+		TickMetrics m = measuring;
+		boolean timed = m != null && m.sample();
+		long start = timed ? System.nanoTime() : 0;
+		try
+		{
+			if (elapsed == 1)
+				t.task.run();
+			else
+				((ElapsedTask) t.task).run(elapsed);
+		}
+		finally
+		{
+			if (timed)
+				m.timed(t, tick, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Runs a periodic task, and then re-arms the same entry for its next period. It stays in the index of its key throughout,
+	 * so that it may be cancelled while it runs, in which case it is counted out of the cancelled entries, never having been returned to the queue.
+	 */
+	private void run(Periodic p)
+	{
+		boolean again = false;
+		try
+		{
+			invoke(p.task, 1);
+			again = !p.cancelled && p.again();
+		}
+		finally
+		{
+			rearm(p, again);
+		}
+	}
+	
+	private void rearm(Periodic p, boolean again)
+	{
+		if (p.cancelled)
+			cancelled--;
+		else if (again)
+		{
+			p.at = Math.max(tick, coalesceTo) + p.period.getAsInt();
+			queue.add(p);
+		}
+		else
+			unlink(keyed, p);
 	}
 	
+	/**
+	 * Removes every pending and repeated task with the given key. Costs O(1) in the number of tasks scheduled, and O(n) in the number with the key,
+	 * as keys are indexed by {@linkplain Object#hashCode()}, and the tasks removed are only marked, to be discarded once they come due.
+	 * @param key
+	 * @return Whether any task was removed.
+	 */
 	public boolean removeTask(Object key)
 	{
-		boolean any = false;
-		any = queue.removeIf((t) -> key.equals(t.key));
-		any = any || constant.removeIf((t) -> key.equals(t.key));
+		if (sharding)
+			return defer(() -> removeTask(key));
+		boolean any = cancel(keyed, key);
+		any |= cancel(keyedRepeated, key);
 		return any;
 	}
 	
@@ -66,22 +481,38 @@ public class Scheduler
 	{
 		if (task == null)
 			throw new IllegalArgumentException("Cannot schedule null task.");
-		queue.add(task);
+		if (sharding)
+		{
+			defer(() -> scheduleTask(task));
+			return;
+		}
+		Entry e = new Entry(task);
+		queue.add(e);
+		link(keyed, e);
 	}
 	
 	public void scheduleRepeated(TickTask task)
 	{
 		if (task == null)
 			throw new IllegalArgumentException("Cannot schedule null task.");
-		constant.add(task);
+		if (sharding)
+		{
+			defer(() -> scheduleRepeated(task));
+			return;
+		}
+		Entry e = new Entry(task);
+		constant.add(e);
+		link(keyedRepeated, e);
 	}
 	
 	public boolean scheduleRefreshableRepeated(TickTask task)
 	{
 		if (task.key == null)
 			throw new NullPointerException("Refreshable tasks must have non-null key ID.");
-		boolean rep = constant.removeIf((t) -> task.key.equals(t.key));
-		constant.add(task);
+		if (sharding)
+			return defer(() -> scheduleRefreshableRepeated(task));
+		boolean rep = cancel(keyedRepeated, task.key);
+		scheduleRepeated(task);
 		return rep;
 	}
 	
@@ -89,16 +520,96 @@ public class Scheduler
 	{
 		if (task.key == null)
 			throw new NullPointerException("Refreshable tasks must have non-null key ID.");
-		boolean rep = queue.removeIf((t) -> task.key.equals(t.key));
-		queue.add(task);
+		if (sharding)
+			return defer(() -> scheduleRefreshable(task));
+		boolean rep = cancel(keyed, task.key);
+		scheduleTask(task);
 		return rep;
 	}
 	
+	/**
+	 * Defers a call until the sharded tasks of the current tick have finished.
+	 * @return false, as the call has not been applied.
+	 */
+	private boolean defer(Runnable call)
+	{
+		deferred.add(call);
+		return false;
+	}
+	
+	private static void link(HashMap<Object, Entry> index, Entry e)
+	{
+		if (e.task.key == null)
+			return;
+		Entry next = index.put(e.task.key, e);
+		if (next != null)
+		{
+			e.nextKeyed = next;
+			next.prevKeyed = e;
+		}
+	}
+	
+	private static void unlink(HashMap<Object, Entry> index, Entry e)
+	{
+		if (e.task.key == null)
+			return;
+		if (e.prevKeyed != null)
+			e.prevKeyed.nextKeyed = e.nextKeyed;
+		else if (e.nextKeyed != null)
+			index.put(e.task.key, e.nextKeyed);
+		else
+			index.remove(e.task.key);
+		if (e.nextKeyed != null)
+			e.nextKeyed.prevKeyed = e.prevKeyed;
+		e.prevKeyed = e.nextKeyed = null;
+	}
+	
+	/**
+	 * Marks every entry with the given key as cancelled, and removes them from the index. Once cancelled entries make up more than half the queue,
+	 * they are removed from it all at once, so that they never cost more than an amortized O(1) each. Periodic entries cancelled while they run are not in the queue,
+	 * so stay counted until they finish.
+	 * @return Whether there were any.
+	 */
+	private boolean cancel(HashMap<Object, Entry> index, Object key)
+	{
+		Entry e = index.remove(key);
+		if (e == null)
+			return false;
+		int count = 0;
+		for (; e != null; e = e.nextKeyed)
+		{
+			e.cancelled = true;
+			count++;
+		}
+		if (index == keyed)
+		{
+			cancelled += count;
+			if (cancelled > COMPACT_MIN && cancelled > queue.size() / 2)
+			{
+				int size = queue.size();
+				queue.removeIf((c) -> c.cancelled);
+				cancelled -= size - queue.size();
+			}
+		}
+		return true;
+	}
+	
 	public void scheduleTask(int delay, Runnable task)
 	{
 		scheduleTask(new TickTask(tick + delay, task));
 	}
 	
+	/**
+	 * Schedules a task to be run in parallel with those of other shards, as set by {@linkplain Scheduler#parallelize(Parallelizer)}.
+	 * @param delay
+	 * @param shard The {@linkplain TickTask#shard} of the task.
+	 * @param task
+	 */
+	public void scheduleSharded(int delay, Object shard, Runnable task)
+	{
+		scheduleTask(new TickTask(tick + delay, null, shard, task));
+	}
+	
 	public void scheduleRepeated(int duration, Runnable task)
 	{
 		scheduleRepeated(new TickTask(tick + duration, task));
@@ -126,73 +637,328 @@ public class Scheduler
 	 */
 	public void schedulePeriodic(Supplier<Integer> period, Supplier<Boolean> removal, Runnable task)
 	{
-		Runnable[] ref = new Runnable[1];
-		Runnable per = () ->
-		{
-			if (!removal.get())
-				scheduleTask(period.get(), () ->
-				{
-					task.run();
-					ref[0].run();
-				});
-		};
-		ref[0] = per;
-		per.run();
+		schedulePeriodic(null, period::get, removal::get, task);
 	}
 	
 	public void schedulePeriodic(Supplier<Integer> period, int count, Runnable task)
 	{
-		AtomicInteger i = new AtomicInteger(0);
-		schedulePeriodic(period, () -> i.getAndIncrement() >= count, task);
+		schedulePeriodic(null, period::get, count, task);
 	}
 	
 	public void schedulePeriodic(int period, int count, Runnable task)
 	{
-		AtomicInteger i = new AtomicInteger(0);
-		schedulePeriodic(() -> period, () -> i.getAndIncrement() < count, task);
+		schedulePeriodic(null, new Fixed(period), count, task);
+	}
+	
+	/**
+	 * Schedules a task to run once every period, for as long as the removal condition allows.
+	 * <p>The task is held by a single entry, which is re-armed in place for each period, so that running it allocates nothing beyond what
+	 * the task and suppliers themselves do.
+	 * @param key The key by which the task may be removed, or null.
+	 * @param period Return the next period. Called once each time the task is re-armed.
+	 * @param removal Return whether or not the periodic task should cease. Called <b>once</b> for each attempt to reschedule, including the first.
+	 * @param task
+	 */
+	public void schedulePeriodic(Object key, IntSupplier period, BooleanSupplier removal, Runnable task)
+	{
+		if (period == null || removal == null || task == null)
+			throw new IllegalArgumentException("Cannot schedule periodic task with null period, removal or task.");
+		if (sharding)
+		{
+			defer(() -> schedulePeriodic(key, period, removal, task));
+			return;
+		}
+		arm(new Periodic(new TickTask(tick, key, task), period, removal, 0));
+	}
+	
+	/**
+	 * Schedules a task to run once every period, the given number of times, as by {@linkplain Scheduler#schedulePeriodic(Object, IntSupplier, BooleanSupplier, Runnable)}.
+	 * @param key The key by which the task may be removed, or null.
+	 * @param period Return the next period. Called once each time the task is re-armed.
+	 * @param count The number of times to run the task.
+	 * @param task
+	 */
+	public void schedulePeriodic(Object key, IntSupplier period, int count, Runnable task)
+	{
+		if (period == null || task == null)
+			throw new IllegalArgumentException("Cannot schedule periodic task with null period or task.");
+		if (sharding)
+		{
+			defer(() -> schedulePeriodic(key, period, count, task));
+			return;
+		}
+		arm(new Periodic(new TickTask(tick, key, task), period, null, count));
+	}
+	
+	private void arm(Periodic p)
+	{
+		if (!p.again())
+			return;
+		p.at = tick + p.period.getAsInt();
+		queue.add(p);
+		link(keyed, p);
+	}
+	
+	/**
+	 * Schedules a periodic task as read from a snapshot, already armed for its next run.
+	 * @param task The task, whose {@linkplain TickTask#runTick} is its next run.
+	 * @param period
+	 * @param removal The removal condition, or null if the task is run a set number of times.
+	 * @param remaining The number of runs remaining after the next, if the task is run a set number of times.
+	 */
+	void resumePeriodic(TickTask task, IntSupplier period, BooleanSupplier removal, int remaining)
+	{
+		if (sharding)
+		{
+			defer(() -> resumePeriodic(task, period, removal, remaining));
+			return;
+		}
+		Periodic p = new Periodic(task, period, removal, remaining);
+		queue.add(p);
+		link(keyed, p);
 	}
 	
 	////////////////////////////
 	
+	/**
+	 * Records subsequent ticks to the given {@linkplain TickMetrics}, while it is {@linkplain TickMetrics#enabled()}.
+	 * @param metrics The {@linkplain TickMetrics} to record to, or null to record nothing.
+	 * @return this
+	 */
+	public Scheduler metrics(TickMetrics metrics)
+	{
+		this.metrics = metrics;
+		return this;
+	}
+	
+	/**
+	 * @return The {@linkplain TickMetrics} to which ticks are recorded, or null.
+	 */
+	public TickMetrics metrics()
+	{
+		return metrics;
+	}
+	
 	public int getTick()
 	{
 		return tick;
 	}
 	
-	////////////////////////////
+	public Engine getEngine()
+	{
+		return engine;
+	}
 	
-	public static class TickTask
+	/**
+	 * @return The number of pending tasks, not counting repeated tasks.
+	 */
+	public int getPending()
 	{
-		public final int runTick;
-		public final Object key;
-		public final Runnable task;
-		
-		public TickTask(int runTick, Object key, Runnable task)
+		return queue.size() - cancelled;
+	}
+	
+	/**
+	 * Writes the pending and repeated tasks to the given file, as by {@linkplain Scheduler#snapshot(Path, TaskTypes, Consumer)}, without reporting those left out.
+	 * @param file
+	 * @param types
+	 * @return The number of tasks written.
+	 * @throws IOException
+	 */
+	public int snapshot(Path file, TaskTypes types) throws IOException
+	{
+		return snapshot(file, types, null);
+	}
+	
+	/**
+	 * Writes the pending and repeated tasks to the given file, from which they may be scheduled again by {@linkplain Scheduler#restore(Path, TaskTypes)}.
+	 * The tasks are streamed to the file as they are found, and it is only replaced once the snapshot is complete.
+	 * <p>Each task is written with its delay or duration from the current tick, its key and shard, and its type id and payload, as given by the {@linkplain TaskTypes}.
+	 * Periodic tasks are also written with their period and removal condition, or with the number of runs they have left. Periods given as a constant
+	 * are written without being registered.
+	 * <p>Tasks which are not {@linkplain Persistable} of a registered type, or whose key, shard, period or removal condition cannot be written, are left out,
+	 * and passed to the given consumer.
+	 * @param file
+	 * @param types
+	 * @param skipped Given each task left out, or null.
+	 * @return The number of tasks written.
+	 * @throws IOException
+	 */
+	public int snapshot(Path file, TaskTypes types, Consumer<TickTask> skipped) throws IOException
+	{
+		if (sharding)
+			throw new IllegalStateException("Cannot snapshot Scheduler while sharded tasks run.");
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try
 		{
-			this.runTick = runTick;
-			this.task = task;
-			this.key = key;
+			int written = writeSnapshot(temp, types, skipped);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return written;
 		}
-		
-		public TickTask(int runTick, Runnable task)
+		catch (IOException | RuntimeException e)
 		{
-			this(runTick, null, task);
+			Files.deleteIfExists(temp);
+			throw e;
 		}
-		
-		//////////////
-		
-		public static class KeyID
+	}
+	
+	private int writeSnapshot(Path file, TaskTypes types, Consumer<TickTask> skipped) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
 		{
-			public final Object key;
-			public final int id;
-			
-			public KeyID(Object key, int id)
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), SNAPSHOT_BUFFER));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeByte(SNAPSHOT_VERSION);
+			RecordOutput record = new RecordOutput(out, types, skipped);
+			try
 			{
-				this.key = key;
-				this.id = id;
+				queue.forEach((e) ->
+				{
+					if (e.cancelled)
+						return;
+					try
+					{
+						if (e instanceof Periodic)
+							record.write(e.at - tick, (Periodic) e);
+						else
+							record.write(PENDING, e.at - tick, e.task);
+					}
+					catch (IOException ex)
+					{
+						throw new UncheckedIOException(ex);
+					}
+				});
 			}
-			
-			@Override
+			catch (UncheckedIOException e)
+			{
+				throw e.getCause();
+			}
+			for (Entry e : constant)
+			{
+				if (e.cancelled)
+					continue;
+				if (e.task.runTick < 0)
+					record.write(ENDLESS, 0, e.task);
+				else
+					record.write(REPEATED, e.task.runTick - tick, e.task);
+			}
+			out.writeByte(END);
+			out.flush();
+			channel.force(true);
+			return record.written;
+		}
+	}
+	
+	/**
+	 * Schedules the tasks of a snapshot written by {@linkplain Scheduler#snapshot(Path, TaskTypes)}, with the same delays and durations from the current tick
+	 * as they had from the tick of the snapshot, alongside any tasks already scheduled.
+	 * <p>The records of tasks, keys or shards of types not registered with the given {@linkplain TaskTypes} are skipped.
+	 * @param file
+	 * @param types
+	 * @return The number of tasks scheduled.
+	 * @throws IOException If the file cannot be read, or is not a snapshot.
+	 */
+	public int restore(Path file, TaskTypes types) throws IOException
+	{
+		int restored = 0;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), SNAPSHOT_BUFFER));
+			if (in.readInt() != SNAPSHOT_MAGIC || in.readByte() != SNAPSHOT_VERSION)
+				throw new IOException("Not a Scheduler snapshot: " + file);
+			RecordInput record = new RecordInput();
+			DataInputStream body = new DataInputStream(record);
+			byte kind;
+			while ((kind = in.readByte()) != END)
+			{
+				record.fill(in, in.readInt());
+				int ticks = body.readInt();
+				Object key = types.read(body), shard = types.read(body), task = types.read(body);
+				if (key == TaskTypes.UNKNOWN || shard == TaskTypes.UNKNOWN || task == TaskTypes.UNKNOWN)
+					continue;
+				if (!(task instanceof Runnable))
+					throw new IOException("Snapshot task is not Runnable: " + task.getClass().getName());
+				Runnable run = (Runnable) task;
+				Object period = null, removal = null;
+				if (kind == PERIODIC)
+				{
+					period = types.read(body);
+					removal = types.read(body);
+					if (period == TaskTypes.UNKNOWN || removal == TaskTypes.UNKNOWN)
+						continue;
+					if (!(period instanceof IntSupplier) || (removal != null && !(removal instanceof BooleanSupplier)))
+						throw new IOException("Snapshot periodic task has an invalid period or removal condition.");
+				}
+				switch (kind)
+				{
+					case PENDING:
+						scheduleTask(new TickTask(tick + ticks, key, shard, run));
+						break;
+					case REPEATED:
+						scheduleRepeated(new TickTask(tick + ticks, key, shard, run));
+						break;
+					case ENDLESS:
+						scheduleRepeated(new TickTask(-1, key, shard, run));
+						break;
+					case PERIODIC:
+						resumePeriodic(new TickTask(tick + ticks, key, shard, run), (IntSupplier) period, (BooleanSupplier) removal, body.readInt());
+						break;
+					default:
+						throw new IOException("Unknown snapshot record kind " + kind + ".");
+				}
+				restored++;
+			}
+		}
+		return restored;
+	}
+	
+	////////////////////////////
+	
+	public static class TickTask
+	{
+		/** The shard of tasks which may run on any thread, in any order relative to the other tasks of their tick. */
+		public static final Object INDEPENDENT = new Object();
+		
+		public final int runTick;
+		public final Object key;
+		/**
+		 * The tasks of the same shard, by {@linkplain Object#equals(Object)}, are run in order on the same thread when the {@linkplain Scheduler}
+		 * is {@linkplain Scheduler#parallelize(Parallelizer) parallelized}. Null for tasks which must run on the ticking thread.
+		 */
+		public final Object shard;
+		public final Runnable task;
+		
+		public TickTask(int runTick, Object key, Object shard, Runnable task)
+		{
+			this.runTick = runTick;
+			this.task = task;
+			this.key = key;
+			this.shard = shard;
+		}
+		
+		public TickTask(int runTick, Object key, Runnable task)
+		{
+			this(runTick, key, null, task);
+		}
+		
+		public TickTask(int runTick, Runnable task)
+		{
+			this(runTick, null, task);
+		}
+		
+		//////////////
+		
+		public static class KeyID
+		{
+			public final Object key;
+			public final int id;
+			
+			public KeyID(Object key, int id)
+			{
+				this.key = key;
+				this.id = id;
+			}
+			
+			@Override
 			public boolean equals(Object obj)
 			{
 				if (obj == null || !(obj instanceof KeyID))
@@ -200,6 +966,678 @@ public class Scheduler
 				KeyID oth = (KeyID) obj;
 				return oth.key.equals(key) && oth.id == id;
 			}
+			
+			@Override
+			public int hashCode()
+			{
+				return Objects.hash(key, id);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * A repeated task which may be run once for a number of ticks at a time, as when {@linkplain Scheduler#advanceTo(int, boolean)} skips over ticks.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static interface ElapsedTask extends Runnable
+	{
+		/**
+		 * @param elapsed The number of ticks to run for, up to and including the current one.
+		 */
+		public void run(int elapsed);
+		
+		@Override
+		public default void run()
+		{
+			run(1);
+		}
+	}
+	
+	/**
+	 * 
+	 * A task, key or shard which may be written to a snapshot by {@linkplain Scheduler#snapshot(Path, TaskTypes)}, once its class is registered
+	 * with the {@linkplain TaskTypes} used.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static interface Persistable
+	{
+		/**
+		 * Writes the payload from which the {@linkplain TaskTypes.Reader} registered for this class will read it back.
+		 * @param out
+		 * @throws IOException
+		 */
+		public void write(DataOutput out) throws IOException;
+	}
+	
+	/**
+	 * 
+	 * The {@linkplain Persistable} types which may be written to and read from a snapshot, each under a fixed id.
+	 * <p>Strings, Integers and Longs, {@linkplain TickTask.KeyID}s of those, and {@linkplain TickTask#INDEPENDENT} may be used as keys and shards without being registered.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class TaskTypes
+	{
+		private static final byte NULL = 0, STRING = 1, INT = 2, LONG = 3, KEY_ID = 4, INDEPENDENT = 5, PERSISTED = 6, FIXED = 7;
+		/** Read in place of an object of an unregistered type. */
+		private static final Object UNKNOWN = new Object();
+		
+		private final HashMap<Class<?>, Integer> ids = new HashMap<>();
+		private final HashMap<Integer, Reader<?>> readers = new HashMap<>();
+		
+		/**
+		 * Registers a type under an id, which must stay the same from the writing of a snapshot to its reading.
+		 * @param <T>
+		 * @param id
+		 * @param type The exact class of the objects to be written. Subclasses must be registered separately.
+		 * @param reader Reads an object back from what its {@linkplain Persistable#write(DataOutput)} wrote.
+		 * @return this
+		 */
+		public <T extends Persistable> TaskTypes register(int id, Class<T> type, Reader<? extends T> reader)
+		{
+			if (type == null || reader == null)
+				throw new IllegalArgumentException("Cannot register null task type or reader.");
+			if (ids.containsKey(type) || readers.containsKey(id))
+				throw new IllegalArgumentException("Task type " + type.getName() + " or id " + id + " is already registered.");
+			ids.put(type, id);
+			readers.put(id, reader);
+			return this;
+		}
+		
+		/**
+		 * @return Whether the object could be written. If not, what was written must be discarded.
+		 */
+		private boolean write(DataOutput out, Object obj) throws IOException
+		{
+			if (obj == null)
+				out.writeByte(NULL);
+			else if (obj == TickTask.INDEPENDENT)
+				out.writeByte(INDEPENDENT);
+			else if (obj instanceof String)
+			{
+				out.writeByte(STRING);
+				out.writeUTF((String) obj);
+			}
+			else if (obj instanceof Integer)
+			{
+				out.writeByte(INT);
+				out.writeInt((Integer) obj);
+			}
+			else if (obj instanceof Long)
+			{
+				out.writeByte(LONG);
+				out.writeLong((Long) obj);
+			}
+			else if (obj instanceof Fixed)
+			{
+				out.writeByte(FIXED);
+				out.writeInt(((Fixed) obj).period);
+			}
+			else if (obj instanceof TickTask.KeyID)
+			{
+				TickTask.KeyID key = (TickTask.KeyID) obj;
+				out.writeByte(KEY_ID);
+				out.writeInt(key.id);
+				return write(out, key.key);
+			}
+			else
+			{
+				Integer id = ids.get(obj.getClass());
+				if (id == null)
+					return false;
+				out.writeByte(PERSISTED);
+				out.writeInt(id);
+				((Persistable) obj).write(out);
+			}
+			return true;
+		}
+		
+		/**
+		 * @return The object read, or {@linkplain TaskTypes#UNKNOWN} if its type is not registered.
+		 */
+		private Object read(DataInput in) throws IOException
+		{
+			byte tag = in.readByte();
+			switch (tag)
+			{
+				case NULL:
+					return null;
+				case INDEPENDENT:
+					return TickTask.INDEPENDENT;
+				case STRING:
+					return in.readUTF();
+				case INT:
+					return in.readInt();
+				case LONG:
+					return in.readLong();
+				case FIXED:
+					return new Fixed(in.readInt());
+				case KEY_ID:
+					int id = in.readInt();
+					Object key = read(in);
+					return key == UNKNOWN ? UNKNOWN : new TickTask.KeyID(key, id);
+				case PERSISTED:
+					Reader<?> reader = readers.get(in.readInt());
+					return reader == null ? UNKNOWN : reader.read(in);
+				default:
+					throw new IOException("Unknown snapshot value tag " + tag + ".");
+			}
+		}
+		
+		/**
+		 * Reads back an object of a registered type.
+		 * 
+		 * @author SerpentDagger
+		 *
+		 * @param <T>
+		 */
+		@FunctionalInterface
+		public static interface Reader<T>
+		{
+			public T read(DataInput in) throws IOException;
+		}
+	}
+	
+	/**
+	 * Writes length-prefixed snapshot records, each first built in a reused buffer so that a task which cannot be written may be discarded.
+	 */
+	private static class RecordOutput
+	{
+		private final DataOutputStream out;
+		private final TaskTypes types;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream body = new DataOutputStream(bytes);
+		private final Consumer<TickTask> skipped;
+		private int written = 0;
+		
+		private RecordOutput(DataOutputStream out, TaskTypes types, Consumer<TickTask> skipped)
+		{
+			this.out = out;
+			this.types = types;
+			this.skipped = skipped;
+		}
+		
+		private void write(byte kind, int ticks, TickTask task) throws IOException
+		{
+			if (begin(ticks, task))
+				finish(kind);
+			else
+				skip(task);
+		}
+		
+		private void write(int ticks, Periodic p) throws IOException
+		{
+			if (begin(ticks, p.task) && types.write(body, p.period) && types.write(body, p.removal))
+			{
+				body.writeInt(p.remaining);
+				finish(PERIODIC);
+			}
+			else
+				skip(p.task);
+		}
+		
+		/**
+		 * @return Whether the task could be written. If not, the record must be discarded.
+		 */
+		private boolean begin(int ticks, TickTask task) throws IOException
+		{
+			bytes.reset();
+			body.writeInt(ticks);
+			return types.write(body, task.key) && types.write(body, task.shard) && types.write(body, task.task);
+		}
+		
+		private void finish(byte kind) throws IOException
+		{
+			out.writeByte(kind);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			written++;
+		}
+		
+		private void skip(TickTask task)
+		{
+			if (skipped != null)
+				skipped.accept(task);
+		}
+	}
+	
+	/**
+	 * Holds one snapshot record at a time, in a reused buffer.
+	 */
+	private static class RecordInput extends ByteArrayInputStream
+	{
+		private RecordInput()
+		{
+			super(new byte[64]);
+		}
+		
+		private void fill(DataInputStream in, int length) throws IOException
+		{
+			if (length < 0)
+				throw new IOException("Negative snapshot record length " + length + ".");
+			if (buf.length < length)
+				buf = new byte[Math.max(length, buf.length * 2)];
+			in.readFully(buf, 0, length);
+			pos = 0;
+			count = length;
+			mark = 0;
+		}
+	}
+	
+	/**
+	 * A scheduling of a {@linkplain TickTask}, as held by the queue or repeated list, and chained to the others of its key.
+	 */
+	static class Entry
+	{
+		final TickTask task;
+		/** The tick after which the task is due. */
+		int at;
+		boolean cancelled;
+		Entry prevKeyed, nextKeyed;
+		
+		Entry(TickTask task)
+		{
+			this.task = task;
+			at = task.runTick;
+		}
+	}
+	
+	/**
+	 * A constant period, which may be written to a snapshot without being registered.
+	 */
+	private static class Fixed implements IntSupplier
+	{
+		private final int period;
+		
+		private Fixed(int period)
+		{
+			this.period = period;
+		}
+		
+		@Override
+		public int getAsInt()
+		{
+			return period;
+		}
+	}
+	
+	/**
+	 * The entry of a periodic task, which is returned to the queue after each run.
+	 */
+	private static class Periodic extends Entry
+	{
+		private final IntSupplier period;
+		/** Null if the task is instead run a set number of times. */
+		private final BooleanSupplier removal;
+		private int remaining;
+		
+		private Periodic(TickTask task, IntSupplier period, BooleanSupplier removal, int count)
+		{
+			super(task);
+			this.period = period;
+			this.removal = removal;
+			remaining = count;
+		}
+		
+		/**
+		 * @return Whether to schedule another period.
+		 */
+		private boolean again()
+		{
+			return removal != null ? !removal.getAsBoolean() : remaining-- > 0;
+		}
+	}
+	
+	/**
+	 * 
+	 * The structure in which a {@linkplain Scheduler} keeps its pending (non-repeated) tasks, as chosen by {@linkplain Scheduler#Scheduler(Engine)}.
+	 * Either runs tasks due on the same tick in no particular order.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static enum Engine
+	{
+		/**
+		 * A binary heap ordered by {@linkplain TickTask#runTick}, for which scheduling and running a task each cost O(log n) in the number of tasks pending.
+		 * <p>Preferable for small numbers of tasks, and the default.
+		 */
+		HEAP
+		{
+			@Override
+			TickQueue create()
+			{
+				return new Heap();
+			}
+		},
+		/**
+		 * A hierarchical timing wheel, for which scheduling a task costs O(1), and running it amortized O(1), however many are pending.
+		 * <p>The wheel has six levels of 64 slots. The first holds the tasks due within the next 64 ticks, one slot per tick, and each further level
+		 * holds 64 times the span of the last, one slot per span of the level below. Tasks are cascaded down a level as their slot comes due,
+		 * and are run once they reach the slot of the current tick.
+		 * <p>Preferable for large numbers of tasks.
+		 */
+		WHEEL
+		{
+			@Override
+			TickQueue create()
+			{
+				return new Wheel();
+			}
+		};
+		
+		abstract TickQueue create();
+	}
+	
+	/**
+	 * The pending tasks of a {@linkplain Scheduler}, as created by its {@linkplain Engine}.
+	 */
+	abstract static class TickQueue
+	{
+		abstract void add(Entry e);
+		
+		/**
+		 * @return A task with {@linkplain Entry#at} less than the given tick, or null if there are none.
+		 */
+		abstract Entry poll(int tick);
+		
+		/**
+		 * @return The task with the lowest {@linkplain Entry#at}, or null if there are none.
+		 */
+		abstract Entry pollAny();
+		
+		abstract boolean removeIf(Predicate<Entry> filter);
+		
+		abstract int size();
+		
+		/**
+		 * Performs the given action for every task, in no particular order.
+		 */
+		abstract void forEach(Consumer<Entry> action);
+		
+		/**
+		 * @return A tick no later than the first on which a task comes due, that is, the tick after its {@linkplain Entry#at},
+		 * or {@linkplain Long#MAX_VALUE} if there are none.
+		 */
+		abstract long nextDue();
+	}
+	
+	private static class Heap extends TickQueue
+	{
+		private static final Comparator<Entry> ORDER = (a, b) -> Integer.compare(a.at, b.at);
+		
+		private final PriorityQueue<Entry> heap = new PriorityQueue<>(ORDER);
+		
+		@Override
+		void add(Entry e)
+		{
+			heap.add(e);
+		}
+		
+		@Override
+		Entry poll(int tick)
+		{
+			Entry next = heap.peek();
+			return next != null && next.at < tick ? heap.poll() : null;
+		}
+		
+		@Override
+		Entry pollAny()
+		{
+			return heap.poll();
+		}
+		
+		@Override
+		boolean removeIf(Predicate<Entry> filter)
+		{
+			return heap.removeIf(filter);
+		}
+		
+		@Override
+		int size()
+		{
+			return heap.size();
+		}
+		
+		@Override
+		void forEach(Consumer<Entry> action)
+		{
+			heap.forEach(action);
+		}
+		
+		@Override
+		long nextDue()
+		{
+			Entry next = heap.peek();
+			return next == null ? Long.MAX_VALUE : next.at + 1L;
+		}
+	}
+	
+	/**
+	 * A hierarchical timing wheel, as described by {@linkplain Engine#WHEEL}.
+	 * <p>A task is due on the tick after its {@linkplain Entry#at}. It is kept at the level of the highest bit in which its due tick differs
+	 * from the current tick, as counted in groups of six bits, in the slot given by the due tick's bits at that level.
+	 * Every task in a slot of a level above the first therefore comes due within the span of that slot, and once the current tick reaches the start
+	 * of the span, the slot is cascaded by placing its tasks again.
+	 */
+	private static class Wheel extends TickQueue
+	{
+		private static final int BITS = 6, SLOTS = 1 << BITS, MASK = SLOTS - 1, LEVELS = 6;
+		private static final Entry[] EMPTY = new Entry[0];
+		
+		private final Entry[][] slots = new Entry[LEVELS * SLOTS][];
+		private final int[] sizes = new int[LEVELS * SLOTS];
+		/** For each level, which of its slots hold any tasks, one bit per slot. */
+		private final long[] occupied = new long[LEVELS];
+		/** The tasks due on or before the current tick, in the order they came due. */
+		private final ArrayDeque<Entry> ready = new ArrayDeque<>();
+		/** The tasks taken from the slots by {@linkplain Wheel#pollAny()}, which must be run in order without advancing the wheel. */
+		private final PriorityQueue<Entry> spill = new PriorityQueue<>(Heap.ORDER);
+		/** The last tick to which the wheel has advanced. */
+		private long now = 0;
+		private int slotted = 0;
+		
+		private Wheel()
+		{
+			Arrays.fill(slots, EMPTY);
+		}
+		
+		@Override
+		void add(Entry e)
+		{
+			long due = e.at + 1L;
+			if (due <= now)
+				ready.add(e);
+			else
+				place(e, due);
+		}
+		
+		private void place(Entry e, long due)
+		{
+			int level = (63 - Long.numberOfLeadingZeros(due ^ now)) / BITS, digit = (int) (due >>> (level * BITS) & MASK);
+			int index = level * SLOTS + digit;
+			occupied[level] |= 1L << digit;
+			Entry[] slot = slots[index];
+			int size = sizes[index];
+			if (size == slot.length)
+				slots[index] = slot = Arrays.copyOf(slot, Math.max(4, size * 2));
+			slot[size] = e;
+			sizes[index] = size + 1;
+			slotted++;
+		}
+		
+		@Override
+		Entry poll(int tick)
+		{
+			while (true)
+			{
+				Entry next = ready.poll();
+				if (next != null)
+					return next;
+				if (!spill.isEmpty() && spill.peek().at < tick)
+					return spill.poll();
+				if (now >= tick)
+					return null;
+				long slot = nextSlotted();
+				if (slot > tick)
+				{
+					now = tick;
+					return null;
+				}
+				now = slot - 1;
+				advance();
+			}
+		}
+		
+		/**
+		 * @return The first tick on which a slot will be readied or cascaded, or {@linkplain Long#MAX_VALUE} if the slots are empty.
+		 * The wheel may jump directly to the tick before, as every slot it passes over is empty.
+		 */
+		private long nextSlotted()
+		{
+			long next = Long.MAX_VALUE;
+			for (int level = 0; level < LEVELS; level++)
+			{
+				long later = occupied[level] & -2L << (int) (now >>> (level * BITS) & MASK);
+				if (later == 0)
+					continue;
+				int shift = (level + 1) * BITS;
+				long start = (now >>> shift << shift) | (long) Long.numberOfTrailingZeros(later) << (level * BITS);
+				next = Math.min(next, start);
+			}
+			return next;
+		}
+		
+		@Override
+		long nextDue()
+		{
+			if (!ready.isEmpty())
+				return now;
+			long next = nextSlotted();
+			return spill.isEmpty() ? next : Math.min(next, spill.peek().at + 1L);
+		}
+		
+		/**
+		 * Moves on one tick, cascading the slots whose spans begin there, from the top level down, and then readying the tasks of the current slot.
+		 */
+		private void advance()
+		{
+			now++;
+			for (int level = LEVELS - 1; level > 0; level--)
+				if ((now & (1L << (level * BITS)) - 1) == 0)
+					cascade(level, (int) (now >>> (level * BITS) & MASK));
+			int index = (int) (now & MASK);
+			occupied[0] &= ~(1L << index);
+			Entry[] slot = slots[index];
+			int size = sizes[index];
+			for (int i = 0; i < size; i++)
+			{
+				ready.add(slot[i]);
+				slot[i] = null;
+			}
+			sizes[index] = 0;
+			slotted -= size;
+		}
+		
+		private void cascade(int level, int digit)
+		{
+			int index = level * SLOTS + digit;
+			int size = sizes[index];
+			if (size == 0)
+				return;
+			occupied[level] &= ~(1L << digit);
+			Entry[] slot = slots[index];
+			sizes[index] = 0;
+			slotted -= size;
+			for (int i = 0; i < size; i++)
+			{
+				Entry e = slot[i];
+				slot[i] = null;
+				long due = e.at + 1L;
+				if (due <= now)
+					ready.add(e);
+				else
+					place(e, due);
+			}
+		}
+		
+		@Override
+		Entry pollAny()
+		{
+			Entry next = ready.poll();
+			if (next != null)
+				return next;
+			if (slotted != 0)
+			{
+				for (int index = 0; index < slots.length; index++)
+				{
+					Entry[] slot = slots[index];
+					for (int i = 0; i < sizes[index]; i++)
+					{
+						spill.add(slot[i]);
+						slot[i] = null;
+					}
+					sizes[index] = 0;
+				}
+				Arrays.fill(occupied, 0);
+				slotted = 0;
+			}
+			return spill.poll();
+		}
+		
+		@Override
+		boolean removeIf(Predicate<Entry> filter)
+		{
+			boolean any = ready.removeIf(filter);
+			any |= spill.removeIf(filter);
+			if (slotted == 0)
+				return any;
+			for (int index = 0; index < slots.length; index++)
+			{
+				Entry[] slot = slots[index];
+				int size = sizes[index], kept = 0;
+				for (int i = 0; i < size; i++)
+				{
+					if (!filter.test(slot[i]))
+						slot[kept++] = slot[i];
+				}
+				if (kept == size)
+					continue;
+				Arrays.fill(slot, kept, size, null);
+				sizes[index] = kept;
+				if (kept == 0)
+					occupied[index / SLOTS] &= ~(1L << (index % SLOTS));
+				slotted -= size - kept;
+				any = true;
+			}
+			return any;
+		}
+		
+		@Override
+		int size()
+		{
+			return ready.size() + spill.size() + slotted;
+		}
+		
+		@Override
+		void forEach(Consumer<Entry> action)
+		{
+			ready.forEach(action);
+			spill.forEach(action);
+			if (slotted == 0)
+				return;
+			for (int index = 0; index < slots.length; index++)
+			{
+				Entry[] slot = slots[index];
+				for (int i = 0; i < sizes[index]; i++)
+					action.accept(slot[i]);
+			}
 		}
 	}
 	
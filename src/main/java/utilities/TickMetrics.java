@@ -0,0 +1,352 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import utilities.Scheduler.TickTask;
+
+/**
+ * 
+ * Records the ticks of a {@linkplain Scheduler}, as set by {@linkplain Scheduler#metrics(TickMetrics)}: the wall time and number of tasks of each tick,
+ * how many ticks overran a budget, and the slowest tasks, by key.
+ * <p>Recording may be turned on and off at any time by {@linkplain TickMetrics#enable(boolean)}. While off, a tick costs one volatile read more than without metrics.
+ * While on, each tick is timed by two reads of {@linkplain System#nanoTime()}, as is one in every {@linkplain TickMetrics#sampleEvery(int)} tasks
+ * (by default {@linkplain TickMetrics#SAMPLE_EVERY}), so that the cost of timing short tasks is kept low. Ticks skipped over by {@linkplain Scheduler#advanceTo(int, boolean)} are not recorded.
+ * <p>Ticks are recorded by the ticking thread, and the tasks of parallel shards by their own threads, while a {@linkplain TickMetrics#snapshot()}
+ * may be taken from any thread.
+ * 
+ * @author SerpentDagger
+ *
+ */
+public class TickMetrics
+{
+	/** The default of {@linkplain TickMetrics#sampleEvery(int)}. */
+	public static final int SAMPLE_EVERY = 16;
+	
+	private final long budget;
+	private final int slowest;
+	private volatile boolean enabled = true;
+	private volatile int every = SAMPLE_EVERY;
+	/** Counts down the tasks to the next sampled, separately on each thread which runs tasks, so that shards running in parallel do not share it. */
+	private final ThreadLocal<int[]> countdown = ThreadLocal.withInitial(() -> new int[] { 1 });
+	private volatile Profiler profiler;
+	/** The {@linkplain Profiler} marked by the current tick, if any. */
+	private Profiler marking;
+	
+	private final LongAdder ticks = new LongAdder(), tasks = new LongAdder(), overruns = new LongAdder();
+	private final LatencyHistogram tickTime = new LatencyHistogram(), taskTime = new LatencyHistogram();
+	private volatile long lastNanos = 0;
+	private volatile int lastTick = 0, lastTasks = 0, lastOverrun = -1;
+	/** The slowest sampled run of each of up to {@linkplain TickMetrics#slowest} keys, guarded by itself. */
+	private final Slow[] top;
+	private int topSize = 0;
+	/** The time a task must exceed to enter the full {@linkplain TickMetrics#top}, or 0 while it has room. */
+	private volatile long threshold = 0;
+	
+	/**
+	 * Create a new {@linkplain TickMetrics} without a budget, which keeps the ten slowest tasks.
+	 */
+	public TickMetrics()
+	{
+		this(Long.MAX_VALUE, TimeUnit.NANOSECONDS, 10);
+	}
+	
+	/**
+	 * @param budget The time a tick may take before it is counted as an overrun.
+	 * @param unit
+	 * @param slowest The number of keys for which to keep the slowest task.
+	 */
+	public TickMetrics(long budget, TimeUnit unit, int slowest)
+	{
+		if (budget <= 0 || slowest < 0)
+			throw new IllegalArgumentException("TickMetrics must have positive budget and non-negative slowest count.");
+		this.budget = unit.toNanos(budget);
+		this.slowest = slowest;
+		top = new Slow[slowest];
+	}
+	
+	/**
+	 * Turns recording on or off, from the next tick. Recording is on from creation.
+	 * @param enabled
+	 * @return this
+	 */
+	public TickMetrics enable(boolean enabled)
+	{
+		this.enabled = enabled;
+		return this;
+	}
+	
+	public boolean enabled()
+	{
+		return enabled;
+	}
+	
+	/**
+	 * Times only one in every given number of tasks, rather than each of them. Counts of tasks run, and the times of whole ticks, are unaffected.
+	 * <p>Defaults to {@linkplain TickMetrics#SAMPLE_EVERY}. Each thread which runs tasks counts them separately, so one in every given number
+	 * of the tasks run by each thread is timed.
+	 * @param every 1 to time every task.
+	 * @return this
+	 */
+	public TickMetrics sampleEvery(int every)
+	{
+		if (every < 1)
+			throw new IllegalArgumentException("TickMetrics must sample at least every 1 task.");
+		this.every = every;
+		return this;
+	}
+	
+	/**
+	 * Pushes a mark to the given {@linkplain Profiler} at the start of every recorded tick, and pops it at the end.
+	 * <p>If the {@linkplain Profiler} has no open mark when a tick starts, it is first {@linkplain Profiler#reset()}, so that each tick's mark becomes its last,
+	 * and is smoothed over as many ticks as it keeps. Otherwise, the tick's mark is nested within the open one.
+	 * <p>The {@linkplain Profiler} is only used by the ticking thread.
+	 * @param profiler The {@linkplain Profiler} to mark, or null to mark none.
+	 * @return this
+	 */
+	public TickMetrics profile(Profiler profiler)
+	{
+		this.profiler = profiler;
+		return this;
+	}
+	
+	/**
+	 * @return The time a tick may take before it is counted as an overrun, in nanoseconds.
+	 */
+	public long budget()
+	{
+		return budget;
+	}
+	
+	/** @return The times of whole ticks. */
+	public LatencyHistogram tickTime() { return tickTime; }
+	/** @return The times of sampled tasks. */
+	public LatencyHistogram taskTime() { return taskTime; }
+	
+	/**
+	 * Called by the ticking thread as a recorded tick starts.
+	 * @return The time at which it started.
+	 */
+	long begin()
+	{
+		Profiler p = marking = profiler;
+		if (p != null)
+		{
+			if (!p.isOpen() && p.getDepth() > 0)
+				p.reset();
+			p.push("Scheduler tick");
+		}
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Called by the ticking thread as a recorded tick ends.
+	 */
+	void end(int tick, int ran, long start)
+	{
+		long nanos = System.nanoTime() - start;
+		if (marking != null)
+		{
+			marking.pop();
+			marking = null;
+		}
+		ticks.increment();
+		tasks.add(ran);
+		tickTime.record(nanos);
+		if (nanos > budget)
+		{
+			overruns.increment();
+			lastOverrun = tick;
+		}
+		lastNanos = nanos;
+		lastTasks = ran;
+		lastTick = tick;
+	}
+	
+	/**
+	 * @return Whether to time the next task.
+	 */
+	boolean sample()
+	{
+		int[] count = countdown.get();
+		if (--count[0] > 0)
+			return false;
+		count[0] = every;
+		return true;
+	}
+	
+	/**
+	 * Records the time of a sampled task, keeping it among the slowest if it is slower than the others kept, or than the last kept of the same key.
+	 * Tasks without a key are kept by the class of their runnable.
+	 */
+	void timed(TickTask task, int tick, long nanos)
+	{
+		taskTime.record(nanos);
+		if (slowest == 0 || nanos <= threshold)
+			return;
+		Object key = task.key != null ? task.key : task.task.getClass();
+		synchronized (top)
+		{
+			int at = -1, min = -1;
+			for (int i = 0; i < topSize; i++)
+			{
+				if (top[i].key.equals(key))
+					at = i;
+				if (min < 0 || top[i].nanos < top[min].nanos)
+					min = i;
+			}
+			if (at < 0)
+				at = topSize < slowest ? topSize++ : min;
+			else if (top[at].nanos >= nanos)
+				return;
+			top[at] = new Slow(key, nanos, tick);
+			if (topSize < slowest)
+				return;
+			long least = Long.MAX_VALUE;
+			for (int i = 0; i < topSize; i++)
+				least = Math.min(least, top[i].nanos);
+			threshold = least;
+		}
+	}
+	
+	/**
+	 * @return A copy of what has been recorded so far.
+	 */
+	public Snapshot snapshot()
+	{
+		Slow[] slow;
+		synchronized (top)
+		{
+			slow = Arrays.copyOf(top, topSize);
+		}
+		Arrays.sort(slow, (a, b) -> Long.compare(b.nanos, a.nanos));
+		return new Snapshot(this, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(slow))));
+	}
+	
+	/**
+	 * Clears everything recorded. Ticks recorded concurrently with this call may or may not be cleared.
+	 */
+	public void reset()
+	{
+		ticks.reset();
+		tasks.reset();
+		overruns.reset();
+		tickTime.reset();
+		taskTime.reset();
+		lastNanos = 0;
+		lastTick = lastTasks = 0;
+		lastOverrun = -1;
+		synchronized (top)
+		{
+			Arrays.fill(top, null);
+			topSize = 0;
+			threshold = 0;
+		}
+	}
+	
+	@Override
+	public String toString()
+	{
+		return snapshot().toString();
+	}
+	
+	/**
+	 * 
+	 * The slowest sampled run of the tasks of one key.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Slow
+	{
+		/** The key of the task, or the class of its runnable if it had none. */
+		public final Object key;
+		public final long nanos;
+		/** The tick on which it ran. */
+		public final int tick;
+		
+		private Slow(Object key, long nanos, int tick)
+		{
+			this.key = key;
+			this.nanos = nanos;
+			this.tick = tick;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return key + ": " + nanos + "ns on tick " + tick;
+		}
+	}
+	
+	/**
+	 * 
+	 * What a {@linkplain TickMetrics} had recorded at the time of its {@linkplain TickMetrics#snapshot()}.
+	 * 
+	 * @author SerpentDagger
+	 *
+	 */
+	public static class Snapshot
+	{
+		public final long ticks, tasks, overruns, budget;
+		/** The tick of the last overrun, or -1 if there has been none. */
+		public final int lastOverrun;
+		/** The last tick recorded, with its time and number of tasks. */
+		public final int lastTick, lastTasks;
+		public final long lastNanos;
+		public final long meanTickNanos, p99TickNanos, maxTickNanos;
+		public final long sampledTasks, meanTaskNanos, p99TaskNanos;
+		/** The slowest task of each of the slowest keys, slowest first. */
+		public final List<Slow> slowest;
+		
+		private Snapshot(TickMetrics metrics, List<Slow> slowest)
+		{
+			ticks = metrics.ticks.sum();
+			tasks = metrics.tasks.sum();
+			overruns = metrics.overruns.sum();
+			budget = metrics.budget;
+			lastOverrun = metrics.lastOverrun;
+			lastTick = metrics.lastTick;
+			lastTasks = metrics.lastTasks;
+			lastNanos = metrics.lastNanos;
+			meanTickNanos = metrics.tickTime.mean();
+			p99TickNanos = metrics.tickTime.percentile(99);
+			maxTickNanos = metrics.tickTime.max();
+			sampledTasks = metrics.taskTime.count();
+			meanTaskNanos = metrics.taskTime.mean();
+			p99TaskNanos = metrics.taskTime.percentile(99);
+			this.slowest = slowest;
+		}
+		
+		@Override
+		public String toString()
+		{
+			String out = ticks + " ticks, " + tasks + " tasks, " + overruns + " overruns" + (budget == Long.MAX_VALUE ? "" : " of " + budget + "ns")
+					+ "\nTick: mean " + meanTickNanos + "ns, p99 " + p99TickNanos + "ns, max " + maxTickNanos + "ns; last " + lastTick + " took " + lastNanos + "ns for " + lastTasks + " tasks"
+					+ "\nTask: " + sampledTasks + " sampled, mean " + meanTaskNanos + "ns, p99 " + p99TaskNanos + "ns";
+			for (Slow s : slowest)
+				out += "\n  " + s;
+			return out;
+		}
+	}
+}
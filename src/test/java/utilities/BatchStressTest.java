@@ -0,0 +1,129 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Batch;
+
+/**
+ * Launches thousands of overlapping {@linkplain Batch}es on one pool, while other threads cancel them, and checks that every batch settles exactly once,
+ * with its counters adding up, and that no interrupt sent to a cancelled or timed out task leaks into another.
+ */
+public class BatchStressTest
+{
+	private static final int BATCHES = 4000;
+	
+	@Test
+	public void overlappingBatchesSettleOnce() throws Exception
+	{
+		run(new Parallelizer(8), false);
+	}
+	
+	@Test
+	public void overlappingBatchesWithDeadlinesSettleOnce() throws Exception
+	{
+		run(new Parallelizer(8).deadline(2, TimeUnit.MILLISECONDS), true);
+	}
+	
+	private static void run(Parallelizer par, boolean timed) throws Exception
+	{
+		ExecutorService cancellers = Executors.newFixedThreadPool(4);
+		ConcurrentLinkedQueue<int[]> interrupted = new ConcurrentLinkedQueue<>();
+		AtomicInteger doneTwice = new AtomicInteger(), doneEarly = new AtomicInteger();
+		List<Batch<Integer>> batches = new ArrayList<>(BATCHES);
+		List<AtomicInteger> calls = new ArrayList<>(BATCHES);
+		try
+		{
+			for (int b = 0; b < BATCHES; b++)
+			{
+				ThreadLocalRandom r = ThreadLocalRandom.current();
+				int size = 1 + r.nextInt(16);
+				for (int i = 0; i < size; i++)
+				{
+					int kind = r.nextInt(10), index = b, value = i;
+					par.task(() ->
+					{
+						if (Thread.currentThread().isInterrupted())
+							interrupted.add(new int[] { index, value });
+						if (kind == 0)
+							throw new IllegalStateException("Task " + value + " failed.");
+						if (kind < 3)
+							LockSupport.parkNanos(timed ? 4_000_000 : 200_000);
+					});
+				}
+				Batch<Integer> batch = par.batchRun(size);
+				AtomicInteger called = new AtomicInteger();
+				batch.whenDone(() ->
+				{
+					if (called.incrementAndGet() != 1)
+						doneTwice.incrementAndGet();
+					if (batch.remaining() != 0)
+						doneEarly.incrementAndGet();
+				});
+				batches.add(batch);
+				calls.add(called);
+				if (r.nextInt(4) == 0)
+				{
+					boolean interrupt = r.nextBoolean();
+					cancellers.execute(() -> batch.cancel(interrupt));
+				}
+			}
+			for (int b = 0; b < BATCHES; b++)
+			{
+				Batch<Integer> batch = batches.get(b);
+				assertTrue(batch.await(30, TimeUnit.SECONDS), "Batch " + b + " never finished.");
+				assertEquals(0, batch.remaining(), "Batch " + b + " finished with tasks remaining.");
+				assertEquals(batch.size(), batch.succeeded() + batch.failed() + batch.cancelled(), "Batch " + b + " miscounted its tasks.");
+				for (int i = 0; i < batch.size(); i++)
+					assertTrue(batch.future(i).isDone(), "Batch " + b + " left task " + i + " incomplete.");
+			}
+			cancellers.shutdown();
+			assertTrue(cancellers.awaitTermination(30, TimeUnit.SECONDS));
+			for (int b = 0; b < BATCHES; b++)
+				assertEquals(1, calls.get(b).get(), "Batch " + b + " ran its callback the wrong number of times.");
+			assertEquals(0, doneTwice.get());
+			assertEquals(0, doneEarly.get());
+			for (int[] at : interrupted)
+			{
+				CompletableFuture<Integer> future = batches.get(at[0]).future(at[1]);
+				boolean own = future.isCancelled() || future.handle((v, t) -> t instanceof TimeoutException).join();
+				assertTrue(own, "An interrupt leaked into task " + at[1] + " of batch " + at[0] + ".");
+			}
+		}
+		finally
+		{
+			cancellers.shutdownNow();
+			par.close();
+		}
+	}
+}
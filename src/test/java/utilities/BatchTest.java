@@ -0,0 +1,223 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Batch;
+
+/**
+ * Checks the completion helpers of a {@linkplain Batch}, and the deadlines, speculation and latency recording which a {@linkplain Parallelizer} gives its batches.
+ */
+public class BatchTest
+{
+	private static final long STALL = TimeUnit.SECONDS.toNanos(10);
+	
+	@Test
+	public void quorumTakesFirstSuccessesAndCancelsTheRest() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			AtomicInteger interrupted = new AtomicInteger();
+			for (int i = 0; i < 3; i++)
+			{
+				int value = i;
+				par.call(() -> value);
+			}
+			for (int i = 0; i < 3; i++)
+				par.call(() ->
+				{
+					if (stall())
+						interrupted.incrementAndGet();
+					return -1;
+				});
+			Batch<Integer> batch = par.batchRunAll();
+			List<Integer> results = new ArrayList<>(batch.quorum(3).get(5, TimeUnit.SECONDS));
+			Collections.sort(results);
+			assertEquals(List.of(0, 1, 2), results);
+			assertTrue(batch.await(5, TimeUnit.SECONDS));
+			assertEquals(3, batch.succeeded());
+			assertEquals(3, batch.cancelled());
+			assertEquals(0, batch.failed());
+			long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (interrupted.get() != batch.started() - 3 && System.nanoTime() < until)
+				Thread.sleep(1);
+			assertEquals(batch.started() - 3, interrupted.get(), "Every started task left over should have been interrupted.");
+		}
+	}
+	
+	@Test
+	public void quorumFailsOnceItCannotBeReached()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			par.call(() -> 1);
+			par.task(() -> { throw new IllegalStateException("first"); });
+			par.task(() -> { throw new IllegalStateException("second"); });
+			Batch<Integer> batch = par.batchRunAll();
+			CompletionException e = assertThrows(CompletionException.class, batch.quorum(2)::join);
+			assertTrue(e.getCause() instanceof IllegalStateException);
+			assertEquals(2, batch.await().failed());
+			assertEquals(1, e.getSuppressed().length);
+		}
+	}
+	
+	@Test
+	public void firstSuccessSkipsFailures()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			par.task(() -> { throw new IllegalStateException(); });
+			par.call(() -> "found");
+			par.task(() -> { throw new IllegalStateException(); });
+			Batch<String> batch = par.batchRunAll();
+			assertEquals("found", batch.firstSuccess().join());
+			
+			par.task(() -> { throw new IllegalStateException(); });
+			par.task(() -> { throw new IllegalStateException(); });
+			CompletableFuture<Object> none = par.batchRunAll().firstSuccess();
+			assertThrows(CompletionException.class, none::join);
+		}
+	}
+	
+	@Test
+	public void deadlineAbandonsSlowTasks() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(2).deadline(20, TimeUnit.MILLISECONDS))
+		{
+			AtomicBoolean interrupted = new AtomicBoolean();
+			par.call(() -> "quick");
+			par.call(() ->
+			{
+				interrupted.set(stall());
+				return "slow";
+			});
+			Batch<String> batch = par.batchRunAll();
+			assertTrue(batch.await(5, TimeUnit.SECONDS));
+			assertEquals("quick", batch.future(0).join());
+			assertThrows(CompletionException.class, batch.future(1)::join);
+			assertEquals(1, batch.succeeded());
+			assertEquals(1, batch.failed());
+			assertEquals(1, batch.timedOut());
+			assertTrue(batch.failures().get(0) instanceof TimeoutException);
+			assertNull(batch.latencies(), "A batch with only a deadline should not record latencies.");
+			
+			long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!interrupted.get() && System.nanoTime() < until)
+				Thread.sleep(1);
+			assertTrue(interrupted.get(), "The abandoned task should have been interrupted.");
+		}
+	}
+	
+	@Test
+	public void speculationRerunsAStraggler() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(4).speculate(50))
+		{
+			AtomicInteger calls = new AtomicInteger();
+			for (int i = 0; i < 3; i++)
+				par.call(() -> "quick");
+			par.call(() ->
+			{
+				if (calls.getAndIncrement() == 0)
+				{
+					stall();
+					return "straggler";
+				}
+				return "copy";
+			});
+			Batch<String> batch = par.batchRunAll();
+			assertTrue(batch.await(5, TimeUnit.SECONDS));
+			assertEquals("copy", batch.future(3).join());
+			assertEquals(1, batch.speculated());
+			assertEquals(4, batch.succeeded());
+			assertEquals(0, batch.failed());
+			assertNotNull(batch.latencies());
+		}
+	}
+	
+	@Test
+	public void latenciesAreRecordedOnlyWhenAskedFor()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			for (int i = 0; i < 10; i++)
+				par.task(() -> {});
+			assertNull(par.batchRunAll().await().latencies());
+			
+			par.recordLatency(true);
+			for (int i = 0; i < 10; i++)
+				par.task(() -> {});
+			LatencyHistogram latencies = par.batchRunAll().await().latencies();
+			assertNotNull(latencies);
+			assertEquals(10, latencies.count());
+		}
+	}
+	
+	@Test
+	public void timedAwaitReturnsEarly() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			CountDownLatch release = new CountDownLatch(1);
+			par.task(() ->
+			{
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{}
+			});
+			Batch<?> batch = par.batchRunAll();
+			assertFalse(batch.await(10, TimeUnit.MILLISECONDS));
+			release.countDown();
+			assertTrue(batch.await(5, TimeUnit.SECONDS));
+		}
+	}
+	
+	/**
+	 * Parks the calling thread until it is interrupted, or for ten seconds.
+	 * @return Whether it was interrupted.
+	 */
+	private static boolean stall()
+	{
+		long until = System.nanoTime() + STALL;
+		while (!Thread.currentThread().isInterrupted() && System.nanoTime() < until)
+			LockSupport.parkNanos(until - System.nanoTime());
+		return Thread.interrupted();
+	}
+}
@@ -0,0 +1,241 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.ConcurrentScheduler.Driver;
+import utilities.Scheduler.Engine;
+import utilities.Scheduler.TickTask;
+
+/**
+ * Schedules and removes tasks from several producer threads at once, while a {@linkplain Driver} ticks the scheduler, and checks that every task runs
+ * exactly once, on the tick it was scheduled for, that removed tasks do not run, and that periodic tasks keep their period.
+ * <p>Producers cannot know the tick on which their calls are drained, so each reads the last tick finished after making its call. A call made
+ * at least two ticks before a task comes due is certain to have been drained in time, and only such tasks are held to their exact tick.
+ */
+public class ConcurrentSchedulerTest
+{
+	private static final int PRODUCERS = 4, CALLS = 3000;
+	
+	@Test
+	public void producersScheduleAgainstDriver() throws Exception
+	{
+		for (Engine engine : Engine.values())
+			run(engine);
+	}
+	
+	/**
+	 * A driver held up by a slow tick runs the ticks it missed back to back, up to its limit, and skips only the rest.
+	 */
+	@Test
+	public void driverCatchesUpToItsLimit()
+	{
+		long period = 2, stall = 100;
+		int maxCatchUp = 5;
+		ConcurrentScheduler s = new ConcurrentScheduler();
+		List<Long> at = new ArrayList<>();
+		s.scheduleEndless("time", () -> at.add(System.nanoTime()));
+		s.scheduleTask(new TickTask(5, () -> LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(stall))));
+		Driver driver = s.drive(period, TimeUnit.MILLISECONDS, maxCatchUp);
+		try
+		{
+			while (driver.ticks() < 40 && driver.isRunning())
+				LockSupport.parkNanos(1_000_000);
+		}
+		finally
+		{
+			driver.close();
+		}
+		assertNull(driver.failure());
+		int stalled = 0;
+		long widest = 0;
+		for (int i = 1; i < at.size(); i++)
+		{
+			if (at.get(i) - at.get(i - 1) > widest)
+			{
+				widest = at.get(i) - at.get(i - 1);
+				stalled = i;
+			}
+		}
+		int quick = 0;
+		while (stalled + quick + 1 < at.size() && at.get(stalled + quick + 1) - at.get(stalled + quick) < TimeUnit.MILLISECONDS.toNanos(period) / 2)
+			quick++;
+		assertTrue(quick >= maxCatchUp, "Caught up only " + quick + " ticks after a stall.");
+		long behind = stall / period;
+		assertTrue(driver.skipped() >= behind - maxCatchUp - 10 && driver.skipped() <= behind - maxCatchUp + 10, "Skipped " + driver.skipped() + " ticks.");
+	}
+	
+	private static void run(Engine engine) throws Exception
+	{
+		ConcurrentScheduler s = new ConcurrentScheduler(engine);
+		AtomicInteger now = new AtomicInteger();
+		s.scheduleEndless("now", () -> now.set(s.getTick()));
+		ConcurrentLinkedQueue<Once> onces = new ConcurrentLinkedQueue<>();
+		ConcurrentLinkedQueue<Repeat> repeats = new ConcurrentLinkedQueue<>();
+		AtomicInteger latest = new AtomicInteger();
+		List<Thread> producers = new ArrayList<>();
+		int until;
+		Driver driver = s.drive(200, TimeUnit.MICROSECONDS);
+		try
+		{
+			for (int p = 0; p < PRODUCERS; p++)
+			{
+				int producer = p;
+				Thread t = new Thread(() ->
+				{
+					ThreadLocalRandom r = ThreadLocalRandom.current();
+					for (int i = 0; i < CALLS; i++)
+					{
+						String key = producer + ":" + i;
+						if (r.nextInt(5) == 0)
+						{
+							Repeat rep = new Repeat(1 + r.nextInt(5), 1 + r.nextInt(5));
+							s.schedulePeriodic(key, () -> rep.period, rep.count, () -> rep.ran(s.getTick()));
+							if (r.nextInt(4) == 0)
+							{
+								LockSupport.parkNanos(r.nextInt(2_000_000));
+								s.removeTask(key);
+								rep.removed = true;
+							}
+							repeats.add(rep);
+							continue;
+						}
+						Once once = new Once(now.get() + 20 + r.nextInt(40));
+						latest.accumulateAndGet(once.due, Math::max);
+						s.scheduleTask(new TickTask(once.due, key, () -> once.ran(s.getTick())));
+						once.onTime = once.due >= now.get() + 2;
+						if (r.nextInt(4) == 0)
+						{
+							s.removeTask(key);
+							once.removed = true;
+							once.removedOnTime = once.due >= now.get() + 2;
+						}
+						onces.add(once);
+						if (r.nextInt(16) == 0)
+							LockSupport.parkNanos(r.nextInt(500_000));
+					}
+				}, "Producer-" + p);
+				producers.add(t);
+				t.start();
+			}
+			for (Thread t : producers)
+				t.join();
+			until = Math.max(latest.get(), now.get()) + 40;
+			long giveUp = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			while (now.get() < until && driver.isRunning() && System.nanoTime() < giveUp)
+				LockSupport.parkNanos(1_000_000);
+		}
+		finally
+		{
+			driver.close();
+		}
+		assertNull(driver.failure(), "The driver failed.");
+		assertTrue(now.get() >= until, engine + " never reached tick " + until + ".");
+		
+		int strict = 0;
+		for (Once once : onces)
+		{
+			if (once.removed && once.removedOnTime)
+			{
+				assertEquals(0, once.runs.get(), engine + " ran a task removed before it came due.");
+				continue;
+			}
+			if (!once.removed)
+				assertEquals(1, once.runs.get(), engine + " ran a task due on tick " + once.due + " the wrong number of times.");
+			else
+				assertTrue(once.runs.get() <= 1, engine + " ran a removed task more than once.");
+			if (once.runs.get() == 1 && once.onTime)
+			{
+				strict++;
+				assertEquals(once.due + 1, once.ranAt, engine + " ran a task due on tick " + once.due + " on the wrong tick.");
+			}
+			else if (once.runs.get() == 1)
+				assertTrue(once.ranAt > once.due, engine + " ran a task due on tick " + once.due + " early, on tick " + once.ranAt + ".");
+		}
+		assertTrue(strict > onces.size() / 2, engine + " had too few tasks scheduled in time to check.");
+		for (Repeat rep : repeats)
+		{
+			int runs = rep.runs;
+			if (rep.removed)
+				assertTrue(runs <= rep.count, engine + " ran a removed periodic task too many times.");
+			else
+				assertEquals(rep.count, runs, engine + " ran a periodic task the wrong number of times.");
+			for (int i = 1; i < runs; i++)
+				assertEquals(rep.period + 1, rep.ticks[i] - rep.ticks[i - 1], engine + " ran a periodic task off its period.");
+		}
+	}
+	
+	/**
+	 * A task to run once. Written by its producer, and read once ticking has stopped.
+	 */
+	private static class Once
+	{
+		private final int due;
+		private final AtomicInteger runs = new AtomicInteger();
+		private volatile int ranAt;
+		private volatile boolean onTime, removed, removedOnTime;
+		
+		private Once(int due)
+		{
+			this.due = due;
+		}
+		
+		private void ran(int tick)
+		{
+			ranAt = tick;
+			runs.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * A periodic task, whose runs are recorded by the ticking thread.
+	 */
+	private static class Repeat
+	{
+		private final int period, count;
+		private final int[] ticks;
+		private volatile int runs;
+		private volatile boolean removed;
+		
+		private Repeat(int period, int count)
+		{
+			this.period = period;
+			this.count = count;
+			ticks = new int[count + 1];
+		}
+		
+		private void ran(int tick)
+		{
+			if (runs < ticks.length)
+				ticks[runs] = tick;
+			runs++;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Backend;
+import utilities.Parallelizer.Batch;
+
+/**
+ * Runs the same batches unfused, fused into groups of a fixed size and fused by time, and checks that each task is reported the same way:
+ * its result or failure through its own future, the counters of the {@linkplain Batch}, the counts of the {@linkplain ParallelMetrics}, and cancellation.
+ */
+public class FusionTest
+{
+	private static final int TASKS = 1000;
+	private static final List<UnaryOperator<Parallelizer>> FUSIONS = List.of((par) -> par.fuse(1), (par) -> par.fuse(7), (par) -> par.fuseFor(50, TimeUnit.MICROSECONDS));
+	
+	@Test
+	public void fusedBatchesReportAsUnfused()
+	{
+		for (Backend backend : Backend.values())
+		{
+			List<String> expected = null;
+			for (int f = 0; f < FUSIONS.size(); f++)
+			{
+				ParallelMetrics.Striped metrics = new ParallelMetrics.Striped();
+				try (Parallelizer par = FUSIONS.get(f).apply(new Parallelizer(3, backend).metrics(metrics)))
+				{
+					// Repeated, so that fuseFor has measured some groups before the last run.
+					List<String> report = null;
+					for (int run = 0; run < 3; run++)
+						report = report(run(par), metrics);
+					if (expected == null)
+						expected = report;
+					else
+						assertEquals(expected, report, backend + " reported fused batches differently, under fusion " + f + ".");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Tasks of a fused group which have not started when the batch is cancelled are skipped, and counted as dropped, just as the unfused jobs of cancelled tasks are.
+	 */
+	@Test
+	public void fusedCancellationMatchesUnfused() throws Exception
+	{
+		// Not on VIRTUAL, whose tasks all start at once, leaving none to skip.
+		for (Backend backend : new Backend[] { Backend.FIXED, Backend.FORK_JOIN, Backend.SHARED, Backend.PINNED })
+		{
+			for (boolean interrupt : new boolean[] { false, true })
+			{
+				for (int f = 0; f < FUSIONS.size(); f++)
+				{
+					String at = backend + " under fusion " + f + (interrupt ? ", interrupting" : "");
+					ParallelMetrics.Striped metrics = new ParallelMetrics.Striped();
+					try (Parallelizer par = FUSIONS.get(f).apply(new Parallelizer(1, backend).metrics(metrics)))
+					{
+						CountDownLatch started = new CountDownLatch(1), release = new CountDownLatch(1);
+						AtomicBoolean first = new AtomicBoolean(true), wasInterrupted = new AtomicBoolean();
+						AtomicInteger runs = new AtomicInteger();
+						for (int i = 0; i < 64; i++)
+							par.call(() ->
+							{
+								runs.incrementAndGet();
+								if (first.compareAndSet(true, false))
+								{
+									started.countDown();
+									try
+									{
+										release.await(10, TimeUnit.SECONDS);
+									}
+									catch (InterruptedException e)
+									{
+										wasInterrupted.set(true);
+									}
+								}
+								return 0;
+							});
+						Batch<Integer> batch = par.batchRunAll();
+						assertTrue(started.await(5, TimeUnit.SECONDS));
+						assertEquals(64, batch.cancel(interrupt), at);
+						assertThrows(CancellationException.class, () -> batch.allDone().join(), at);
+						// The running task is left to be stopped by the interrupt, if one was sent.
+						if (!interrupt)
+							release.countDown();
+						awaitCounted(metrics, 64);
+						
+						assertEquals(1, runs.get(), at + ": a task ran after its batch was cancelled.");
+						assertEquals(interrupt, wasInterrupted.get(), at);
+						assertEquals(1, batch.started(), at);
+						assertEquals(64, batch.cancelled(), at);
+						assertEquals(0, batch.succeeded(), at);
+						assertEquals(0, batch.failed(), at);
+						assertEquals(0, batch.remaining(), at);
+						for (CompletableFuture<Integer> future : batch.futures())
+							assertTrue(future.isCancelled(), at);
+						assertEquals(63, metrics.dropped(), at);
+						assertEquals(1, metrics.completed(), at);
+						
+						// The interrupt sent to the cancelled task must not reach the next batch.
+						AtomicInteger leaked = new AtomicInteger();
+						for (int i = 0; i < 64; i++)
+							par.task(() ->
+							{
+								if (Thread.currentThread().isInterrupted())
+									leaked.incrementAndGet();
+							});
+						assertEquals(0, par.batchRunAll().await().failed(), at);
+						assertEquals(0, leaked.get(), at + ": an interrupt leaked into a later task.");
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs a batch of plain tasks, some of which fail, broken by tasks added per thread, which are never fused.
+	 */
+	private static Batch<Integer> run(Parallelizer par)
+	{
+		for (int i = 0; i < TASKS; i++)
+		{
+			int value = i;
+			if (i == TASKS / 3 || i == TASKS / 2)
+				par.taskEach((int th) -> {});
+			par.call(() ->
+			{
+				if (value % 13 == 0)
+					throw new IllegalStateException("Task " + value + " failed.");
+				return value * value;
+			});
+		}
+		return par.<Integer>batchRunAll().await();
+	}
+	
+	/**
+	 * Lists the outcome of each task, then the counters of the batch and the metrics.
+	 */
+	private static List<String> report(Batch<Integer> batch, ParallelMetrics.Striped metrics)
+	{
+		List<String> report = new ArrayList<>();
+		for (CompletableFuture<Integer> future : batch.futures())
+			report.add(future.handle((out, t) -> t == null ? "= " + out : "! " + (t instanceof CompletionException ? t.getCause() : t).getMessage()).join());
+		report.add("started " + batch.started() + ", succeeded " + batch.succeeded() + ", failed " + batch.failed()
+				+ ", cancelled " + batch.cancelled() + ", remaining " + batch.remaining());
+		List<String> failures = new ArrayList<>();
+		for (Throwable t : batch.failures())
+			failures.add(t.getMessage());
+		Collections.sort(failures);
+		report.add("failures " + failures);
+		awaitCounted(metrics, metrics.submitted());
+		report.add("submitted " + metrics.submitted() + ", completed " + metrics.completed() + ", failed " + metrics.failed()
+				+ ", dropped " + metrics.dropped() + ", batches " + metrics.batches());
+		return report;
+	}
+	
+	/**
+	 * Waits for the metrics to count the given number of tasks, as a task may be reported a moment after its future completes.
+	 */
+	private static void awaitCounted(ParallelMetrics.Striped metrics, long tasks)
+	{
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (metrics.completed() + metrics.failed() + metrics.dropped() < tasks && System.nanoTime() < until)
+			Thread.yield();
+	}
+}
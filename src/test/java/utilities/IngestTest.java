@@ -0,0 +1,247 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Ingest;
+import utilities.Parallelizer.Overflow;
+
+/**
+ * Holds the single worker of an {@linkplain Ingest} while its queue fills, and checks what each {@linkplain Overflow} policy does with the tasks which follow.
+ */
+public class IngestTest
+{
+	@Test
+	public void blockWaitsForRoom() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Ingest ingest = par.ingest(2, Overflow.BLOCK);
+			List<String> ran = ran();
+			Gate gate = new Gate(ingest);
+			ingest.submit(() -> ran.add("a"));
+			ingest.submit(() -> ran.add("b"));
+			Thread producer = new Thread(() -> ingest.submit(() -> ran.add("c")));
+			producer.start();
+			producer.join(100);
+			assertTrue(producer.isAlive(), "A submission to a full queue did not block.");
+			gate.open();
+			producer.join(5000);
+			assertFalse(producer.isAlive());
+			ingest.awaitIdle();
+			assertEquals(List.of("a", "b", "c"), ran);
+			assertEquals(4, ingest.submitted());
+			assertEquals(4, ingest.completed());
+		}
+	}
+	
+	@Test
+	public void callerRunsWhenFull()
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Ingest ingest = par.ingest(2, Overflow.CALLER_RUNS);
+			AtomicReference<Thread> ranOn = new AtomicReference<>();
+			Gate gate = new Gate(ingest);
+			ingest.submit(() -> {});
+			ingest.submit(() -> {});
+			assertTrue(ingest.submit(() -> ranOn.set(Thread.currentThread())));
+			assertSame(Thread.currentThread(), ranOn.get(), "The overflowing task did not run on the submitting thread.");
+			assertEquals(1, ingest.completed());
+			gate.open();
+			ingest.awaitIdle();
+			assertEquals(4, ingest.submitted());
+			assertEquals(4, ingest.completed());
+		}
+	}
+	
+	@Test
+	public void dropOldestMakesRoom()
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Ingest ingest = par.ingest(2, Overflow.DROP_OLDEST);
+			List<String> ran = ran();
+			Gate gate = new Gate(ingest);
+			for (String name : new String[] { "a", "b", "c", "d" })
+				assertTrue(ingest.submit(() -> ran.add(name)));
+			assertEquals(2, ingest.dropped());
+			gate.open();
+			ingest.awaitIdle();
+			assertEquals(List.of("c", "d"), ran);
+			assertEquals(5, ingest.submitted());
+			assertEquals(3, ingest.completed());
+		}
+	}
+	
+	@Test
+	public void rejectRefusesWhenFull()
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Ingest ingest = par.ingest(2, Overflow.REJECT);
+			List<String> ran = ran();
+			Gate gate = new Gate(ingest);
+			assertTrue(ingest.submit(() -> ran.add("a")));
+			assertTrue(ingest.submit(() -> ran.add("b")));
+			assertFalse(ingest.submit(() -> ran.add("c")));
+			assertEquals(1, ingest.rejected());
+			assertEquals(3, ingest.submitted(), "A refused task was counted as submitted.");
+			gate.open();
+			ingest.awaitIdle();
+			assertEquals(List.of("a", "b"), ran);
+		}
+	}
+	
+	@Test
+	public void awaitIdleWaitsForEveryTask()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			Ingest ingest = par.ingest(16, Overflow.BLOCK);
+			AtomicInteger runs = new AtomicInteger(), handled = new AtomicInteger();
+			ingest.onFailure((t) -> handled.incrementAndGet());
+			for (int i = 0; i < 1000; i++)
+			{
+				int index = i;
+				ingest.submit(() ->
+				{
+					runs.incrementAndGet();
+					if (index % 10 == 0)
+						throw new IllegalStateException();
+				});
+			}
+			ingest.awaitIdle();
+			assertEquals(1000, runs.get());
+			assertEquals(0, ingest.depth());
+			assertEquals(0, ingest.active());
+			assertEquals(900, ingest.completed());
+			assertEquals(100, ingest.failed());
+			assertEquals(100, handled.get());
+		}
+	}
+	
+	/**
+	 * A task is counted as submitted before a worker can run it, so the counts read in the order completed and then submitted never show more completed.
+	 */
+	@Test
+	public void submittedNeverTrailsCompleted() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			Ingest ingest = par.ingest(64, Overflow.BLOCK);
+			AtomicBoolean done = new AtomicBoolean();
+			AtomicInteger behind = new AtomicInteger();
+			Thread watcher = new Thread(() ->
+			{
+				while (!done.get())
+				{
+					long completed = ingest.completed(), submitted = ingest.submitted();
+					if (completed > submitted)
+						behind.incrementAndGet();
+				}
+			});
+			watcher.start();
+			for (int i = 0; i < 200_000; i++)
+				ingest.submit(() -> {});
+			ingest.awaitIdle();
+			done.set(true);
+			watcher.join();
+			assertEquals(0, behind.get(), "More tasks were seen completed than submitted.");
+			assertEquals(200_000, ingest.completed());
+		}
+	}
+	
+	@Test
+	public void closeWaitsAndRefusesFurtherTasks() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Ingest ingest = par.ingest(8, Overflow.BLOCK);
+			List<String> ran = ran();
+			Gate gate = new Gate(ingest);
+			for (int i = 0; i < 5; i++)
+				ingest.submit(() -> ran.add("queued"));
+			Thread closer = new Thread(ingest::close);
+			closer.start();
+			long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!ingest.isShutdown() && System.nanoTime() < until)
+				Thread.onSpinWait();
+			assertThrows(IllegalStateException.class, () -> ingest.submit(() -> ran.add("late")));
+			gate.open();
+			closer.join(5000);
+			assertFalse(closer.isAlive(), "Closing did not return once the accepted tasks had run.");
+			assertEquals(5, ran.size());
+			assertFalse(ran.contains("late"));
+			assertEquals(6, ingest.submitted());
+		}
+	}
+	
+	private static List<String> ran()
+	{
+		return Collections.synchronizedList(new ArrayList<>());
+	}
+	
+	/**
+	 * Occupies the worker of an ingest of parallelism 1 until opened, so that the tasks submitted after it wait in the queue.
+	 */
+	private static class Gate
+	{
+		private final CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+		
+		private Gate(Ingest ingest)
+		{
+			ingest.submit(() ->
+			{
+				held.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{}
+			});
+			try
+			{
+				held.await();
+			}
+			catch (InterruptedException e)
+			{}
+		}
+		
+		private void open()
+		{
+			release.countDown();
+		}
+	}
+}
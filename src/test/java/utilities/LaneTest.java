@@ -0,0 +1,181 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Backend;
+import utilities.Parallelizer.Batch;
+import utilities.Parallelizer.Scratch;
+
+/**
+ * Checks that tasks added for each thread index run upon the worker of that index on the {@linkplain Backend#PINNED} backend,
+ * and that each index keeps its own {@linkplain Scratch} on every backend.
+ */
+public class LaneTest
+{
+	private static final int LANES = 4;
+	
+	@Test
+	public void pinnedLanesKeepTheirThreads()
+	{
+		try (Parallelizer par = new Parallelizer(LANES, Backend.PINNED))
+		{
+			AtomicReferenceArray<Thread> owners = new AtomicReferenceArray<>(LANES);
+			par.invokeEach((int th) -> owners.set(th, Thread.currentThread()));
+			Set<Thread> distinct = new HashSet<>();
+			for (int i = 0; i < LANES; i++)
+				distinct.add(owners.get(i));
+			assertEquals(LANES, distinct.size(), "Two lanes shared a worker.");
+			
+			// Fused, and mixed with plain tasks dealt in turn, the lane tasks must still find their own workers.
+			par.fuse(8);
+			AtomicInteger strays = new AtomicInteger(), runs = new AtomicInteger();
+			for (int round = 0; round < 20; round++)
+			{
+				for (int i = 0; i < 25; i++)
+					par.task(() -> LockSupport.parkNanos(10_000));
+				par.taskEach((th, scratch) ->
+				{
+					runs.incrementAndGet();
+					if (owners.get(th) != Thread.currentThread())
+						strays.incrementAndGet();
+				});
+				par.invokeEach((th, scratch) ->
+				{
+					runs.incrementAndGet();
+					if (owners.get(th) != Thread.currentThread())
+						strays.incrementAndGet();
+				});
+				assertEquals(0, par.batchRunAll().await().failed());
+			}
+			assertEquals(20 * 2 * LANES, runs.get());
+			assertEquals(0, strays.get(), "A lane task ran upon the worker of another lane.");
+		}
+	}
+	
+	/**
+	 * As each lane has one worker, runs for the same index never overlap on {@linkplain Backend#PINNED}, even when batches are run concurrently,
+	 * so a {@linkplain Scratch} is never used by two tasks at once.
+	 */
+	@Test
+	public void pinnedScratchIsNeverShared()
+	{
+		try (Parallelizer par = new Parallelizer(LANES, Backend.PINNED))
+		{
+			AtomicIntegerArray using = new AtomicIntegerArray(LANES);
+			AtomicInteger overlaps = new AtomicInteger();
+			Batch<?>[] batches = new Batch<?>[10];
+			for (int i = 0; i < batches.length; i++)
+			{
+				par.taskEach((th, scratch) ->
+				{
+					if (using.incrementAndGet(th) != 1)
+						overlaps.incrementAndGet();
+					int[] buffer = scratch.ints(64);
+					for (int j = 0; j < buffer.length; j++)
+						buffer[j] = th;
+					LockSupport.parkNanos(200_000);
+					for (int j = 0; j < buffer.length; j++)
+						if (buffer[j] != th)
+							overlaps.incrementAndGet();
+					using.decrementAndGet(th);
+				});
+				batches[i] = par.batchRunAll();
+			}
+			for (Batch<?> batch : batches)
+				assertEquals(0, batch.await().failed());
+			assertEquals(0, overlaps.get(), "A scratch was used by two tasks at once.");
+		}
+	}
+	
+	@Test
+	public void scratchIsPerLane()
+	{
+		for (Backend backend : Backend.values())
+		{
+			try (Parallelizer par = new Parallelizer(LANES, backend))
+			{
+				AtomicReferenceArray<Scratch> given = new AtomicReferenceArray<>(LANES);
+				AtomicReferenceArray<int[]> buffers = new AtomicReferenceArray<>(LANES);
+				par.invokeEach((th, scratch) ->
+				{
+					given.set(th, scratch);
+					int[] buffer = scratch.ints(100);
+					buffer[0] = th;
+					buffers.set(th, buffer);
+				});
+				for (int i = 0; i < LANES; i++)
+				{
+					assertSame(par.scratch(i), given.get(i), backend + " handed lane " + i + " the scratch of another.");
+					for (int j = 0; j < i; j++)
+						assertNotSame(given.get(j), given.get(i), backend + " shared a scratch between lanes.");
+				}
+				
+				// Later runs, through either method, are handed the same scratch, whose buffer is reused with its contents as they were left.
+				AtomicInteger mismatches = new AtomicInteger();
+				par.taskEach((th, scratch) ->
+				{
+					int[] buffer = scratch.ints(50);
+					if (scratch != given.get(th) || buffer != buffers.get(th) || buffer[0] != th)
+						mismatches.incrementAndGet();
+				});
+				assertEquals(0, par.batchRunAll().await().failed());
+				par.invokeEach((th, scratch) ->
+				{
+					if (scratch.ints(100) != buffers.get(th))
+						mismatches.incrementAndGet();
+				});
+				assertEquals(0, mismatches.get(), backend + " did not hand each lane back its own buffers.");
+			}
+		}
+	}
+	
+	@Test
+	public void scratchGrowsAndSurvivesResizing()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			Scratch first = par.scratch(0), second = par.scratch(1);
+			int[] small = first.ints(10);
+			int[] large = first.ints(11);
+			assertNotSame(small, large);
+			assertTrue(large.length >= 15, "A buffer grew by less than half again.");
+			assertSame(large, first.ints(large.length));
+			assertSame(first.doubles(0), first.doubles(0));
+			
+			par.updateThreadCount(3);
+			assertSame(first, par.scratch(0), "Resizing replaced the scratch of an existing lane.");
+			assertSame(second, par.scratch(1));
+			assertNotSame(par.scratch(1), par.scratch(2));
+			par.updateThreadCount(1);
+			assertSame(first, par.scratch(0));
+		}
+	}
+}
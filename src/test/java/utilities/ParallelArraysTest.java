@@ -0,0 +1,159 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the kernels of {@linkplain ParallelArrays} against their serial equivalents, for arrays shorter and longer than the number of threads,
+ * and long enough that the merges of the sort are split.
+ */
+public class ParallelArraysTest
+{
+	private static final int[] THREADS = { 1, 3, 8 };
+	private static final int[] LENGTHS = { 0, 1, 2, 5, 7, 100, 20_000, 50_001 };
+	private static final double[] SPECIAL = { Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.MIN_VALUE, -Double.MAX_VALUE };
+	
+	@Test
+	public void sortMatchesArraysSort()
+	{
+		Random r = new Random(0);
+		for (int threads : THREADS)
+		{
+			try (Parallelizer par = new Parallelizer(threads))
+			{
+				for (int length : LENGTHS)
+				{
+					for (int range : new int[] { 4, Integer.MAX_VALUE })
+					{
+						String at = length + " elements on " + threads + " threads";
+						int[] ints = r.ints(length, -range / 2, range / 2 + 1).toArray(), intsExpected = ints.clone();
+						ParallelArrays.sort(par, ints);
+						Arrays.sort(intsExpected);
+						assertArrayEquals(intsExpected, ints, at);
+						
+						long[] longs = r.longs(length, -range, range).toArray(), longsExpected = longs.clone();
+						ParallelArrays.sort(par, longs);
+						Arrays.sort(longsExpected);
+						assertArrayEquals(longsExpected, longs, at);
+						
+						double[] doubles = new double[length];
+						for (int i = 0; i < length; i++)
+							doubles[i] = r.nextInt(5) == 0 ? SPECIAL[r.nextInt(SPECIAL.length)] : range == 4 ? r.nextInt(4) : r.nextGaussian();
+						double[] doublesExpected = doubles.clone();
+						ParallelArrays.sort(par, doubles);
+						Arrays.sort(doublesExpected);
+						// Compared bit for bit, so that NaN and the two zeroes must be placed as Arrays.sort places them.
+						assertArrayEquals(doublesExpected, doubles, at);
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void prefixSumMatchesSerialScan()
+	{
+		Random r = new Random(1);
+		for (int threads : THREADS)
+		{
+			try (Parallelizer par = new Parallelizer(threads))
+			{
+				for (int length : LENGTHS)
+				{
+					for (boolean inclusive : new boolean[] { true, false })
+					{
+						int[] ints = r.ints(length, -1000, 1000).toArray(), intsExpected = ints.clone();
+						long[] longs = r.longs(length, -1L << 40, 1L << 40).toArray(), longsExpected = longs.clone();
+						// Small whole numbers, whose sums are exact however they are grouped.
+						double[] doubles = r.ints(length, -1000, 1000).asDoubleStream().toArray(), doublesExpected = doubles.clone();
+						int intSum = 0;
+						long longSum = 0;
+						double doubleSum = 0;
+						for (int i = 0; i < length; i++)
+						{
+							int a = intsExpected[i];
+							long b = longsExpected[i];
+							double c = doublesExpected[i];
+							intsExpected[i] = inclusive ? intSum + a : intSum;
+							longsExpected[i] = inclusive ? longSum + b : longSum;
+							doublesExpected[i] = inclusive ? doubleSum + c : doubleSum;
+							intSum += a;
+							longSum += b;
+							doubleSum += c;
+						}
+						ParallelArrays.prefixSum(par, ints, inclusive);
+						ParallelArrays.prefixSum(par, longs, inclusive);
+						ParallelArrays.prefixSum(par, doubles, inclusive);
+						String at = length + " elements on " + threads + " threads, " + (inclusive ? "inclusive" : "exclusive");
+						assertArrayEquals(intsExpected, ints, at);
+						assertArrayEquals(longsExpected, longs, at);
+						assertArrayEquals(doublesExpected, doubles, at);
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void filterKeepsOrder()
+	{
+		Random r = new Random(2);
+		for (int threads : THREADS)
+		{
+			try (Parallelizer par = new Parallelizer(threads))
+			{
+				for (int length : LENGTHS)
+				{
+					String at = length + " elements on " + threads + " threads";
+					int[] ints = r.ints(length).toArray();
+					assertArrayEquals(Arrays.stream(ints).filter((x) -> x % 3 == 0).toArray(), ParallelArrays.filter(par, ints, (x) -> x % 3 == 0), at);
+					long[] longs = r.longs(length).toArray();
+					assertArrayEquals(Arrays.stream(longs).filter((x) -> x > 0).toArray(), ParallelArrays.filter(par, longs, (x) -> x > 0), at);
+					double[] doubles = r.doubles(length).toArray();
+					assertArrayEquals(Arrays.stream(doubles).filter((x) -> x < 0.1).toArray(), ParallelArrays.filter(par, doubles, (x) -> x < 0.1), at);
+					assertEquals(0, ParallelArrays.filter(par, ints, (x) -> false).length);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void argExtremesFindTheFirstIndex()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			int[] ints = { 3, 9, 1, 9, 1, 4, 9 };
+			assertEquals(1, ParallelArrays.argMax(par, ints));
+			assertEquals(2, ParallelArrays.argMin(par, ints));
+			long[] longs = { 5, 5, 5, -2, 8, -2, 8 };
+			assertEquals(4, ParallelArrays.argMax(par, longs));
+			assertEquals(3, ParallelArrays.argMin(par, longs));
+			double[] doubles = { 0.0, -0.0, Double.NaN, 1, Double.NaN };
+			assertEquals(2, ParallelArrays.argMax(par, doubles));
+			assertEquals(1, ParallelArrays.argMin(par, doubles));
+			assertEquals(-1, ParallelArrays.argMax(par, new int[0]));
+			assertEquals(-1, ParallelArrays.argMin(par, new long[0]));
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the dynamically chunked loops of a {@linkplain Parallelizer} visit every index of their range exactly once,
+ * for empty, single, uneven and very wide ranges.
+ */
+public class ParallelForTest
+{
+	private static final int[][] RANGES = { { 0, 0 }, { 5, 3 }, { 7, 8 }, { 0, 3 }, { 0, 1003 }, { -50, 77 }, { 0, 100_000 } };
+	
+	@Test
+	public void parallelForVisitsEachIndexOnce()
+	{
+		for (int threads : new int[] { 1, 3, 4 })
+		{
+			try (Parallelizer par = new Parallelizer(threads))
+			{
+				for (int[] range : RANGES)
+				{
+					int start = range[0], end = range[1], size = Math.max(0, end - start);
+					AtomicIntegerArray seen = new AtomicIntegerArray(size);
+					par.parallelFor(start, end, (i) -> seen.incrementAndGet(i - start));
+					for (int i = 0; i < size; i++)
+						assertEquals(1, seen.get(i), "Index " + (start + i) + " of " + start + " to " + end + " on " + threads + " threads.");
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void parallelForLongVisitsEachIndexOnce()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			long start = Long.MAX_VALUE - 1003;
+			AtomicIntegerArray seen = new AtomicIntegerArray(1003);
+			par.parallelForLong(start, Long.MAX_VALUE, (i) -> seen.incrementAndGet((int) (i - start)));
+			for (int i = 0; i < 1003; i++)
+				assertEquals(1, seen.get(i));
+			
+			AtomicLong calls = new AtomicLong();
+			par.parallelForLong(3, 3, (i) -> calls.incrementAndGet());
+			par.parallelForLong(Long.MIN_VALUE + 1, Long.MIN_VALUE + 2, (i) -> assertEquals(Long.MIN_VALUE + 1, i));
+			assertEquals(0, calls.get());
+		}
+	}
+	
+	@Test
+	public void chunksTileTheRange()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			for (int[] range : RANGES)
+			{
+				for (int grain : new int[] { 1, 7, 5000 })
+				{
+					List<long[]> chunks = Collections.synchronizedList(new ArrayList<>());
+					par.parallelForChunked(range[0], range[1], grain, (lo, hi) -> chunks.add(new long[] { lo, hi }));
+					checkTiling(chunks, range[0], range[1], grain);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A range of more than {@linkplain Long#MAX_VALUE} indices is still split into chunks which tile it, rather than overflowing the count of those remaining.
+	 */
+	@Test
+	public void widestRangeIsChunked()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			List<long[]> chunks = Collections.synchronizedList(new ArrayList<>());
+			long grain = 1L << 56;
+			par.parallelForChunkedLong(Long.MIN_VALUE, Long.MAX_VALUE, grain, (lo, hi) -> chunks.add(new long[] { lo, hi }));
+			checkTiling(chunks, Long.MIN_VALUE, Long.MAX_VALUE, grain);
+			assertTrue(chunks.size() > 1);
+		}
+	}
+	
+	/**
+	 * Checks that the chunks cover the range from start to end without gaps or overlaps, and are no smaller than the grain, except for the last.
+	 */
+	private static void checkTiling(List<long[]> chunks, long start, long end, long grain)
+	{
+		if (end <= start)
+		{
+			assertEquals(0, chunks.size(), "Chunks were given for an empty range.");
+			return;
+		}
+		chunks.sort((a, b) -> Long.compare(a[0], b[0]));
+		long next = start;
+		for (int i = 0; i < chunks.size(); i++)
+		{
+			long[] chunk = chunks.get(i);
+			assertEquals(next, chunk[0], "Chunks of " + start + " to " + end + " left a gap or overlapped.");
+			assertTrue(chunk[1] > chunk[0], "An empty chunk was given.");
+			if (i < chunks.size() - 1)
+				assertTrue(chunk[1] - chunk[0] >= grain, "A chunk before the last was smaller than the grain.");
+			next = chunk[1];
+		}
+		assertEquals(end, next);
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Backend;
+import utilities.Parallelizer.Batch;
+
+public class ParallelizerTest
+{
+	@Test
+	public void rejectsFewerThanOneThread()
+	{
+		for (Backend backend : Backend.values())
+		{
+			assertThrows(IllegalArgumentException.class, () -> new Parallelizer(0, backend));
+			assertThrows(IllegalArgumentException.class, () -> new Parallelizer(-1, backend));
+			try (Parallelizer par = new Parallelizer(2, backend))
+			{
+				assertThrows(IllegalArgumentException.class, () -> par.updateThreadCount(0));
+			}
+		}
+	}
+	
+	@Test
+	public void rejectsPipelineOnSharedBackend()
+	{
+		try (Parallelizer par = new Parallelizer(2, Backend.SHARED))
+		{
+			assertThrows(IllegalStateException.class, () -> par.pipeline(4, 4));
+		}
+	}
+	
+	@Test
+	public void reductionsMergeEveryThread()
+	{
+		for (int threads = 1; threads <= 9; threads++)
+		{
+			try (Parallelizer par = new Parallelizer(threads))
+			{
+				for (int n : new int[] { 0, 1, 7, 1000 })
+				{
+					long expected = (long) n * (n - 1) / 2;
+					assertEquals(expected, par.sumLong(0, n, (i) -> i));
+					assertEquals((int) expected, par.sumInt(0, n, (i) -> i));
+					assertEquals((double) expected, par.sumDouble(0, n, (i) -> i));
+					List<Integer> all = par.parallelReduce(0, n, ArrayList::new, (acc, i) ->
+					{
+						acc.add(i);
+						return acc;
+					}, (a, b) ->
+					{
+						a.addAll(b);
+						return a;
+					});
+					assertEquals(n, all.size());
+					assertEquals(expected, all.stream().mapToLong(Integer::longValue).sum());
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void adaptsOnlyResizableBackends()
+	{
+		for (Backend backend : new Backend[] { Backend.VIRTUAL, Backend.PINNED })
+		{
+			try (Parallelizer par = new Parallelizer(2, backend))
+			{
+				assertEquals(-1, par.poolSize());
+				assertThrows(IllegalStateException.class, () -> par.adapt(1, 4));
+			}
+		}
+		for (Backend backend : new Backend[] { Backend.FIXED, Backend.FORK_JOIN, Backend.SHARED })
+		{
+			try (Parallelizer par = new Parallelizer(2, backend))
+			{
+				assertEquals(2, par.poolSize());
+				par.adapt(3, 6);
+				assertEquals(3, par.poolSize(), backend + " did not raise its pool to the least size.");
+				par.stopAdapting().adapt(1, 2);
+				assertEquals(2, par.poolSize(), backend + " did not lower its pool to the greatest size.");
+				par.stopAdapting();
+				assertEquals(2, par.threads());
+			}
+		}
+	}
+	
+	/**
+	 * Tasks which spend their time blocked, while more wait in the queue, grow the pool, and the pool keeps its size once adaptation stops.
+	 * On {@linkplain Backend#SHARED}, only the CPU time of the tasks of the instance is counted.
+	 */
+	@Test
+	public void adaptationGrowsThePoolForBlockingTasks()
+	{
+		for (Backend backend : new Backend[] { Backend.FIXED, Backend.FORK_JOIN, Backend.SHARED })
+		{
+			try (Parallelizer par = new Parallelizer(2, backend))
+			{
+				par.adapt(2, 16, 10, TimeUnit.MILLISECONDS);
+				for (int i = 0; i < 2000; i++)
+					par.task(() -> LockSupport.parkNanos(2_000_000));
+				Batch<?> batch = par.batchRunAll();
+				int largest = 2;
+				while (!batch.isDone())
+				{
+					largest = Math.max(largest, par.poolSize());
+					LockSupport.parkNanos(1_000_000);
+				}
+				assertTrue(largest > 2, backend + " never grew its pool for blocking tasks.");
+				par.stopAdapting();
+				int size = par.poolSize();
+				for (int i = 0; i < 200; i++)
+					par.task(() -> LockSupport.parkNanos(1_000_000));
+				par.batchRunAll().await();
+				assertEquals(size, par.poolSize(), backend + " resized its pool after adaptation stopped.");
+			}
+		}
+	}
+	
+	@Test
+	public void lambdasGivenToTaskAreRunnables() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			par.task(() -> Integer.valueOf(1));
+			par.call(() -> Integer.valueOf(2));
+			Batch<Object> batch = par.batchRun(2);
+			batch.await();
+			assertNull(batch.future(0).get());
+			assertEquals(2, batch.future(1).get());
+		}
+	}
+	
+	/**
+	 * Every task of a large batch on {@linkplain Backend#VIRTUAL} waits until all of them have started, which only ends if all are blocked at once,
+	 * and the blocked tasks must not each hold a platform thread.
+	 */
+	@Test
+	public void virtualBackendBlocksAHundredThousandTasksAtOnce() throws Exception
+	{
+		final int count = 100_000;
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		int before = threads.getThreadCount();
+		try (Parallelizer par = new Parallelizer(8, Backend.VIRTUAL))
+		{
+			assertEquals(8, par.threads());
+			CountDownLatch arrived = new CountDownLatch(count), release = new CountDownLatch(1);
+			for (int i = 0; i < count; i++)
+				par.call(() ->
+				{
+					arrived.countDown();
+					return release.await(60, TimeUnit.SECONDS);
+				});
+			Batch<Boolean> batch = par.batchRunAll();
+			boolean allBlocked = arrived.await(60, TimeUnit.SECONDS);
+			int added = threads.getThreadCount() - before;
+			release.countDown();
+			batch.await();
+			assertTrue(allBlocked, "Only " + (count - arrived.getCount()) + " tasks could block at once.");
+			assertTrue(added < 32, added + " platform threads were started for the blocked tasks.");
+			assertEquals(count, batch.succeeded());
+			for (Boolean released : batch.collect(Boolean[]::new))
+				assertTrue(released);
+		}
+	}
+}
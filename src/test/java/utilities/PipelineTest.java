@@ -0,0 +1,143 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Pipeline.StageStats;
+
+public class PipelineTest
+{
+	@Test
+	public void itemsFlowThroughEveryStage()
+	{
+		try (Parallelizer par = new Parallelizer(8))
+		{
+			AtomicLong sum = new AtomicLong(), count = new AtomicLong();
+			Pipeline<String> pipe = par.<String>pipeline(4, 16)
+					.stage("parse", 2, Integer::parseInt)
+					.stage("odd", 2, (i) -> i % 2 == 1 ? (long) i * i : null)
+					.sink("sum", 1, (sq) ->
+					{
+						sum.addAndGet(sq);
+						count.incrementAndGet();
+					})
+					.start();
+			long expected = 0;
+			for (int i = 0; i < 10_000; i++)
+			{
+				pipe.push(Integer.toString(i));
+				if (i % 2 == 1)
+					expected += (long) i * i;
+			}
+			pipe.close().await();
+			assertEquals(5000, count.get());
+			assertEquals(expected, sum.get());
+			StageStats[] stats = pipe.stats();
+			assertEquals(10_000, stats[0].processed);
+			assertEquals(10_000, stats[1].processed);
+			assertEquals(5000, stats[1].emitted);
+			assertEquals(5000, stats[2].processed);
+		}
+	}
+	
+	@Test
+	public void failuresCompleteThePipelineExceptionally()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			AtomicLong sunk = new AtomicLong();
+			Pipeline<Integer> pipe = par.<Integer>pipeline(4, 8)
+					.stage("check", 2, (i) ->
+					{
+						if (i % 100 == 0)
+							throw new IllegalArgumentException("Bad item " + i);
+						return i;
+					})
+					.sink("count", 1, (i) -> sunk.incrementAndGet())
+					.start();
+			for (int i = 0; i < 1000; i++)
+				pipe.push(i);
+			CompletionException thrown = assertThrows(CompletionException.class, () -> pipe.close().await());
+			assertTrue(thrown.getCause() instanceof IllegalArgumentException);
+			assertEquals(9, thrown.getSuppressed().length);
+			assertEquals(990, sunk.get());
+			assertEquals(10, pipe.stats()[0].failed);
+		}
+	}
+	
+	/**
+	 * Each stage returns a new builder, so a builder may be branched and reused without the stages of one pipeline leaking into another.
+	 */
+	@Test
+	public void buildersMayBeBranchedAndReused()
+	{
+		try (Parallelizer par = new Parallelizer(8))
+		{
+			AtomicLong doubled = new AtomicLong(), negated = new AtomicLong();
+			Pipeline.Builder<Integer, Integer> base = par.<Integer>pipeline(4, 4).stage("id", 1, (i) -> i);
+			Pipeline<Integer> a = base.stage("double", 1, (i) -> i * 2).sink("a", 1, doubled::addAndGet);
+			Pipeline<Integer> b = base.stage("negate", 1, (i) -> -i).sink("b", 1, negated::addAndGet);
+			assertEquals(3, a.stats().length);
+			assertEquals(3, b.stats().length);
+			assertEquals("double", a.stats()[1].name);
+			assertEquals("negate", b.stats()[1].name);
+			a.start();
+			b.start();
+			for (int i = 1; i <= 100; i++)
+			{
+				a.push(i);
+				b.push(i);
+			}
+			a.close().await();
+			b.close().await();
+			assertEquals(10_100, doubled.get());
+			assertEquals(-5050, negated.get());
+		}
+	}
+	
+	@Test
+	public void rejectsPushingBeforeStart()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			Pipeline<Integer> pipe = par.<Integer>pipeline(1, 1).sink("drop", 1, (i) -> {});
+			assertThrows(IllegalStateException.class, () -> pipe.push(1));
+			assertThrows(IllegalStateException.class, pipe::flush);
+			pipe.start().push(1).close().await();
+			assertEquals(1, pipe.stats()[0].processed);
+			assertThrows(IllegalStateException.class, () -> pipe.push(2));
+			assertThrows(IllegalStateException.class, pipe::start);
+		}
+	}
+	
+	@Test
+	public void rejectsMoreWorkersThanThreads()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			assertThrows(IllegalArgumentException.class, () -> par.<Integer>pipeline(1, 1).stage("a", 2, (i) -> i).sink("b", 1, (i) -> {}));
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Batch;
+import utilities.Parallelizer.Ingest;
+import utilities.Parallelizer.Overflow;
+import utilities.Parallelizer.Scope;
+import utilities.Parallelizer.TaskClass;
+
+/**
+ * Holds the single worker of a {@linkplain Parallelizer} with priorities enabled while tasks of several {@linkplain TaskClass}es queue up behind it,
+ * and then checks the order in which they are served.
+ */
+public class PriorityTest
+{
+	private static final TaskClass HIGH = new TaskClass("high", 1, 1), LOW = new TaskClass("low", -1, 1);
+	
+	@Test
+	public void higherPriorityOvertakes()
+	{
+		try (Parallelizer par = new Parallelizer(1).enablePriorities())
+		{
+			List<String> order = order();
+			Gate gate = new Gate(par);
+			for (int i = 0; i < 10; i++)
+				par.task(LOW, () -> order.add("low"));
+			for (int i = 0; i < 10; i++)
+				par.task(() -> order.add("default"));
+			for (int i = 0; i < 10; i++)
+				par.task(HIGH, () -> order.add("high"));
+			Batch<?> batch = par.batchRunAll();
+			gate.open();
+			batch.await();
+			assertEquals(repeat(10, "high", "default", "low"), order);
+		}
+	}
+	
+	@Test
+	public void equalPrioritiesShareByWeight()
+	{
+		TaskClass heavy = new TaskClass("heavy", 0, 3), light = new TaskClass("light", 0, 1);
+		try (Parallelizer par = new Parallelizer(1).enablePriorities())
+		{
+			List<String> order = order();
+			Gate gate = new Gate(par);
+			for (int i = 0; i < 40; i++)
+			{
+				par.task(heavy, () -> order.add("heavy"));
+				par.task(light, () -> order.add("light"));
+			}
+			Batch<?> batch = par.batchRunAll();
+			gate.open();
+			batch.await();
+			for (int served = 4; served <= 40; served += 4)
+				assertEquals(served / 4, Collections.frequency(order.subList(0, served), "light"), "Light class not served one turn in four: " + order);
+		}
+	}
+	
+	@Test
+	public void passedOverClassIsServedAfterMaxSkips()
+	{
+		int maxSkips = 4;
+		try (Parallelizer par = new Parallelizer(1).enablePriorities(maxSkips))
+		{
+			List<String> order = order();
+			Gate gate = new Gate(par);
+			for (int i = 0; i < 2; i++)
+				par.task(LOW, () -> order.add("low"));
+			for (int i = 0; i < 20; i++)
+				par.task(HIGH, () -> order.add("high"));
+			Batch<?> batch = par.batchRunAll();
+			gate.open();
+			batch.await();
+			assertEquals("low", order.get(maxSkips));
+			assertEquals("low", order.get(2 * maxSkips + 1));
+			assertEquals(2, Collections.frequency(order, "low"));
+		}
+	}
+	
+	@Test
+	public void scopesAndIngestsKeepTheirClass()
+	{
+		try (Parallelizer par = new Parallelizer(1).enablePriorities())
+		{
+			List<String> order = order();
+			Gate gate = new Gate(par);
+			for (int i = 0; i < 3; i++)
+				par.task(() -> order.add("batch"));
+			Batch<?> batch = par.batchRunAll();
+			Ingest ingest = par.ingest(8, Overflow.REJECT, HIGH);
+			try (Scope scope = par.scope(HIGH))
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					ingest.submit(() -> order.add("ingest"));
+					scope.fork(() -> order.add("fork"));
+				}
+				gate.open();
+				batch.await();
+				scope.join();
+			}
+			ingest.awaitIdle();
+			// The single worker of the ingest was queued before the forks, and queues again behind them after its first task.
+			assertEquals(List.of("ingest", "fork", "fork", "fork", "ingest", "ingest", "batch", "batch", "batch"), order);
+		}
+	}
+	
+	/**
+	 * An ingest worker goes back to the queue of its class after each task, rather than holding its thread until the ingest is empty.
+	 */
+	@Test
+	public void ingestWorkersYieldBetweenTasks()
+	{
+		try (Parallelizer par = new Parallelizer(1).enablePriorities())
+		{
+			List<String> order = order();
+			Gate gate = new Gate(par);
+			Ingest ingest = par.ingest(8, Overflow.REJECT, LOW);
+			CountDownLatch first = new CountDownLatch(1), release = new CountDownLatch(1);
+			ingest.submit(() ->
+			{
+				order.add("ingest");
+				first.countDown();
+				await(release);
+			});
+			ingest.submit(() -> order.add("ingest"));
+			ingest.submit(() -> order.add("ingest"));
+			gate.open();
+			await(first);
+			for (int i = 0; i < 3; i++)
+				par.task(() -> order.add("batch"));
+			Batch<?> batch = par.batchRunAll();
+			release.countDown();
+			batch.await();
+			ingest.awaitIdle();
+			assertEquals(List.of("ingest", "batch", "batch", "batch", "ingest", "ingest"), order);
+		}
+	}
+	
+	private static List<String> order()
+	{
+		return Collections.synchronizedList(new ArrayList<>());
+	}
+	
+	private static List<String> repeat(int times, String... names)
+	{
+		List<String> out = new ArrayList<>();
+		for (String name : names)
+			out.addAll(Collections.nCopies(times, name));
+		return out;
+	}
+	
+	private static void await(CountDownLatch latch)
+	{
+		try
+		{
+			latch.await();
+		}
+		catch (InterruptedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Occupies the only worker of a {@linkplain Parallelizer} until opened, so that tasks run afterward wait in the queues of their classes.
+	 */
+	private static class Gate
+	{
+		private final CountDownLatch started = new CountDownLatch(1), open = new CountDownLatch(1);
+		
+		private Gate(Parallelizer par)
+		{
+			par.task(() ->
+			{
+				started.countDown();
+				PriorityTest.await(open);
+			}).runAll();
+			PriorityTest.await(started);
+		}
+		
+		private void open()
+		{
+			open.countDown();
+		}
+	}
+}
@@ -0,0 +1,549 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import utilities.Scheduler.ElapsedTask;
+import utilities.Scheduler.Engine;
+import utilities.Scheduler.Persistable;
+import utilities.Scheduler.TaskTypes;
+import utilities.Scheduler.TickTask;
+
+public class SchedulerTest
+{
+	/**
+	 * A periodic task which cancels itself and then enough other tasks to compact the queue is out of the queue as it is compacted,
+	 * and must not be counted out of the cancelled entries twice.
+	 */
+	@Test
+	public void compactionWhileRunningPeriodicKeepsPendingCount()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler s = new Scheduler(engine);
+			for (int i = 0; i < 2000; i++)
+				s.scheduleTask(new TickTask(10, "k", () -> {}));
+			s.schedulePeriodic("p", () -> 1, () -> false, () ->
+			{
+				s.removeTask("p");
+				s.removeTask("k");
+			});
+			assertEquals(2001, s.getPending());
+			s.tick();
+			s.tick();
+			assertEquals(0, s.getPending(), engine + " miscounted its pending tasks.");
+			for (int i = 0; i < 20; i++)
+				s.tick();
+			assertEquals(0, s.getPending(), engine + " miscounted its pending tasks.");
+		}
+	}
+	
+	/**
+	 * Periodic tasks of a constant period are written to snapshots, and resume on the same ticks as they would have run. Those which cannot be written
+	 * are reported.
+	 */
+	@Test
+	public void snapshotKeepsPeriodicTasks(@TempDir Path dir) throws IOException
+	{
+		for (Engine engine : Engine.values())
+		{
+			Path file = dir.resolve(engine + ".snap");
+			List<Integer> ran = new ArrayList<>(), resumed = new ArrayList<>();
+			Scheduler s = new Scheduler(engine), restored = new Scheduler(engine);
+			s.schedulePeriodic(3, 5, new Mark(s, ran));
+			s.schedulePeriodic(() -> 2, 5, new Mark(s, new ArrayList<>()));
+			s.tick(5);
+			ran.clear();
+			List<TickTask> skipped = new ArrayList<>();
+			assertEquals(1, s.snapshot(file, new TaskTypes().register(1, Mark.class, (in) -> new Mark(s, ran)), skipped::add));
+			assertEquals(1, skipped.size());
+			restored.tick(5);
+			assertEquals(1, restored.restore(file, new TaskTypes().register(1, Mark.class, (in) -> new Mark(restored, resumed))));
+			assertEquals(1, restored.getPending());
+			for (int i = 0; i < 30; i++)
+			{
+				s.tick();
+				restored.tick();
+			}
+			assertEquals(List.of(8, 12, 16, 20), ran, engine + " ran the periodic task on the wrong ticks.");
+			assertEquals(ran, resumed, engine + " resumed the periodic task on different ticks.");
+			Files.delete(file);
+		}
+	}
+	
+	/**
+	 * A task without a shard which removes a sharded task due on the same tick keeps it from running, whichever of the two comes out of the queue first.
+	 */
+	@Test
+	public void unshardedTaskRemovesShardedTaskOfSameTick()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			for (Engine engine : Engine.values())
+			{
+				for (int order = 0; order < 2; order++)
+				{
+					Scheduler s = new Scheduler(engine).parallelize(par);
+					AtomicInteger runs = new AtomicInteger();
+					TickTask remover = new TickTask(3, () -> s.removeTask("sharded"));
+					TickTask sharded = new TickTask(3, "sharded", 1, runs::incrementAndGet);
+					s.scheduleTask(order == 0 ? remover : sharded);
+					s.scheduleTask(order == 0 ? sharded : remover);
+					s.tick(5);
+					assertEquals(0, runs.get(), engine + " ran a sharded task removed on its own tick.");
+					assertEquals(0, s.getPending(), engine + " miscounted its pending tasks.");
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The tasks of one shard run one at a time, on one thread, and every sharded task runs exactly once.
+	 */
+	@Test
+	public void shardsRunOneAtATime()
+	{
+		try (Parallelizer par = new Parallelizer(4))
+		{
+			for (Engine engine : Engine.values())
+			{
+				Scheduler s = new Scheduler(engine).parallelize(par);
+				int shards = 6, perShard = 200;
+				AtomicBoolean[] busy = new AtomicBoolean[shards];
+				List<AtomicReference<Thread>> threads = new ArrayList<>();
+				AtomicInteger runs = new AtomicInteger(), overlaps = new AtomicInteger(), moved = new AtomicInteger();
+				for (int sh = 0; sh < shards; sh++)
+				{
+					int shard = sh;
+					busy[sh] = new AtomicBoolean();
+					threads.add(new AtomicReference<>());
+					for (int i = 0; i < perShard; i++)
+					{
+						s.scheduleSharded(1 + i % 3, shard, () ->
+						{
+							if (!busy[shard].compareAndSet(false, true))
+								overlaps.incrementAndGet();
+							Thread was = threads.get(shard).getAndSet(Thread.currentThread());
+							if (was != null && was != Thread.currentThread())
+								moved.incrementAndGet();
+							runs.incrementAndGet();
+							busy[shard].set(false);
+						});
+					}
+				}
+				for (int i = 0; i < perShard; i++)
+					s.scheduleSharded(1 + i % 3, TickTask.INDEPENDENT, runs::incrementAndGet);
+				for (int t = 0; t < 4; t++)
+				{
+					s.tick();
+					for (AtomicReference<Thread> thread : threads)
+						thread.set(null);
+				}
+				assertEquals(0, overlaps.get(), engine + " ran tasks of one shard at once.");
+				assertEquals(0, moved.get(), engine + " ran tasks of one shard on different threads within a tick.");
+				assertEquals(shards * perShard + perShard, runs.get(), engine + " ran the wrong number of sharded tasks.");
+				assertEquals(0, s.getPending());
+			}
+		}
+	}
+	
+	/**
+	 * A sharded task which throws fails the tick once every lane has finished. The tasks of its lane after it are left to the next tick, still under their keys,
+	 * while those of other lanes are unaffected.
+	 */
+	@Test
+	public void shardedFailureLeavesRestOfLane()
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			for (Engine engine : Engine.values())
+			{
+				Scheduler s = new Scheduler(engine).parallelize(par);
+				int count = 20;
+				AtomicInteger[] ranAt = new AtomicInteger[count];
+				s.scheduleTask(new TickTask(1, null, 0, () ->
+				{
+					throw new IllegalStateException("Thrown by a sharded task.");
+				}));
+				for (int i = 0; i < count; i++)
+				{
+					AtomicInteger at = ranAt[i] = new AtomicInteger();
+					s.scheduleTask(new TickTask(1, "a" + i, 0, () -> at.set(s.getTick())));
+				}
+				AtomicInteger other = new AtomicInteger();
+				s.scheduleTask(new TickTask(1, null, 1, () -> other.set(s.getTick())));
+				s.tick();
+				IllegalStateException thrown = assertThrows(IllegalStateException.class, s::tick);
+				assertEquals("Thrown by a sharded task.", thrown.getMessage());
+				assertEquals(2, other.get(), engine + " left a task of another lane.");
+				int left = 0;
+				for (int i = 0; i < count; i++)
+					if (ranAt[i].get() == 0)
+						left++;
+				assertTrue(left > 0, engine + " ran the whole lane of a failed task.");
+				assertEquals(left, s.getPending(), engine + " miscounted the tasks left to the next tick.");
+				for (int i = 0; i < count; i++)
+				{
+					boolean removed = s.removeTask("a" + i);
+					assertEquals(ranAt[i].get() == 0, removed, engine + " lost the key of a task.");
+					if (!removed)
+						assertEquals(2, ranAt[i].get());
+				}
+				s.tick();
+				for (int i = 0; i < count; i++)
+					assertTrue(ranAt[i].get() != 3, engine + " ran a removed task.");
+				assertEquals(0, s.getPending());
+				assertFalse(s.removeTask("a0"));
+			}
+		}
+	}
+	
+	/**
+	 * The {@linkplain Engine#WHEEL} runs the same tasks on the same ticks as the {@linkplain Engine#HEAP}, given the same random mix of scheduling,
+	 * refreshing, removal, tasks which schedule further tasks, and idle jumps across the boundaries of the levels of the wheel.
+	 * The order of tasks within a tick is not compared, as neither engine promises one.
+	 */
+	@Test
+	public void wheelMatchesHeap()
+	{
+		int[] jumps = { 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145, 16777216 };
+		for (long seed = 0; seed < 20; seed++)
+		{
+			Random r = new Random(seed);
+			Scheduler heap = new Scheduler(Engine.HEAP), wheel = new Scheduler(Engine.WHEEL);
+			List<Long> heapRan = new ArrayList<>(), wheelRan = new ArrayList<>();
+			int ids = 0;
+			for (int op = 0; op < 600; op++)
+			{
+				int kind = r.nextInt(100), id = ids++, chain = r.nextInt(4), delay = delay(r);
+				String key = "k" + r.nextInt(40);
+				if (kind < 35)
+				{
+					heap.scheduleTask(new TickTask(heap.getTick() + delay, new Probe(heap, heapRan, id, chain)));
+					wheel.scheduleTask(new TickTask(wheel.getTick() + delay, new Probe(wheel, wheelRan, id, chain)));
+				}
+				else if (kind < 55)
+					assertEquals(heap.scheduleRefreshable(new TickTask(heap.getTick() + delay, key, new Probe(heap, heapRan, id, chain))),
+							wheel.scheduleRefreshable(new TickTask(wheel.getTick() + delay, key, new Probe(wheel, wheelRan, id, chain))), "Seed " + seed + " refreshed differently.");
+				else if (kind < 65)
+					assertEquals(heap.removeTask(key), wheel.removeTask(key), "Seed " + seed + " removed differently.");
+				else if (kind < 92)
+				{
+					heap.tick();
+					wheel.tick();
+				}
+				else
+				{
+					int jump = r.nextBoolean() ? jumps[r.nextInt(jumps.length)] : 1 + r.nextInt(1 << 20);
+					heap.tick(jump);
+					wheel.tick(jump);
+				}
+				assertEquals(heap.getTick(), wheel.getTick());
+				assertEquals(heap.getPending(), wheel.getPending(), "Seed " + seed + " diverged in pending tasks at op " + op + ".");
+				assertEquals(heapRan.size(), wheelRan.size(), "Seed " + seed + " diverged in tasks run at op " + op + ".");
+			}
+			heap.tick(1 << 25);
+			wheel.tick(1 << 25);
+			assertEquals(0, heap.getPending());
+			assertEquals(0, wheel.getPending());
+			Collections.sort(heapRan);
+			Collections.sort(wheelRan);
+			assertEquals(heapRan, wheelRan, "Seed " + seed + " ran tasks on different ticks.");
+		}
+	}
+	
+	/**
+	 * A periodic task of a fixed count runs that many times, once per period, and is then gone.
+	 */
+	@Test
+	public void periodicRunsItsCount()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler s = new Scheduler(engine);
+			List<Integer> ran = new ArrayList<>();
+			s.schedulePeriodic(4, 5, new Mark(s, ran));
+			assertEquals(1, s.getPending());
+			for (int i = 0; i < 60; i++)
+				s.tick();
+			assertEquals(5, ran.size(), engine + " ran a periodic task the wrong number of times.");
+			for (int i = 1; i < ran.size(); i++)
+				assertEquals(ran.get(i - 1) + 5, ran.get(i), engine + " ran a periodic task off its period.");
+			assertEquals(0, s.getPending());
+			
+			s.schedulePeriodic(4, 0, new Mark(s, ran));
+			assertEquals(0, s.getPending(), engine + " scheduled a periodic task of no runs.");
+		}
+	}
+	
+	/**
+	 * A keyed periodic task may remove itself by its key as it runs, and is then neither run nor counted again.
+	 */
+	@Test
+	public void periodicRemovesItselfByKey()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler s = new Scheduler(engine);
+			AtomicInteger runs = new AtomicInteger();
+			s.schedulePeriodic("self", () -> 2, () -> false, () ->
+			{
+				if (runs.incrementAndGet() == 3)
+					assertTrue(s.removeTask("self"));
+			});
+			for (int i = 0; i < 30; i++)
+				s.tick();
+			assertEquals(3, runs.get(), engine + " ran a periodic task after it removed itself.");
+			assertEquals(0, s.getPending(), engine + " miscounted its pending tasks.");
+			assertFalse(s.removeTask("self"));
+		}
+	}
+	
+	/**
+	 * The {@linkplain IntSupplier} period is asked once each time the task is re-armed, and the {@linkplain BooleanSupplier} removal once before each run,
+	 * including the first.
+	 */
+	@Test
+	public void periodicAsksItsSuppliers()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler s = new Scheduler(engine);
+			List<Integer> ran = new ArrayList<>();
+			AtomicInteger periods = new AtomicInteger(), removals = new AtomicInteger();
+			IntSupplier period = () -> periods.incrementAndGet();
+			BooleanSupplier removal = () -> removals.incrementAndGet() > 4;
+			s.schedulePeriodic("growing", period, removal, new Mark(s, ran));
+			for (int i = 0; i < 40; i++)
+				s.tick();
+			assertEquals(4, ran.size(), engine + " did not stop once the removal condition held.");
+			assertEquals(5, removals.get(), engine + " asked the removal condition the wrong number of times.");
+			assertEquals(4, periods.get(), engine + " asked for the period the wrong number of times.");
+			assertEquals(List.of(2, 5, 9, 14), ran, engine + " did not follow the supplied periods.");
+			
+			ran.clear();
+			s.schedulePeriodic("counted", () -> 1, 3, new Mark(s, ran));
+			for (int i = 0; i < 10; i++)
+				s.tick();
+			assertEquals(3, ran.size());
+			assertEquals(0, s.getPending());
+		}
+	}
+	
+	/**
+	 * Advancing by {@linkplain Scheduler#advanceTo(int)} and {@linkplain Scheduler#tick(int)}, which skip the ticks on which nothing comes due,
+	 * runs the same tasks on the same ticks as ticking once per tick, and gives {@linkplain ElapsedTask}s the same number of ticks in all.
+	 */
+	@Test
+	public void advancingMatchesTicking()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler ticked = new Scheduler(engine), advanced = new Scheduler(engine);
+			List<String> tickedRan = workload(ticked), advancedRan = workload(advanced);
+			for (int i = 0; i < 2000; i++)
+				ticked.tick();
+			Random r = new Random(0);
+			while (advanced.getTick() < 2000)
+			{
+				int step = Math.min(1 + r.nextInt(300), 2000 - advanced.getTick());
+				switch (r.nextInt(3))
+				{
+					case 0 -> advanced.advanceTo(advanced.getTick() + step);
+					case 1 -> advanced.tick(step);
+					default -> advanced.tick();
+				}
+			}
+			end(ticked, tickedRan);
+			end(advanced, advancedRan);
+			assertEquals(tickedRan, advancedRan, engine + " ran differently when advanced.");
+			assertEquals(ticked.getPending(), advanced.getPending());
+		}
+	}
+	
+	/**
+	 * A repeated task which is not an {@linkplain ElapsedTask} keeps {@linkplain Scheduler#advanceTo(int)} from skipping, and so runs on every tick.
+	 */
+	@Test
+	public void plainRepeatedTaskRunsEveryTick()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler s = new Scheduler(engine);
+			List<Integer> ticks = new ArrayList<>();
+			AtomicInteger elapsed = new AtomicInteger();
+			s.scheduleRepeated(-1, () -> ticks.add(s.getTick()));
+			s.scheduleRepeated(-1, (ElapsedTask) elapsed::addAndGet);
+			s.scheduleTask(500, () -> {});
+			s.advanceTo(1000);
+			assertEquals(1000, ticks.size(), engine + " skipped ticks of a plain repeated task.");
+			assertEquals(1000, ticks.get(999));
+			assertEquals(1000, elapsed.get());
+		}
+	}
+	
+	/**
+	 * With coalescing, a periodic task which comes due several times within an advance runs once, and is then re-armed as though it had run on the target tick.
+	 * Without, it runs once for each period.
+	 */
+	@Test
+	public void coalescingRunsMissedPeriodsOnce()
+	{
+		for (Engine engine : Engine.values())
+		{
+			Scheduler coalesced = new Scheduler(engine), missed = new Scheduler(engine), fresh = new Scheduler(engine);
+			List<Integer> coalescedRan = new ArrayList<>(), missedRan = new ArrayList<>(), freshRan = new ArrayList<>();
+			coalesced.schedulePeriodic(9, 100, new Mark(coalesced, coalescedRan));
+			missed.schedulePeriodic(9, 100, new Mark(missed, missedRan));
+			coalesced.advanceTo(100, true);
+			missed.advanceTo(100);
+			assertEquals(1, coalescedRan.size(), engine + " ran a coalesced task more than once.");
+			assertEquals(10, missedRan.size(), engine + " skipped periods without coalescing.");
+			fresh.advanceTo(100);
+			fresh.schedulePeriodic(9, 100, new Mark(fresh, freshRan));
+			coalescedRan.clear();
+			for (int i = 0; i < 50; i++)
+			{
+				coalesced.tick();
+				fresh.tick();
+			}
+			assertEquals(freshRan, coalescedRan, engine + " did not re-arm a coalesced task from the target tick.");
+		}
+	}
+	
+	/**
+	 * Schedules one-off tasks, periodic tasks, and repeated {@linkplain ElapsedTask}s both finite and endless, each logging when it runs.
+	 * @return The log.
+	 */
+	private static List<String> workload(Scheduler s)
+	{
+		List<String> ran = new ArrayList<>();
+		Random r = new Random(1);
+		for (int i = 0; i < 100; i++)
+		{
+			String name = "once" + i;
+			s.scheduleTask(r.nextInt(1800), () -> ran.add(name + "@" + s.getTick()));
+		}
+		s.schedulePeriodic(37, 30, () -> ran.add("periodic@" + s.getTick()));
+		s.schedulePeriodic("keyed", () -> 1 + s.getTick() % 50, () -> s.getTick() > 1500, () -> ran.add("varying@" + s.getTick()));
+		AtomicInteger finite = new AtomicInteger(), endless = new AtomicInteger();
+		s.scheduleRepeated(700, (ElapsedTask) finite::addAndGet);
+		s.scheduleRepeated(-1, (ElapsedTask) (elapsed) ->
+		{
+			if (endless.addAndGet(elapsed) > 1200)
+				s.removeTask("keyed");
+		});
+		s.scheduleTask(1800, () -> ran.add("elapsed " + finite.get() + ", " + endless.get()));
+		return ran;
+	}
+	
+	/**
+	 * Sorts a log of the {@linkplain SchedulerTest#workload(Scheduler)}, as the order of tasks within a tick is not compared.
+	 */
+	private static void end(Scheduler s, List<String> ran)
+	{
+		assertEquals(2000, s.getTick());
+		Collections.sort(ran);
+	}
+	
+	/**
+	 * @return A delay mostly within the lowest level of the wheel, sometimes a few levels up, and sometimes already past.
+	 */
+	private static int delay(Random r)
+	{
+		int kind = r.nextInt(10);
+		if (kind == 0)
+			return -r.nextInt(5);
+		if (kind < 6)
+			return r.nextInt(70);
+		if (kind < 9)
+			return r.nextInt(5000);
+		return r.nextInt(300000);
+	}
+	
+	/**
+	 * Logs the tick on which it runs alongside its id, and then schedules the next of a chain of tasks after a delay depending only on its id,
+	 * so that both engines schedule the same tasks however they order a tick.
+	 */
+	private static class Probe implements Runnable
+	{
+		private final Scheduler scheduler;
+		private final List<Long> ran;
+		private final int id, chain;
+		
+		private Probe(Scheduler scheduler, List<Long> ran, int id, int chain)
+		{
+			this.scheduler = scheduler;
+			this.ran = ran;
+			this.id = id;
+			this.chain = chain;
+		}
+		
+		@Override
+		public void run()
+		{
+			ran.add((long) scheduler.getTick() << 32 | id);
+			if (chain == 0)
+				return;
+			int delay = delay(new Random(id * 31L + chain));
+			scheduler.scheduleTask(new TickTask(scheduler.getTick() + delay, new Probe(scheduler, ran, id, chain - 1)));
+		}
+	}
+	
+	private static class Mark implements Runnable, Persistable
+	{
+		private final Scheduler scheduler;
+		private final List<Integer> ticks;
+		
+		private Mark(Scheduler scheduler, List<Integer> ticks)
+		{
+			this.scheduler = scheduler;
+			this.ticks = ticks;
+		}
+		
+		@Override
+		public void run()
+		{
+			ticks.add(scheduler.getTick());
+		}
+		
+		@Override
+		public void write(DataOutput out) throws IOException
+		{}
+	}
+}
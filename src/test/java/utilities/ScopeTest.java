@@ -0,0 +1,226 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Parallelizer.Batch;
+import utilities.Parallelizer.Scope;
+
+/**
+ * Forks subtasks into {@linkplain Scope}s, and checks how they are joined, shut down and closed.
+ */
+public class ScopeTest
+{
+	@Test
+	public void joinCollectsEveryFork()
+	{
+		try (Parallelizer par = new Parallelizer(4); Scope scope = par.scope())
+		{
+			List<CompletableFuture<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < 100; i++)
+			{
+				int value = i;
+				futures.add(scope.fork(() -> value * value));
+			}
+			scope.join();
+			int sum = 0;
+			for (CompletableFuture<Integer> future : futures)
+				sum += future.join();
+			assertEquals(328350, sum);
+		}
+	}
+	
+	/**
+	 * While every worker is busy, the joining thread runs the forks itself, so that a scope joined from within a subtask of another cannot starve the pool.
+	 */
+	@Test
+	public void joinerRunsUnclaimedForks()
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Gate gate = new Gate(par);
+			try (Scope scope = par.scope())
+			{
+				List<CompletableFuture<Thread>> ranOn = new ArrayList<>();
+				for (int i = 0; i < 10; i++)
+					ranOn.add(scope.fork(Thread::currentThread));
+				scope.join();
+				for (CompletableFuture<Thread> thread : ranOn)
+					assertSame(Thread.currentThread(), thread.join(), "A fork which no worker could claim was not run by the joiner.");
+			}
+			gate.open();
+			
+			// The one worker is taken by an outer fork, so only the joiners can run the nested forks.
+			AtomicInteger inner = new AtomicInteger();
+			try (Scope outer = par.scope())
+			{
+				for (int i = 0; i < 3; i++)
+					outer.fork(() ->
+					{
+						try (Scope nested = par.scope())
+						{
+							for (int j = 0; j < 5; j++)
+								nested.fork(inner::incrementAndGet);
+							nested.join();
+						}
+					});
+				outer.join();
+			}
+			assertEquals(15, inner.get());
+		}
+	}
+	
+	@Test
+	public void shutdownCancelsUnstartedForks()
+	{
+		try (Parallelizer par = new Parallelizer(1))
+		{
+			Gate gate = new Gate(par);
+			try (Scope scope = par.scope())
+			{
+				AtomicInteger runs = new AtomicInteger();
+				List<CompletableFuture<Integer>> futures = new ArrayList<>();
+				for (int i = 0; i < 5; i++)
+					futures.add(scope.fork(runs::incrementAndGet));
+				assertTrue(scope.shutdown());
+				assertFalse(scope.shutdown());
+				assertTrue(scope.isShutdown());
+				gate.open();
+				scope.join();
+				assertEquals(0, runs.get(), "A fork ran after its scope was shut down.");
+				for (CompletableFuture<Integer> future : futures)
+					assertTrue(future.isCancelled());
+				assertTrue(scope.fork(runs::incrementAndGet).isCancelled(), "A fork into a shut down scope was not cancelled.");
+				assertEquals(0, scope.failures().size());
+			}
+		}
+	}
+	
+	@Test
+	public void failureInterruptsRunningForks() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(2); Scope scope = par.scope())
+		{
+			CountDownLatch started = new CountDownLatch(1);
+			AtomicBoolean interrupted = new AtomicBoolean();
+			CompletableFuture<Void> stalled = scope.fork(() ->
+			{
+				started.countDown();
+				interrupted.set(stall());
+			});
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			scope.fork(() ->
+			{
+				throw new IllegalStateException("Thrown by a fork.");
+			});
+			IllegalStateException thrown = assertThrows(IllegalStateException.class, scope::join);
+			assertEquals("Thrown by a fork.", thrown.getMessage());
+			assertTrue(interrupted.get(), "A running fork was not interrupted by the failure of another.");
+			assertThrows(CancellationException.class, stalled::join);
+			assertEquals(1, scope.failures().size());
+		}
+	}
+	
+	@Test
+	public void closeWaitsForRunningForks() throws Exception
+	{
+		try (Parallelizer par = new Parallelizer(2))
+		{
+			Scope scope = par.scope();
+			CountDownLatch started = new CountDownLatch(1);
+			AtomicBoolean finished = new AtomicBoolean();
+			scope.fork(() ->
+			{
+				started.countDown();
+				stall();
+				// Carries on for a while after the interrupt, which close must wait out.
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+				finished.set(true);
+			});
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			scope.close();
+			assertTrue(finished.get(), "Closing returned before a running fork had stopped.");
+			assertTrue(scope.isShutdown());
+			assertThrows(IllegalStateException.class, () -> scope.fork(() -> {}));
+		}
+	}
+	
+	/**
+	 * Parks the calling thread until it is interrupted, or for ten seconds.
+	 * @return Whether it was interrupted.
+	 */
+	private static boolean stall()
+	{
+		long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!Thread.currentThread().isInterrupted() && System.nanoTime() < until)
+			LockSupport.parkNanos(until - System.nanoTime());
+		return Thread.interrupted();
+	}
+	
+	/**
+	 * Occupies every worker of a {@linkplain Parallelizer} of one thread until opened.
+	 */
+	private static class Gate
+	{
+		private final CountDownLatch held = new CountDownLatch(1), release = new CountDownLatch(1);
+		private final Batch<?> batch;
+		
+		private Gate(Parallelizer par)
+		{
+			par.task(() ->
+			{
+				held.countDown();
+				try
+				{
+					release.await();
+				}
+				catch (InterruptedException e)
+				{}
+			});
+			batch = par.batchRunAll();
+			try
+			{
+				held.await();
+			}
+			catch (InterruptedException e)
+			{}
+		}
+		
+		private void open()
+		{
+			release.countDown();
+			batch.await();
+		}
+	}
+}
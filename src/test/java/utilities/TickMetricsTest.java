@@ -0,0 +1,174 @@
+/**
+ * This file is part of SDUtils, which is a library of useful classes and functionality.
+ * Copyright (c) 2023, SerpentDagger (MRRH) <serpentdagger.contact@gmail.com>.
+ * 
+ * SDUtils is free software: you can redistribute it and/or modify it under the terms of the
+ * GNU Lesser General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ * 
+ * SDUtils is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR
+ * PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along with SDUtils.
+ * If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package utilities;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import utilities.Scheduler.TickTask;
+import utilities.TickMetrics.Slow;
+import utilities.TickMetrics.Snapshot;
+
+/**
+ * Records the ticks of a {@linkplain Scheduler} to a {@linkplain TickMetrics}, with tasks slowed by known amounts, and checks what it kept.
+ */
+public class TickMetricsTest
+{
+	@Test
+	public void overrunsAreCounted()
+	{
+		TickMetrics metrics = new TickMetrics(5, TimeUnit.MILLISECONDS, 10);
+		Scheduler s = new Scheduler().metrics(metrics);
+		s.scheduleTask(new TickTask(2, () -> spin(20)));
+		s.scheduleTask(new TickTask(2, () -> {}));
+		tick(s, 6);
+		Snapshot snap = metrics.snapshot();
+		assertEquals(6, snap.ticks);
+		assertEquals(2, snap.tasks);
+		assertEquals(1, snap.overruns);
+		assertEquals(3, snap.lastOverrun);
+		assertEquals(6, snap.lastTick);
+		assertEquals(0, snap.lastTasks);
+		assertTrue(snap.maxTickNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+	}
+	
+	@Test
+	public void slowestKeysAreKept()
+	{
+		TickMetrics metrics = new TickMetrics(1, TimeUnit.DAYS, 2).sampleEvery(1);
+		Scheduler s = new Scheduler().metrics(metrics);
+		s.scheduleTask(new TickTask(0, "a", () -> spin(5)));
+		s.scheduleTask(new TickTask(1, "b", () -> spin(40)));
+		s.scheduleTask(new TickTask(2, "c", () -> spin(20)));
+		tick(s, 3);
+		assertEquals(List.of("b", "c"), keys(metrics.snapshot()));
+		
+		s.scheduleTask(new TickTask(s.getTick(), "c", () -> spin(1)));
+		s.tick();
+		assertEquals(List.of("b", "c"), keys(metrics.snapshot()), "A faster run replaced the slowest of its key.");
+		assertEquals(3, metrics.snapshot().slowest.get(1).tick);
+		
+		s.scheduleTask(new TickTask(s.getTick(), "a", () -> spin(80)));
+		s.tick();
+		assertEquals(List.of("a", "b"), keys(metrics.snapshot()), "The fastest key was not evicted.");
+		
+		metrics.reset();
+		assertEquals(0, metrics.snapshot().slowest.size());
+		assertEquals(0, metrics.snapshot().ticks);
+	}
+	
+	@Test
+	public void enablingTakesEffectOnTheNextTick()
+	{
+		TickMetrics metrics = new TickMetrics();
+		Scheduler s = new Scheduler().metrics(metrics);
+		tick(s, 3);
+		metrics.enable(false);
+		assertFalse(metrics.enabled());
+		s.scheduleTask(new TickTask(s.getTick(), () -> metrics.enable(true)));
+		tick(s, 5);
+		// The task runs on tick 4, so ticks 5 to 8 are recorded after the first 3.
+		assertEquals(7, metrics.snapshot().ticks, "A disabled tick was recorded, or the tick which enabled recording was.");
+		assertEquals(8, metrics.snapshot().lastTick);
+		metrics.enable(false);
+		tick(s, 5);
+		assertEquals(7, metrics.snapshot().ticks);
+	}
+	
+	@Test
+	public void oneTaskInEverySampleIsTimed()
+	{
+		TickMetrics metrics = new TickMetrics().sampleEvery(4);
+		Scheduler s = new Scheduler().metrics(metrics);
+		for (int i = 0; i < 40; i++)
+			s.scheduleTask(new TickTask(0, () -> {}));
+		s.tick();
+		Snapshot snap = metrics.snapshot();
+		assertEquals(40, snap.tasks);
+		assertEquals(10, snap.sampledTasks);
+		assertThrows(IllegalArgumentException.class, () -> metrics.sampleEvery(0));
+	}
+	
+	@Test
+	public void profilerMarksStayBalanced()
+	{
+		Profiler profiler = new Profiler();
+		TickMetrics metrics = new TickMetrics().profile(profiler);
+		Scheduler s = new Scheduler().metrics(metrics);
+		s.tick();
+		assertFalse(profiler.isOpen());
+		s.tick();
+		assertFalse(profiler.isOpen());
+		assertNotNull(profiler.getLast(), "Each tick's mark should become the last once the next tick starts.");
+		
+		profiler.reset();
+		profiler.push("outer");
+		s.tick();
+		assertTrue(profiler.isOpen());
+		assertEquals(1, profiler.getDepth(), "The tick's mark was not popped.");
+		profiler.pop();
+		profiler.reset();
+		assertNotNull(profiler.getLast().getSubMark("Scheduler tick"), "The tick's mark was not nested within the open one.");
+		
+		profiler.push("outer");
+		s.scheduleTask(new TickTask(s.getTick(), () ->
+		{
+			throw new IllegalStateException("Thrown by a task.");
+		}));
+		assertThrows(IllegalStateException.class, s::tick);
+		assertEquals(1, profiler.getDepth(), "The mark of a failed tick was not popped.");
+		profiler.pop();
+		assertFalse(profiler.isOpen());
+		assertEquals(4, metrics.snapshot().ticks, "A failed tick was not recorded.");
+	}
+	
+	/**
+	 * Ticks once at a time, as {@linkplain Scheduler#tick(int)} does not record the ticks it skips.
+	 */
+	private static void tick(Scheduler s, int count)
+	{
+		for (int i = 0; i < count; i++)
+			s.tick();
+	}
+	
+	private static List<Object> keys(Snapshot snap)
+	{
+		List<Object> keys = new ArrayList<>();
+		for (Slow slow : snap.slowest)
+			keys.add(slow.key);
+		return keys;
+	}
+	
+	/**
+	 * Runs for at least the given number of milliseconds.
+	 */
+	private static void spin(long millis)
+	{
+		long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		while (System.nanoTime() < until)
+			Thread.onSpinWait();
+	}
+}